@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.benchmark;
+
+import org.apache.rocketmq.streams.core.state.RocksDBStore;
+import org.apache.rocketmq.streams.core.util.Pair;
+import org.apache.rocketmq.streams.core.window.WindowKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * point get/put and the window fire scan, keys are window keys of one operator.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RocksDBStoreBenchmark {
+    private static final String OPERATOR_NAME = "ROCKETMQ_COUNT_WINDOW_1";
+    private static final long WINDOW_SIZE = 60 * 1000L;
+    private static final String STATE_TOPIC_QUEUE = "benchmark@source-stateTopic@0";
+
+    @Param({"100000"})
+    private int keyCount;
+
+    //每次scan到期的窗口个数
+    @Param({"100"})
+    private int windowsPerScan;
+
+    private RocksDBStore rocksDBStore;
+    private byte[][] keys;
+    private byte[] value;
+
+    @Setup
+    public void setup() throws Throwable {
+        rocksDBStore = new RocksDBStore("benchmark_" + UUID.randomUUID());
+        value = new byte[128];
+
+        keys = new byte[keyCount][];
+        for (int i = 0; i < keyCount; i++) {
+            long windowStart = (long) i * WINDOW_SIZE;
+            WindowKey windowKey = new WindowKey(OPERATOR_NAME, "key-" + (i % 1000), windowStart + WINDOW_SIZE, windowStart);
+            keys[i] = WindowKey.windowKey2Byte(windowKey);
+            rocksDBStore.put(STATE_TOPIC_QUEUE, keys[i], value);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        rocksDBStore.close();
+    }
+
+    @Benchmark
+    public byte[] get() throws Throwable {
+        return rocksDBStore.get(STATE_TOPIC_QUEUE, keys[ThreadLocalRandom.current().nextInt(keyCount)]);
+    }
+
+    @Benchmark
+    public void put() throws Throwable {
+        rocksDBStore.put(STATE_TOPIC_QUEUE, keys[ThreadLocalRandom.current().nextInt(keyCount)], value);
+    }
+
+    @Benchmark
+    public List<Pair<byte[], byte[]>> scan() throws Throwable {
+        long watermark = (windowsPerScan + 1) * WINDOW_SIZE;
+        return rocksDBStore.searchStateLessThanWatermark(STATE_TOPIC_QUEUE, OPERATOR_NAME, watermark, WindowKey::byte2WindowKey);
+    }
+}
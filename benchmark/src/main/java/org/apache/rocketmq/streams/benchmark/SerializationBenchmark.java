@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.benchmark;
+
+import org.apache.rocketmq.streams.core.serialization.ShuffleProtocol;
+import org.apache.rocketmq.streams.core.serialization.deImpl.KVJsonDeserializer;
+import org.apache.rocketmq.streams.core.serialization.serImpl.KVJsonSerializer;
+import org.apache.rocketmq.streams.core.util.Pair;
+import org.apache.rocketmq.streams.core.window.WindowKey;
+import org.apache.rocketmq.streams.core.window.WindowState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * encode/decode of everything written into state or shuffle topic.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+    private WindowState<String, Order> windowState;
+    private byte[] windowStateBytes;
+
+    private WindowKey windowKey;
+    private byte[] windowKeyBytes;
+
+    private final ShuffleProtocol protocol = new ShuffleProtocol();
+    private byte[] keyBytes;
+    private byte[] valueBytes;
+    private byte[] mergedBytes;
+
+    private final KVJsonSerializer<String, Order> serializer = new KVJsonSerializer<>();
+    private final KVJsonDeserializer<String, Order> deserializer = new KVJsonDeserializer<>();
+    private Order order;
+    private byte[] serializedBytes;
+
+    @Setup
+    public void setup() throws Throwable {
+        order = new Order("order-0001", "user-42", 1999L);
+
+        windowState = new WindowState<>("user-42", order, 1668249210000L);
+        windowStateBytes = WindowState.windowState2Byte(windowState);
+
+        windowKey = new WindowKey("ROCKETMQ_COUNT_WINDOW_1", "user-42", 1668249240000L, 1668249180000L);
+        windowKeyBytes = WindowKey.windowKey2Byte(windowKey);
+
+        keyBytes = "user-42".getBytes(StandardCharsets.UTF_8);
+        valueBytes = "{\"orderId\":\"order-0001\",\"userId\":\"user-42\",\"amount\":1999}".getBytes(StandardCharsets.UTF_8);
+        mergedBytes = protocol.merge(keyBytes, valueBytes);
+
+        serializedBytes = serializer.serialize("user-42", order);
+        deserializer.configure(String.class.getName(), Order.class.getName());
+    }
+
+    @Benchmark
+    public byte[] windowState2Byte() throws Throwable {
+        return WindowState.windowState2Byte(windowState);
+    }
+
+    @Benchmark
+    public WindowState<String, Order> byte2WindowState() throws Throwable {
+        return WindowState.byte2WindowState(windowStateBytes);
+    }
+
+    @Benchmark
+    public byte[] windowKey2Byte() {
+        return WindowKey.windowKey2Byte(windowKey);
+    }
+
+    @Benchmark
+    public WindowKey byte2WindowKey() {
+        return WindowKey.byte2WindowKey(windowKeyBytes);
+    }
+
+    @Benchmark
+    public byte[] shuffleMerge() {
+        return protocol.merge(keyBytes, valueBytes);
+    }
+
+    @Benchmark
+    public Pair<byte[], byte[]> shuffleSplit() {
+        return protocol.split(mergedBytes);
+    }
+
+    @Benchmark
+    public byte[] jsonSerialize() throws Throwable {
+        return serializer.serialize("user-42", order);
+    }
+
+    @Benchmark
+    public Pair<String, Order> jsonDeserialize() throws Throwable {
+        return deserializer.deserialize(serializedBytes);
+    }
+
+    public static class Order {
+        private String orderId;
+        private String userId;
+        private long amount;
+
+        public Order() {
+        }
+
+        public Order(String orderId, String userId, long amount) {
+            this.orderId = orderId;
+            this.userId = userId;
+            this.amount = amount;
+        }
+
+        public String getOrderId() {
+            return orderId;
+        }
+
+        public void setOrderId(String orderId) {
+            this.orderId = orderId;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public void setUserId(String userId) {
+            this.userId = userId;
+        }
+
+        public long getAmount() {
+            return amount;
+        }
+
+        public void setAmount(long amount) {
+            this.amount = amount;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.benchmark;
+
+import org.apache.rocketmq.streams.core.running.AbstractWindowProcessor;
+import org.apache.rocketmq.streams.core.window.Time;
+import org.apache.rocketmq.streams.core.window.Window;
+import org.apache.rocketmq.streams.core.window.WindowInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * windows a record falls into, slidesPerWindow=1 is a tumbling window.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WindowBenchmark {
+    @Param({"1", "6", "60"})
+    private int slidesPerWindow;
+
+    private WindowInfo windowInfo;
+    private WindowCalculator calculator;
+    private long time;
+
+    @Setup
+    public void setup() {
+        windowInfo = new WindowInfo();
+        windowInfo.setWindowType(slidesPerWindow == 1 ? WindowInfo.WindowType.TUMBLING_WINDOW : WindowInfo.WindowType.SLIDING_WINDOW);
+        windowInfo.setWindowSize(Time.minutes(1));
+        windowInfo.setWindowSlide(Time.seconds(60 / slidesPerWindow));
+
+        calculator = new WindowCalculator();
+        time = 1668249210000L;
+    }
+
+    @Benchmark
+    public List<Window> calculateWindow() {
+        time += 7;
+        return calculator.calculate(windowInfo, time);
+    }
+
+    private static class WindowCalculator extends AbstractWindowProcessor<Object> {
+        List<Window> calculate(WindowInfo windowInfo, long valueTime) {
+            return super.calculateWindow(windowInfo, valueTime);
+        }
+
+        @Override
+        public void process(Object data) {
+        }
+    }
+}
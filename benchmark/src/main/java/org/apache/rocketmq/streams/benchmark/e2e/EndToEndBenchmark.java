@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.benchmark.e2e;
+
+import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.streams.core.RocketMQStream;
+import org.apache.rocketmq.streams.core.common.Constant;
+import org.apache.rocketmq.streams.core.metrics.Histogram;
+import org.apache.rocketmq.streams.core.rstream.RStream;
+import org.apache.rocketmq.streams.core.rstream.StreamBuilder;
+import org.apache.rocketmq.streams.core.topology.TopologyBuilder;
+import org.apache.rocketmq.streams.core.util.Pair;
+import org.apache.rocketmq.streams.core.util.Utils;
+import org.apache.rocketmq.streams.core.window.Time;
+import org.apache.rocketmq.streams.core.window.WindowBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.apache.rocketmq.streams.core.metadata.StreamConfig.ROCKETMQ_STREAMS_CONSUMER_GROUP;
+
+/**
+ * runs a whole StreamBuilder topology against {@link InMemoryBroker}, no namesrv/broker needed:
+ * <pre>
+ * java -cp benchmark/target/benchmarks.jar org.apache.rocketmq.streams.benchmark.e2e.EndToEndBenchmark \
+ *     --topology=wordcount|window|join --records=1000000 --keys=10000 --rate=0 --threads=1 --queues=8 --window=5 --recovery=100000 --store=rocksdb|heap \
+ *     --snapshot=0 --checkpoint=0 --failover=false --standby=0 --allocate=average|sticky --scale=0
+ * </pre>
+ * reports records/s until consumer lag reaches 0, end-to-end latency percentiles (source send to the last operator)
+ * and recovery time: the job is stopped, --recovery records are written, then the time a new instance needs to
+ * restore state and catch up. --snapshot is the state snapshot interval in milliseconds, 0 replays the whole state topic.
+ * --checkpoint is the local RocksDB checkpoint interval in milliseconds, 0 disables it.
+ * --failover=true runs two instances and only stops one of them, recovery is the time the other one needs to take
+ * over its queues; --standby is the number of standby replicas. Both instances share the RocksDB directory of this
+ * process, so failover needs --store=heap. --allocate is the queue allocate strategy of the instances.
+ * --scale=N changes the worker threads of the running instance to N instead of stopping it, recovery is the time the
+ * threads need to hand over state and consume the backlog.
+ * Broker latency and network are not part of the numbers, use them for relative comparison and capacity planning of
+ * the engine itself.
+ */
+public class EndToEndBenchmark {
+    private static final String SOURCE_TOPIC = "benchmarkSource";
+    private static final String RIGHT_TOPIC = "benchmarkRight";
+
+    private static volatile Histogram latency = new Histogram();
+
+    public static void main(String[] args) throws Throwable {
+        Map<String, String> options = parse(args);
+        String topology = options.getOrDefault("topology", "wordcount");
+        long records = Long.parseLong(options.getOrDefault("records", "1000000"));
+        int keys = Integer.parseInt(options.getOrDefault("keys", "10000"));
+        long rate = Long.parseLong(options.getOrDefault("rate", "0"));
+        int queues = Integer.parseInt(options.getOrDefault("queues", "8"));
+        long windowSeconds = Long.parseLong(options.getOrDefault("window", "5"));
+        long recovery = Long.parseLong(options.getOrDefault("recovery", "0"));
+        boolean failover = Boolean.parseBoolean(options.getOrDefault("failover", "false"));
+        int scale = Integer.parseInt(options.getOrDefault("scale", "0"));
+
+        //StreamConfig在类加载时读取线程数
+        System.setProperty("streams_parallel_thread_num", options.getOrDefault("threads", "1"));
+        System.setProperty("shuffle_topic_queue_num", String.valueOf(queues));
+
+        InMemoryBroker broker = new InMemoryBroker(queues);
+        InMemoryRocketMQClient client = new InMemoryRocketMQClient(broker);
+        InMemoryProducer producer = new InMemoryProducer(broker, "benchmark_producer");
+        broker.createTopic(SOURCE_TOPIC, queues);
+        broker.createTopic(RIGHT_TOPIC, queues);
+
+        String jobId = "benchmark_" + topology + "_" + System.currentTimeMillis();
+        TopologyBuilder topologyBuilder = build(jobId, topology, windowSeconds);
+
+        Properties properties = new Properties();
+        properties.put(MixAll.NAMESRV_ADDR_PROPERTY, "127.0.0.1:9876");
+        properties.put(Constant.METRICS_JMX_ENABLE, false);
+        properties.put(Constant.STATE_STORE_TYPE, options.getOrDefault("store", Constant.STATE_STORE_TYPE_ROCKSDB));
+        properties.put(Constant.STATE_SNAPSHOT_INTERVAL_MILLISECOND, Long.parseLong(options.getOrDefault("snapshot", "0")));
+        long checkpoint = Long.parseLong(options.getOrDefault("checkpoint", "0"));
+        if (checkpoint > 0) {
+            properties.put(Constant.STATE_CHECKPOINT_DIR, System.getProperty("java.io.tmpdir") + "/rocketmq-streams-benchmark-checkpoint");
+            properties.put(Constant.STATE_CHECKPOINT_INTERVAL_MILLISECOND, checkpoint);
+        }
+
+        properties.put(Constant.STATE_STANDBY_REPLICAS, Integer.parseInt(options.getOrDefault("standby", "0")));
+        properties.put(Constant.QUEUE_ALLOCATE_STRATEGY, options.getOrDefault("allocate", Constant.QUEUE_ALLOCATE_STRATEGY_AVERAGE));
+        if (failover && Constant.STATE_STORE_TYPE_ROCKSDB.equals(properties.get(Constant.STATE_STORE_TYPE))) {
+            throw new IllegalArgumentException("instances in one process share the RocksDB directory, use --store=heap with --failover.");
+        }
+
+        String groupName = String.join("_", jobId, ROCKETMQ_STREAMS_CONSUMER_GROUP);
+        String[] topics = "join".equals(topology) ? new String[]{SOURCE_TOPIC, RIGHT_TOPIC} : new String[]{SOURCE_TOPIC};
+
+        RocketMQStream stream = new RocketMQStream(topologyBuilder, properties, client);
+        stream.start();
+
+        RocketMQStream survivor = null;
+        if (failover) {
+            survivor = new RocketMQStream(topologyBuilder, properties, client);
+            survivor.start();
+        }
+
+        System.out.printf("topology=%s, records=%d, keys=%d, rate=%d, threads=%s, queues=%d, store=%s%n",
+                topology, records, keys, rate, System.getProperty("streams_parallel_thread_num"), queues, properties.get(Constant.STATE_STORE_TYPE));
+
+        long begin = System.nanoTime();
+        produce(producer, topics, 0, records, keys, rate);
+        awaitCaughtUp(broker, groupName, topics);
+        long costNanos = System.nanoTime() - begin;
+
+        System.out.printf("throughput: %.0f records/s, cost %d ms%n",
+                records * topics.length * 1e9 / costNanos, TimeUnit.NANOSECONDS.toMillis(costNanos));
+        printLatency();
+
+        if (recovery > 0 && survivor != null) {
+            stream.stop();
+            produce(producer, topics, records, recovery, keys, 0);
+
+            latency = new Histogram();
+            long failoverBegin = System.nanoTime();
+            //shuffle topic也要消费完，接管的queue恢复状态之前不会处理
+            awaitCaughtUp(broker, groupName, topologyBuilder.getSourceTopic().toArray(new String[0]));
+            long failoverNanos = System.nanoTime() - failoverBegin;
+
+            System.out.printf("failover: %d ms to take over state and consume %d backlog records, standby=%s%n",
+                    TimeUnit.NANOSECONDS.toMillis(failoverNanos), recovery * topics.length, properties.get(Constant.STATE_STANDBY_REPLICAS));
+            printLatency();
+            survivor.stop();
+        } else if (recovery > 0 && scale > 0) {
+            latency = new Histogram();
+            long scaleBegin = System.nanoTime();
+            stream.scaleTo(scale);
+            produce(producer, topics, records, recovery, keys, 0);
+            awaitCaughtUp(broker, groupName, topologyBuilder.getSourceTopic().toArray(new String[0]));
+            long scaleNanos = System.nanoTime() - scaleBegin;
+
+            System.out.printf("scale: %d ms to scale from %s to %d threads and consume %d backlog records%n",
+                    TimeUnit.NANOSECONDS.toMillis(scaleNanos), System.getProperty("streams_parallel_thread_num"), scale, recovery * topics.length);
+            printLatency();
+            stream.stop();
+        } else if (recovery > 0) {
+            stream.stop();
+            produce(producer, topics, records, recovery, keys, 0);
+
+            latency = new Histogram();
+            RocketMQStream restarted = new RocketMQStream(topologyBuilder, properties, client);
+            long restartBegin = System.nanoTime();
+            restarted.start();
+            awaitCaughtUp(broker, groupName, topics);
+            long recoveryNanos = System.nanoTime() - restartBegin;
+
+            System.out.printf("recovery: %d ms to restore state and consume %d backlog records%n",
+                    TimeUnit.NANOSECONDS.toMillis(recoveryNanos), recovery * topics.length);
+            printLatency();
+            restarted.stop();
+        } else {
+            stream.stop();
+            if (survivor != null) {
+                survivor.stop();
+            }
+        }
+        System.exit(0);
+    }
+
+    private static TopologyBuilder build(String jobId, String topology, long windowSeconds) {
+        StreamBuilder builder = new StreamBuilder(jobId);
+
+        RStream<Event> source = builder.source(SOURCE_TOPIC, EndToEndBenchmark::deserialize);
+        switch (topology) {
+            case "wordcount": {
+                //和WordCount一样是keyBy之后的有状态聚合
+                source.keyBy(Event::getKey)
+                        .aggregate(new LatestAccumulator())
+                        .toRStream()
+                        .foreach(EndToEndBenchmark::record);
+                break;
+            }
+            case "window": {
+                source.keyBy(Event::getKey)
+                        .window(WindowBuilder.tumblingWindow(Time.seconds(windowSeconds)))
+                        .aggregate((String key, Event value, Event accumulator) -> Event.latest(accumulator, value))
+                        .toRStream()
+                        .foreach(EndToEndBenchmark::record);
+                break;
+            }
+            case "join": {
+                RStream<Event> right = builder.source(RIGHT_TOPIC, EndToEndBenchmark::deserialize);
+                source.join(right)
+                        .where(Event::getKey)
+                        .equalTo(Event::getKey)
+                        .window(WindowBuilder.tumblingWindow(Time.seconds(windowSeconds)))
+                        .apply(Event::latest)
+                        .foreach(EndToEndBenchmark::record);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unknown topology: " + topology + ", should be one of wordcount|window|join");
+        }
+        return builder.build();
+    }
+
+    private static Pair<Void, Event> deserialize(byte[] source) throws Throwable {
+        return new Pair<>(null, Utils.byte2Object(source, Event.class));
+    }
+
+    private static void record(Event event) {
+        if (event != null) {
+            latency.record(System.nanoTime() - event.getSendNanos());
+        }
+    }
+
+    private static void produce(InMemoryProducer producer, String[] topics, long from, long count, int keys, long rate) throws Throwable {
+        long intervalNanos = rate <= 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / rate;
+        long next = System.nanoTime();
+        for (long i = from; i < from + count; i++) {
+            if (intervalNanos > 0) {
+                next += intervalNanos;
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+
+            String key = "key-" + (i % keys);
+            for (String topic : topics) {
+                Event event = new Event(key, System.nanoTime(), "value-" + i);
+                producer.send(new Message(topic, Utils.object2Byte(event)));
+            }
+        }
+    }
+
+    private static void awaitCaughtUp(InMemoryBroker broker, String groupName, String[] topics) throws InterruptedException {
+        while (true) {
+            long lag = 0;
+            for (String topic : topics) {
+                lag += broker.lag(groupName, topic);
+            }
+            if (lag == 0) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static void printLatency() {
+        System.out.printf("latency(ms): count=%d, p50=%.3f, p99=%.3f, p999=%.3f, max=%.3f%n",
+                latency.getCount(),
+                latency.getP50() / 1e6,
+                latency.getP99() / 1e6,
+                latency.getP999() / 1e6,
+                latency.getMax() / 1e6);
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> result = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("illegal argument: " + arg + ", should be --name=value");
+            }
+            int index = arg.indexOf('=');
+            result.put(arg.substring(2, index), arg.substring(index + 1));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.benchmark.e2e;
+
+public class Event {
+    private String key;
+    private long sendNanos;
+    private String text;
+
+    public Event() {
+    }
+
+    public Event(String key, long sendNanos, String text) {
+        this.key = key;
+        this.sendNanos = sendNanos;
+        this.text = text;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public long getSendNanos() {
+        return sendNanos;
+    }
+
+    public void setSendNanos(long sendNanos) {
+        this.sendNanos = sendNanos;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    //保留两条数据中较新的一条，用来计算端到端延迟
+    public static Event latest(Event first, Event second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        return first.getSendNanos() >= second.getSendNanos() ? first : second;
+    }
+}
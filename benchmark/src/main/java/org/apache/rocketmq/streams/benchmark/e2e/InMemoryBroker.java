@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.benchmark.e2e;
+
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * namesrv + broker in one process, just enough for RocketMQStream: topics with queues, consumer group offsets and
+ * rebalance of subscribed consumers. Nothing is persisted, one broker named {@link #BROKER_NAME}.
+ */
+public class InMemoryBroker {
+    public static final String CLUSTER_NAME = "DefaultCluster";
+    public static final String BROKER_NAME = "broker-a";
+    public static final String BROKER_ADDR = "127.0.0.1:10911";
+
+    private final int defaultQueueNum;
+    private final ConcurrentHashMap<String, List<MessageQueue>> topics = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<MessageQueue, List<MessageExt>> queues = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String/*group*/, ConcurrentHashMap<MessageQueue, Long>> committedOffsets = new ConcurrentHashMap<>();
+    private final HashMap<String/*group*/, List<InMemoryLitePullConsumer>> groups = new HashMap<>();
+
+    //和客户端的RebalanceService一样在单独的线程中依次rebalance，worker同时注册时不会有旧的分配结果覆盖新的
+    private final ExecutorService rebalanceExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "InMemoryBrokerRebalance");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition newMessage = lock.newCondition();
+
+    public InMemoryBroker(int defaultQueueNum) {
+        this.defaultQueueNum = defaultQueueNum;
+    }
+
+    public List<MessageQueue> createTopic(String topic, int queueNum) {
+        return topics.computeIfAbsent(topic, name -> {
+            List<MessageQueue> result = new ArrayList<>(queueNum);
+            for (int i = 0; i < queueNum; i++) {
+                MessageQueue queue = new MessageQueue(name, BROKER_NAME, i);
+                queues.put(queue, new ArrayList<>());
+                result.add(queue);
+            }
+            return Collections.unmodifiableList(result);
+        });
+    }
+
+    //不存在时自动创建
+    public List<MessageQueue> getQueues(String topic) {
+        List<MessageQueue> result = topics.get(topic);
+        if (result != null) {
+            return result;
+        }
+        return createTopic(topic, defaultQueueNum);
+    }
+
+    public long put(MessageQueue queue, Message message) {
+        getQueues(queue.getTopic());
+        List<MessageExt> messages = queues.get(queue);
+        if (messages == null) {
+            throw new IllegalArgumentException("queue not exist: " + queue);
+        }
+
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic(queue.getTopic());
+        messageExt.setBrokerName(queue.getBrokerName());
+        messageExt.setQueueId(queue.getQueueId());
+        messageExt.setBody(message.getBody());
+        messageExt.setFlag(message.getFlag());
+        MessageAccessor.setProperties(messageExt, new HashMap<>(message.getProperties()));
+
+        long now = System.currentTimeMillis();
+        messageExt.setBornTimestamp(now);
+        messageExt.setStoreTimestamp(now);
+
+        long offset;
+        synchronized (messages) {
+            offset = messages.size();
+            messageExt.setQueueOffset(offset);
+            messageExt.setMsgId(queue.getTopic() + "-" + queue.getQueueId() + "-" + offset);
+            messages.add(messageExt);
+        }
+
+        lock.lock();
+        try {
+            newMessage.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return offset;
+    }
+
+    public List<MessageExt> pull(MessageQueue queue, long offset, int maxNums) {
+        List<MessageExt> messages = queues.get(queue);
+        if (messages == null) {
+            return Collections.emptyList();
+        }
+
+        synchronized (messages) {
+            if (offset >= messages.size()) {
+                return Collections.emptyList();
+            }
+            int end = (int) Math.min(messages.size(), offset + maxNums);
+            return new ArrayList<>(messages.subList((int) offset, end));
+        }
+    }
+
+    public long maxOffset(MessageQueue queue) {
+        List<MessageExt> messages = queues.get(queue);
+        if (messages == null) {
+            return 0;
+        }
+        synchronized (messages) {
+            return messages.size();
+        }
+    }
+
+    public void awaitMessage(long timeoutMillis) throws InterruptedException {
+        lock.lock();
+        try {
+            newMessage.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void commit(String group, MessageQueue queue, long offset) {
+        committedOffsets.computeIfAbsent(group, s -> new ConcurrentHashMap<>()).put(queue, offset);
+    }
+
+    public long committed(String group, MessageQueue queue) {
+        Map<MessageQueue, Long> offsets = committedOffsets.get(group);
+        if (offsets == null) {
+            return -1;
+        }
+        return offsets.getOrDefault(queue, -1L);
+    }
+
+    //所有订阅这个topic的group还没有消费的消息数
+    public long lag(String group, String topic) {
+        long result = 0;
+        for (MessageQueue queue : getQueues(topic)) {
+            result += maxOffset(queue) - Math.max(0, committed(group, queue));
+        }
+        return result;
+    }
+
+    void register(String group, InMemoryLitePullConsumer consumer) {
+        synchronized (groups) {
+            groups.computeIfAbsent(group, s -> new ArrayList<>()).add(consumer);
+        }
+        rebalanceExecutor.execute(() -> rebalance(group));
+    }
+
+    List<String> consumerIds(String group) {
+        List<String> result = new ArrayList<>();
+        synchronized (groups) {
+            for (InMemoryLitePullConsumer consumer : groups.getOrDefault(group, Collections.emptyList())) {
+                result.add(consumer.buildMQClientId());
+            }
+        }
+        return result;
+    }
+
+    void unregister(String group, InMemoryLitePullConsumer consumer) {
+        synchronized (groups) {
+            List<InMemoryLitePullConsumer> consumers = groups.get(group);
+            if (consumers == null || !consumers.remove(consumer)) {
+                return;
+            }
+        }
+        rebalanceExecutor.execute(() -> rebalance(group));
+    }
+
+    //和客户端一样，每个consumer用自己的分配策略计算分到的queue，默认是AllocateMessageQueueAveragely
+    private void rebalance(String group) {
+        List<InMemoryLitePullConsumer> consumers;
+        synchronized (groups) {
+            consumers = new ArrayList<>(groups.getOrDefault(group, Collections.emptyList()));
+        }
+        consumers.sort(Comparator.comparingLong(InMemoryLitePullConsumer::getId));
+
+        Set<String> subscribed = new HashSet<>();
+        for (InMemoryLitePullConsumer consumer : consumers) {
+            subscribed.addAll(consumer.getSubscribedTopics());
+        }
+
+        List<String> cidAll = new ArrayList<>();
+        for (InMemoryLitePullConsumer consumer : consumers) {
+            cidAll.add(consumer.buildMQClientId());
+        }
+
+        for (String topic : subscribed) {
+            List<MessageQueue> all = new ArrayList<>(getQueues(topic));
+            Collections.sort(all);
+            for (InMemoryLitePullConsumer consumer : consumers) {
+                Set<MessageQueue> divided = new HashSet<>(consumer.getAllocateMessageQueueStrategy()
+                        .allocate(group, consumer.buildMQClientId(), all, cidAll));
+                consumer.onRebalance(topic, new HashSet<>(all), divided);
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.benchmark.e2e;
+
+import org.apache.rocketmq.client.consumer.DefaultLitePullConsumer;
+import org.apache.rocketmq.client.consumer.MessageQueueListener;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DefaultLitePullConsumer backed by {@link InMemoryBroker}, supports both subscribe and assign mode.
+ * New queues start from the committed offset of the group, or from the first offset.
+ */
+public class InMemoryLitePullConsumer extends DefaultLitePullConsumer {
+    private static final AtomicLong ID_GENERATOR = new AtomicLong();
+
+    private final long id = ID_GENERATOR.incrementAndGet();
+    private final InMemoryBroker broker;
+    private final Set<String> subscribedTopics = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<MessageQueue, Long> positions = new ConcurrentHashMap<>();
+    private final Set<MessageQueue> paused = ConcurrentHashMap.newKeySet();
+
+    private volatile MessageQueueListener listener;
+    private volatile boolean running = false;
+
+    public InMemoryLitePullConsumer(InMemoryBroker broker, String groupName) {
+        super(groupName);
+        this.broker = broker;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    //补零后字符串顺序和id顺序一致，和broker的分配顺序相同
+    @Override
+    public String buildMQClientId() {
+        return String.format("%019d", id);
+    }
+
+    Set<String> getSubscribedTopics() {
+        return Collections.unmodifiableSet(subscribedTopics);
+    }
+
+    void onRebalance(String topic, Set<MessageQueue> mqAll, Set<MessageQueue> mqDivided) {
+        //已经关闭的consumer不再rebalance
+        MessageQueueListener current = this.listener;
+        if (current != null && running) {
+            current.messageQueueChanged(topic, mqAll, mqDivided);
+        }
+    }
+
+    //和客户端内部的listener一样，只更新分配到的queue
+    private void updateAssignment(String topic, Set<MessageQueue> mqAll, Set<MessageQueue> mqDivided) {
+        positions.keySet().removeIf(queue -> queue.getTopic().equals(topic) && !mqDivided.contains(queue));
+        for (MessageQueue queue : mqDivided) {
+            positions.computeIfAbsent(queue, this::startOffset);
+        }
+    }
+
+    private long startOffset(MessageQueue queue) {
+        return Math.max(0, broker.committed(getConsumerGroup(), queue));
+    }
+
+    @Override
+    public void start() {
+        this.running = true;
+        if (subscribedTopics.size() != 0) {
+            broker.register(getConsumerGroup(), this);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        this.running = false;
+        broker.unregister(getConsumerGroup(), this);
+        positions.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void subscribe(String topic, String subExpression) {
+        subscribedTopics.add(topic);
+        if (this.listener == null) {
+            this.listener = this::updateAssignment;
+        }
+    }
+
+    @Override
+    public MessageQueueListener getMessageQueueListener() {
+        return listener;
+    }
+
+    @Override
+    public void setMessageQueueListener(MessageQueueListener messageQueueListener) {
+        this.listener = messageQueueListener;
+    }
+
+    @Override
+    public void assign(Collection<MessageQueue> messageQueues) {
+        //和客户端一样，保留仍然分配的queue的拉取位置
+        positions.keySet().retainAll(messageQueues);
+        for (MessageQueue queue : messageQueues) {
+            positions.computeIfAbsent(queue, this::startOffset);
+        }
+    }
+
+    @Override
+    public Set<MessageQueue> assignment() {
+        return new HashSet<>(positions.keySet());
+    }
+
+    @Override
+    public Collection<MessageQueue> fetchMessageQueues(String topic) {
+        return new ArrayList<>(broker.getQueues(topic));
+    }
+
+    @Override
+    public void seek(MessageQueue messageQueue, long offset) {
+        positions.put(messageQueue, offset);
+    }
+
+    @Override
+    public void seekToBegin(MessageQueue messageQueue) {
+        positions.put(messageQueue, 0L);
+    }
+
+    @Override
+    public void seekToEnd(MessageQueue messageQueue) {
+        positions.put(messageQueue, broker.maxOffset(messageQueue));
+    }
+
+    @Override
+    public void pause(Collection<MessageQueue> messageQueues) {
+        paused.addAll(messageQueues);
+    }
+
+    @Override
+    public void resume(Collection<MessageQueue> messageQueues) {
+        paused.removeAll(messageQueues);
+    }
+
+    @Override
+    public List<MessageExt> poll() {
+        return poll(getPollTimeoutMillis());
+    }
+
+    @Override
+    public List<MessageExt> poll(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (running) {
+            List<MessageExt> result = new ArrayList<>();
+            int remaining = getPullBatchSize();
+            for (Map.Entry<MessageQueue, Long> entry : positions.entrySet()) {
+                if (remaining <= 0) {
+                    break;
+                }
+                if (paused.contains(entry.getKey())) {
+                    continue;
+                }
+
+                List<MessageExt> messages = broker.pull(entry.getKey(), entry.getValue(), remaining);
+                if (messages.size() != 0) {
+                    //rebalance之后queue可能已经被移除
+                    positions.replace(entry.getKey(), entry.getValue() + messages.size());
+                    result.addAll(messages);
+                    remaining -= messages.size();
+                }
+            }
+
+            long wait = deadline - System.currentTimeMillis();
+            if (result.size() != 0 || wait <= 0) {
+                return result;
+            }
+
+            try {
+                broker.awaitMessage(Math.min(wait, 10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return result;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void commit(Set<MessageQueue> messageQueues, boolean persist) {
+        for (MessageQueue queue : messageQueues) {
+            Long position = positions.get(queue);
+            if (position != null) {
+                broker.commit(getConsumerGroup(), queue, position);
+            }
+        }
+    }
+
+    @Override
+    public void commitSync() {
+        commit(positions.keySet(), true);
+    }
+
+    @Override
+    public Long committed(MessageQueue messageQueue) {
+        return broker.committed(getConsumerGroup(), messageQueue);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.benchmark.e2e;
+
+import org.apache.rocketmq.common.TopicConfig;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.body.ClusterInfo;
+import org.apache.rocketmq.common.protocol.body.Connection;
+import org.apache.rocketmq.common.protocol.body.ConsumerConnection;
+import org.apache.rocketmq.common.protocol.route.BrokerData;
+import org.apache.rocketmq.common.protocol.route.QueueData;
+import org.apache.rocketmq.common.protocol.route.TopicRouteData;
+import org.apache.rocketmq.common.constant.PermName;
+import org.apache.rocketmq.tools.admin.DefaultMQAdminExt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * only the admin calls made by RocketMQStream, every topic is routed to the single in-memory broker.
+ */
+public class InMemoryMQAdmin extends DefaultMQAdminExt {
+    private final InMemoryBroker broker;
+    //createAndUpdateTopicConfig设置的topic属性，例如state topic的cleanup.policy
+    private final ConcurrentHashMap<String, TopicConfig> topicConfigs = new ConcurrentHashMap<>();
+
+    public InMemoryMQAdmin(InMemoryBroker broker) {
+        this.broker = broker;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public long maxOffset(MessageQueue mq) {
+        return broker.maxOffset(mq);
+    }
+
+    @Override
+    public long minOffset(MessageQueue mq) {
+        return 0;
+    }
+
+    @Override
+    public void updateConsumeOffset(String brokerAddr, String consumeGroup, MessageQueue mq, long offset) {
+        broker.commit(consumeGroup, mq, offset);
+    }
+
+    @Override
+    public void createAndUpdateTopicConfig(String addr, TopicConfig config) {
+        broker.createTopic(config.getTopicName(), config.getReadQueueNums());
+        topicConfigs.put(config.getTopicName(), config);
+    }
+
+    @Override
+    public TopicConfig examineTopicConfig(String addr, String topic) {
+        TopicConfig config = topicConfigs.get(topic);
+        if (config != null) {
+            return config;
+        }
+
+        int queueNum = broker.getQueues(topic).size();
+        return new TopicConfig(topic, queueNum, queueNum, PermName.PERM_READ | PermName.PERM_WRITE);
+    }
+
+    @Override
+    public TopicRouteData examineTopicRouteInfo(String topic) {
+        int queueNum = broker.getQueues(topic).size();
+
+        QueueData queueData = new QueueData();
+        queueData.setBrokerName(InMemoryBroker.BROKER_NAME);
+        queueData.setReadQueueNums(queueNum);
+        queueData.setWriteQueueNums(queueNum);
+        queueData.setPerm(PermName.PERM_READ | PermName.PERM_WRITE);
+
+        HashMap<Long, String> addrs = new HashMap<>();
+        addrs.put(0L, InMemoryBroker.BROKER_ADDR);
+        BrokerData brokerData = new BrokerData(InMemoryBroker.CLUSTER_NAME, InMemoryBroker.BROKER_NAME, addrs);
+
+        TopicRouteData routeData = new TopicRouteData();
+        List<QueueData> queueDatas = new ArrayList<>();
+        queueDatas.add(queueData);
+        List<BrokerData> brokerDatas = new ArrayList<>();
+        brokerDatas.add(brokerData);
+        routeData.setQueueDatas(queueDatas);
+        routeData.setBrokerDatas(brokerDatas);
+        return routeData;
+    }
+
+    @Override
+    public ConsumerConnection examineConsumerConnectionInfo(String consumerGroup) {
+        HashSet<Connection> connections = new HashSet<>();
+        for (String clientId : broker.consumerIds(consumerGroup)) {
+            Connection connection = new Connection();
+            connection.setClientId(clientId);
+            connections.add(connection);
+        }
+
+        ConsumerConnection consumerConnection = new ConsumerConnection();
+        consumerConnection.setConnectionSet(connections);
+        return consumerConnection;
+    }
+
+    @Override
+    public ClusterInfo examineBrokerClusterInfo() {
+        HashMap<Long, String> addrs = new HashMap<>();
+        addrs.put(0L, InMemoryBroker.BROKER_ADDR);
+
+        HashMap<String, BrokerData> brokerAddrTable = new HashMap<>();
+        brokerAddrTable.put(InMemoryBroker.BROKER_NAME, new BrokerData(InMemoryBroker.CLUSTER_NAME, InMemoryBroker.BROKER_NAME, addrs));
+
+        HashMap<String, Set<String>> clusterAddrTable = new HashMap<>();
+        clusterAddrTable.put(InMemoryBroker.CLUSTER_NAME, new HashSet<>(Collections.singleton(InMemoryBroker.BROKER_NAME)));
+
+        ClusterInfo clusterInfo = new ClusterInfo();
+        clusterInfo.setBrokerAddrTable(brokerAddrTable);
+        clusterInfo.setClusterAddrTable(clusterAddrTable);
+        return clusterInfo;
+    }
+}
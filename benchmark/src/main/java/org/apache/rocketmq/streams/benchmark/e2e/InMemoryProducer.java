@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.benchmark.e2e;
+
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InMemoryProducer extends DefaultMQProducer {
+    private final InMemoryBroker broker;
+    private final AtomicInteger roundRobin = new AtomicInteger();
+
+    public InMemoryProducer(InMemoryBroker broker, String groupName) {
+        super(groupName);
+        this.broker = broker;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public List<MessageQueue> fetchPublishMessageQueues(String topic) {
+        return new ArrayList<>(broker.getQueues(topic));
+    }
+
+    @Override
+    public SendResult send(Message msg) {
+        List<MessageQueue> queues = broker.getQueues(msg.getTopic());
+        MessageQueue queue = queues.get(Math.abs(roundRobin.getAndIncrement() % queues.size()));
+        return send(msg, queue);
+    }
+
+    @Override
+    public SendResult send(Message msg, long timeout) {
+        return send(msg);
+    }
+
+    @Override
+    public SendResult send(Message msg, MessageQueue mq) {
+        long offset = broker.put(mq, msg);
+        return new SendResult(SendStatus.SEND_OK, mq.getTopic() + "-" + mq.getQueueId() + "-" + offset, null, mq, offset);
+    }
+
+    @Override
+    public SendResult send(Message msg, MessageQueue mq, long timeout) {
+        return send(msg, mq);
+    }
+
+    @Override
+    public SendResult send(Collection<Message> msgs, MessageQueue mq) {
+        //和broker一样，返回批量中第一条消息的位点
+        SendResult result = null;
+        for (Message msg : msgs) {
+            SendResult sendResult = send(msg, mq);
+            if (result == null) {
+                result = sendResult;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public SendResult send(Collection<Message> msgs, MessageQueue mq, long timeout) {
+        return send(msgs, mq);
+    }
+
+    @Override
+    public SendResult send(Message msg, MessageQueueSelector selector, Object arg) {
+        List<MessageQueue> queues = broker.getQueues(msg.getTopic());
+        return send(msg, selector.select(queues, msg, arg));
+    }
+
+    @Override
+    public SendResult send(Message msg, MessageQueueSelector selector, Object arg, long timeout) {
+        return send(msg, selector, arg);
+    }
+}
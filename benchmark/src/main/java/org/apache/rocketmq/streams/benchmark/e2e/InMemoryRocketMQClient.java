@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.benchmark.e2e;
+
+import org.apache.rocketmq.client.consumer.DefaultLitePullConsumer;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.streams.core.running.RocketMQClient;
+import org.apache.rocketmq.tools.admin.DefaultMQAdminExt;
+
+import java.util.Set;
+
+import static org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData.SUB_ALL;
+
+public class InMemoryRocketMQClient extends RocketMQClient {
+    private final InMemoryBroker broker;
+
+    public InMemoryRocketMQClient(InMemoryBroker broker) {
+        super("127.0.0.1:9876");
+        this.broker = broker;
+    }
+
+    @Override
+    public DefaultLitePullConsumer pullConsumer(String groupName, Set<String> topics) {
+        InMemoryLitePullConsumer consumer = new InMemoryLitePullConsumer(broker, groupName);
+        consumer.setAutoCommit(false);
+        consumer.setPullBatchSize(1000);
+        for (String topic : topics) {
+            consumer.subscribe(topic, SUB_ALL);
+        }
+        return consumer;
+    }
+
+    @Override
+    public DefaultLitePullConsumer restoreConsumer(String groupName) {
+        InMemoryLitePullConsumer consumer = new InMemoryLitePullConsumer(broker, groupName);
+        consumer.setAutoCommit(false);
+        return consumer;
+    }
+
+    @Override
+    public DefaultMQProducer producer(String groupName) {
+        return new InMemoryProducer(broker, groupName);
+    }
+
+    @Override
+    public DefaultMQAdminExt getMQAdmin() {
+        return new InMemoryMQAdmin(broker);
+    }
+
+    public InMemoryBroker getBroker() {
+        return broker;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.benchmark.e2e;
+
+import org.apache.rocketmq.streams.core.function.accumulator.Accumulator;
+
+import java.util.Properties;
+
+//因为需要序列化/反序列化这个类，所以必须给field生成setter/getter方法
+public class LatestAccumulator implements Accumulator<Event, Event> {
+    private Event latest;
+
+    @Override
+    public void addValue(Event value) {
+        latest = Event.latest(latest, value);
+    }
+
+    @Override
+    public void merge(Accumulator<Event, Event> other) {
+        latest = Event.latest(latest, other.result(null));
+    }
+
+    @Override
+    public Event result(Properties context) {
+        return latest;
+    }
+
+    public Event getLatest() {
+        return latest;
+    }
+
+    public void setLatest(Event latest) {
+        this.latest = latest;
+    }
+
+    @Override
+    public Accumulator<Event, Event> clone() {
+        LatestAccumulator accumulator = new LatestAccumulator();
+        accumulator.latest = this.latest;
+        return accumulator;
+    }
+}
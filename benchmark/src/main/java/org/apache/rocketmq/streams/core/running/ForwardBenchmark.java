@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.running;
+
+import org.apache.rocketmq.streams.core.common.Constant;
+import org.apache.rocketmq.streams.core.function.supplier.FilterSupplier;
+import org.apache.rocketmq.streams.core.function.supplier.FusedSupplier;
+import org.apache.rocketmq.streams.core.function.supplier.FusibleSupplier;
+import org.apache.rocketmq.streams.core.function.supplier.ValueChangeSupplier;
+import org.apache.rocketmq.streams.core.metadata.Data;
+import org.apache.rocketmq.streams.core.metrics.MetricsRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * StreamContextImpl.forward through map -> filter -> map, fused into one processor or as separate processors.
+ * in package running because StreamContextImpl is package private.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForwardBenchmark {
+    @Param({"true", "false"})
+    private boolean fused;
+
+    @Param({"false", "true"})
+    private boolean metrics;
+
+    private MetricsRegistry metricsRegistry;
+    private Processor<Object> head;
+    private Sink sink;
+    private long time;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup(Blackhole blackhole) {
+        Properties properties = new Properties();
+        properties.put(Constant.METRICS_JMX_ENABLE, Boolean.FALSE);
+        metricsRegistry = metrics ? new MetricsRegistry("benchmark", properties) : null;
+
+        List<FusibleSupplier> suppliers = new ArrayList<>();
+        suppliers.add(new ValueChangeSupplier<Integer, Integer>(value -> value + 1));
+        suppliers.add(new FilterSupplier<Integer>(value -> (value & 7) != 0));
+        suppliers.add(new ValueChangeSupplier<Integer, String>(String::valueOf));
+
+        sink = new Sink(blackhole);
+        sink.setName("sink");
+
+        if (fused) {
+            head = new FusedSupplier<>(suppliers).get();
+            head.setName("map+filter+map");
+            head.addChild(sink);
+        } else {
+            Processor<Object> parent = null;
+            for (int i = 0; i < suppliers.size(); i++) {
+                Processor<Object> processor = ((Supplier<Processor<Object>>) suppliers.get(i)).get();
+                processor.setName("op-" + i);
+                if (parent == null) {
+                    head = processor;
+                } else {
+                    parent.addChild(processor);
+                }
+                parent = processor;
+            }
+            parent.addChild(sink);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (metricsRegistry != null) {
+            metricsRegistry.close();
+        }
+    }
+
+    @Benchmark
+    public void forward() throws Throwable {
+        StreamContextImpl<Object> context = new StreamContextImpl<>(null, null, null, null, null,
+                "broker@topic@0", metricsRegistry);
+        if (metricsRegistry != null) {
+            context.setProcessorMetrics(metricsRegistry.operator("source"));
+        }
+        context.init(Collections.singletonList(head));
+
+        time++;
+        context.forward(new Data<>("key", (int) time, time, new Properties()));
+    }
+
+    private static class Sink extends AbstractProcessor<Object> {
+        private final Blackhole blackhole;
+
+        Sink(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void process(Object data) {
+            blackhole.consume(data);
+        }
+    }
+}
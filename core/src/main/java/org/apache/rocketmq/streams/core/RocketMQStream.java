@@ -16,11 +16,16 @@ package org.apache.rocketmq.streams.core;
  * limitations under the License.
  */
 
+import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.streams.core.common.Constant;
 import org.apache.rocketmq.streams.core.exception.RStreamsException;
 import org.apache.rocketmq.streams.core.metadata.StreamConfig;
+import org.apache.rocketmq.streams.core.metrics.MetricsRegistry;
+import org.apache.rocketmq.streams.core.running.RocketMQClient;
 import org.apache.rocketmq.streams.core.running.WorkerThread;
+import org.apache.rocketmq.streams.core.state.GlobalTableStore;
 import org.apache.rocketmq.streams.core.topology.TopologyBuilder;
+import org.apache.rocketmq.tools.admin.DefaultMQAdminExt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,12 +38,20 @@ public class RocketMQStream {
     private static final Logger logger = LoggerFactory.getLogger(RocketMQStream.class.getName());
     private final TopologyBuilder topologyBuilder;
     private final Properties properties;
+    private final RocketMQClient rocketMQClient;
     private final List<WorkerThread> workerThreads = new ArrayList<>();
     private final AtomicBoolean started = new AtomicBoolean(false);
+    private int threadNum = StreamConfig.STREAMS_PARALLEL_THREAD_NUM;
+    private MetricsRegistry metricsRegistry;
 
     public RocketMQStream(TopologyBuilder topologyBuilder, Properties properties) {
+        this(topologyBuilder, properties, new RocketMQClient(properties.getProperty(MixAll.NAMESRV_ADDR_PROPERTY)));
+    }
+
+    public RocketMQStream(TopologyBuilder topologyBuilder, Properties properties, RocketMQClient rocketMQClient) {
         this.topologyBuilder = topologyBuilder;
         this.properties = properties;
+        this.rocketMQClient = rocketMQClient;
     }
 
 
@@ -53,14 +66,16 @@ public class RocketMQStream {
 
         //启动线程
         try {
-            int threadNum = StreamConfig.STREAMS_PARALLEL_THREAD_NUM;
-            for (int i = 0; i < threadNum; i++) {
-                String threadName = String.join("_", Constant.WORKER_THREAD_NAME, jobId, String.valueOf(i));
+            Object metricsEnable = this.properties.getOrDefault(Constant.METRICS_ENABLE, Boolean.TRUE);
+            if (metricsEnable == Boolean.TRUE || Constant.TRUE.equalsIgnoreCase(String.valueOf(metricsEnable))) {
+                this.metricsRegistry = new MetricsRegistry(jobId, this.properties);
+                this.metricsRegistry.start();
+            }
 
-                WorkerThread thread = new WorkerThread(threadName, topologyBuilder, this.properties);
+            startGlobalTable();
 
-                thread.start();
-                workerThreads.add(thread);
+            for (int i = 0; i < threadNum; i++) {
+                startWorkerThread(i);
             }
         } catch (Throwable t) {
             logger.error("start RocketMQStream error, jobId=[{}].", jobId, t);
@@ -68,14 +83,92 @@ public class RocketMQStream {
         }
     }
 
-    public void stop() {
+    //运行中调整worker线程数，不需要重启进程。
+    //扩容时新线程加入consumer group触发rebalance，原来的线程释放queue后由新线程恢复状态；
+    //缩容时从序号最大的线程开始停止，线程退出前持久化状态、提交位点、写本地checkpoint，剩下的线程接管它的queue。
+    //线程名按照序号复用，缩容后再扩容时可以从同名线程的本地状态恢复。
+    public synchronized void scaleTo(int threadNum) {
+        if (threadNum <= 0) {
+            throw new IllegalArgumentException("thread num should be positive, but " + threadNum);
+        }
+
+        String jobId = topologyBuilder.getJobId();
+        int current = this.threadNum;
+        this.threadNum = threadNum;
+        if (!started.get()) {
+            logger.info("RocketMQStream is not running, use {} threads when start, jobId=[{}].", threadNum, jobId);
+            return;
+        }
+
+        logger.info("scale worker threads from {} to {}, jobId=[{}].", current, threadNum, jobId);
+        try {
+            for (int i = workerThreads.size(); i < threadNum; i++) {
+                startWorkerThread(i);
+            }
+        } catch (Throwable t) {
+            logger.error("scale RocketMQStream error, jobId=[{}].", jobId, t);
+            throw new RStreamsException(t);
+        }
+
+        //一次停一个，每次只移动一个线程的queue
+        while (workerThreads.size() > threadNum) {
+            WorkerThread thread = workerThreads.remove(workerThreads.size() - 1);
+            thread.shutdown();
+        }
+    }
+
+    public synchronized int getThreadNum() {
+        return threadNum;
+    }
+
+    private void startWorkerThread(int index) throws Throwable {
+        String threadName = String.join("_", Constant.WORKER_THREAD_NAME, topologyBuilder.getJobId(), String.valueOf(index));
+
+        WorkerThread thread = new WorkerThread(threadName, topologyBuilder, this.properties, rocketMQClient, metricsRegistry);
+
+        thread.start();
+        workerThreads.add(thread);
+    }
+
+    //全局表每个进程加载一份，所有WorkerThread共享
+    private void startGlobalTable() throws Throwable {
+        if (topologyBuilder.getGlobalTables().size() == 0) {
+            return;
+        }
+
+        DefaultMQAdminExt mqAdmin = rocketMQClient.getMQAdmin();
+        try {
+            for (GlobalTableStore<?, ?> store : topologyBuilder.getGlobalTables()) {
+                store.start(topologyBuilder.getJobId(), rocketMQClient, mqAdmin);
+            }
+        } finally {
+            mqAdmin.shutdown();
+        }
+    }
+
+    public synchronized void stop() {
         for (WorkerThread thread : workerThreads) {
             thread.shutdown();
         }
         workerThreads.clear();
+        for (GlobalTableStore<?, ?> store : topologyBuilder.getGlobalTables()) {
+            try {
+                store.close();
+            } catch (Throwable t) {
+                logger.error("close global table error, name=[{}].", store.getName(), t);
+            }
+        }
+        if (metricsRegistry != null) {
+            metricsRegistry.close();
+            metricsRegistry = null;
+        }
         this.started.set(false);
     }
 
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
     public boolean isRunning() {
         return this.started.get();
     }
@@ -32,8 +32,66 @@ public class Constant {
 
     public static final String SKIP_DATA_ERROR = "skip_data_error";
 
+    //watermark比最大事件时间延迟的时间（毫秒，Number或String），作用于整个job，默认0
+    //它推迟窗口的首次触发，延迟内到达的乱序数据计入首次结果；窗口触发后保留状态、接收迟到数据并更新结果的时间由WindowInfo.allowedLateness单独配置
     public static final String ALLOW_LATENESS_MILLISECOND = "allowLatenessMillisecond";
 
+    public static final String SHUFFLE_BATCH_ENABLE = "shuffle_batch_enable";
+
+    public static final String SHUFFLE_BATCH_MAX_BYTES = "shuffle_batch_max_bytes";
+
+    public static final String SHUFFLE_BATCH_LINGER_MILLISECOND = "shuffle_batch_linger_millisecond";
+
+    public static final String SHUFFLE_LOCAL_ENABLE = "shuffle_local_enable";
+
+    //record count of a batched shuffle message
+    public static final String SHUFFLE_BATCH_SIZE = "shuffle_batch_size";
+
+    //MetricsReporter实现类的全类名，默认LogMetricsReporter
+    public static final String METRICS_REPORTER_CLASS = "metrics_reporter_class";
+
+    public static final String METRICS_REPORT_INTERVAL_MILLISECOND = "metrics_report_interval_millisecond";
+
+    public static final String METRICS_JMX_ENABLE = "metrics_jmx_enable";
+
+    //关闭时不创建MetricsRegistry，算子不再统计耗时和数据量，默认开启
+    public static final String METRICS_ENABLE = "metrics_enable";
+
+    //本地状态存储类型，rocksdb（默认）或者heap
+    public static final String STATE_STORE_TYPE = "state_store_type";
+
+    public static final String STATE_STORE_TYPE_ROCKSDB = "rocksdb";
+
+    public static final String STATE_STORE_TYPE_HEAP = "heap";
+
+    //heap状态存储的内存上限，默认256MB
+    public static final String STATE_HEAP_MAX_BYTES = "state_heap_max_bytes";
+
+    //状态topic使用compact清理策略，broker不支持时退化为普通topic，默认false
+    public static final String STATE_TOPIC_COMPACTION = "state_topic_compaction";
+
+    //非compact状态topic写全量快照的间隔，恢复时从最近的快照开始重放，小于等于0或者不配置时不开启
+    public static final String STATE_SNAPSHOT_INTERVAL_MILLISECOND = "state_snapshot_interval_millisecond";
+
+    //RocksDB本地checkpoint的根目录，配置后才开启，重启或者本机重新分配queue时从checkpoint恢复
+    public static final String STATE_CHECKPOINT_DIR = "state_checkpoint_dir";
+
+    //本地checkpoint的间隔，默认1分钟
+    public static final String STATE_CHECKPOINT_INTERVAL_MILLISECOND = "state_checkpoint_interval_millisecond";
+
+    //快照开始标记
+    public static final String STATE_SNAPSHOT = "state_snapshot";
+
+    //每个worker额外跟随的其他worker的数量，持续重放它们的state topic queue，接管时只需要重放最后一段，默认0不开启
+    public static final String STATE_STANDBY_REPLICAS = "state_standby_replicas";
+
+    //queue分配策略，average（默认，RocketMQ的平均分配）或者sticky，所有实例必须使用相同的策略
+    public static final String QUEUE_ALLOCATE_STRATEGY = "queue_allocate_strategy";
+
+    public static final String QUEUE_ALLOCATE_STRATEGY_AVERAGE = "average";
+
+    public static final String QUEUE_ALLOCATE_STRATEGY_STICKY = "sticky";
+
     public static final String SPLIT = "@";
 
     public static final String EMPTY_BODY = "empty_body";
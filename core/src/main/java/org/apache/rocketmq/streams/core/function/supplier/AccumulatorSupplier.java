@@ -78,7 +78,7 @@ public class AccumulatorSupplier<K, V, R, OV> implements Supplier<Processor<V>>
 
             byte[] keyBytes = super.object2Byte(key);
 
-            byte[] valueBytes = stateStore.get(keyBytes);
+            byte[] valueBytes = stateStore.get(stateTopicMessageQueue, keyBytes);
             if (valueBytes == null || valueBytes.length == 0) {
                 value = accumulator.clone();
             } else {
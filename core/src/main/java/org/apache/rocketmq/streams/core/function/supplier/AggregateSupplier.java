@@ -79,7 +79,7 @@ public class AggregateSupplier<K, V, OV> implements Supplier<Processor<V>> {
 
             byte[] keyBytes = super.object2Byte(key);
 
-            byte[] valueBytes = stateStore.get(keyBytes);
+            byte[] valueBytes = stateStore.get(stateTopicMessageQueue, keyBytes);
             if (valueBytes == null || valueBytes.length == 0) {
                 value = initAction.get();
             } else {
@@ -23,7 +23,7 @@ import org.apache.rocketmq.streams.core.running.Processor;
 
 import java.util.function.Supplier;
 
-public class FilterSupplier<T> implements Supplier<Processor<T>> {
+public class FilterSupplier<T> implements Supplier<Processor<T>>, FusibleSupplier {
     private FilterAction<T> filterAction;
 
     public FilterSupplier(FilterAction<T> filterAction) {
@@ -35,6 +35,16 @@ public class FilterSupplier<T> implements Supplier<Processor<T>> {
         return new FilterProcessor(filterAction);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public Collector fuse(Collector downstream) {
+        return data -> {
+            if (filterAction.apply((T) data)) {
+                downstream.collect(data);
+            }
+        };
+    }
+
     private class FilterProcessor extends AbstractProcessor<T> {
         private final FilterAction<T> filterAction;
 
@@ -23,7 +23,7 @@ import org.apache.rocketmq.streams.core.running.Processor;
 
 import java.util.function.Supplier;
 
-public class ForeachSupplier<T> implements Supplier<Processor<T>> {
+public class ForeachSupplier<T> implements Supplier<Processor<T>>, FusibleSupplier {
     private ForeachAction<T> foreachAction;
 
     public ForeachSupplier(ForeachAction<T> foreachAction) {
@@ -35,6 +35,15 @@ public class ForeachSupplier<T> implements Supplier<Processor<T>> {
         return new ForeachProcessor(this.foreachAction);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public Collector fuse(Collector downstream) {
+        return data -> {
+            foreachAction.apply((T) data);
+            downstream.collect(data);
+        };
+    }
+
     class ForeachProcessor extends AbstractProcessor<T> {
         private ForeachAction<T> foreachAction;
 
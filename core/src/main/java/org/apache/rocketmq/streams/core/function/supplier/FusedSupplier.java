@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.function.supplier;
+
+import org.apache.rocketmq.streams.core.metadata.Data;
+import org.apache.rocketmq.streams.core.running.AbstractProcessor;
+import org.apache.rocketmq.streams.core.running.Processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+public class FusedSupplier<T> implements Supplier<Processor<T>> {
+    private final List<FusibleSupplier> suppliers;
+
+    public FusedSupplier(List<FusibleSupplier> suppliers) {
+        this.suppliers = new ArrayList<>(suppliers);
+    }
+
+    @Override
+    public Processor<T> get() {
+        return new FusedProcessor(this.suppliers);
+    }
+
+    private class FusedProcessor extends AbstractProcessor<T> {
+        private final FusibleSupplier.Collector chain;
+
+        public FusedProcessor(List<FusibleSupplier> suppliers) {
+            FusibleSupplier.Collector chain = this::emit;
+            for (int i = suppliers.size() - 1; i >= 0; i--) {
+                chain = suppliers.get(i).fuse(chain);
+            }
+            this.chain = chain;
+        }
+
+        @Override
+        public void process(T data) throws Throwable {
+            this.chain.collect(data);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void emit(Object value) throws Throwable {
+            Data<Object, T> result = new Data<>(this.context.getKey(), (T) value, this.context.getDataTime(), this.context.getHeader());
+            this.context.forward(result);
+        }
+    }
+}
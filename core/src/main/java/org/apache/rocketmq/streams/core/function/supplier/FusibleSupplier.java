@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.function.supplier;
+
+/**
+ * 无状态、不改变key/时间/header的算子，可以与相邻算子合并成一个processor，
+ * 数据在合并后的算子之间直接调用，不再经过StreamContext.forward。
+ */
+public interface FusibleSupplier {
+
+    /**
+     * @param downstream 下一个算子
+     * @return 执行当前算子后把结果交给downstream的调用链
+     */
+    Collector fuse(Collector downstream);
+
+    interface Collector {
+        void collect(Object data) throws Throwable;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.function.supplier;
+
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.streams.core.common.Constant;
+import org.apache.rocketmq.streams.core.exception.RecoverStateStoreThrowable;
+import org.apache.rocketmq.streams.core.function.ValueJoinAction;
+import org.apache.rocketmq.streams.core.metadata.Data;
+import org.apache.rocketmq.streams.core.running.AbstractProcessor;
+import org.apache.rocketmq.streams.core.running.Processor;
+import org.apache.rocketmq.streams.core.running.StreamContext;
+import org.apache.rocketmq.streams.core.state.StateStore;
+import org.apache.rocketmq.streams.core.util.Pair;
+import org.apache.rocketmq.streams.core.util.Utils;
+import org.apache.rocketmq.streams.core.window.JoinState;
+import org.apache.rocketmq.streams.core.window.StreamType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * interval join: left.time + lower &lt;= right.time &lt;= left.time + upper
+ */
+public class IntervalJoinAggregateSupplier<K, V1, V2, OUT> implements Supplier<Processor<? super OUT>>, SharedStateSupplier {
+    private static final Logger logger = LoggerFactory.getLogger(IntervalJoinAggregateSupplier.class.getName());
+
+    private static final long SWEEP_INTERVAL = 60 * 1000L;
+
+    private final String name;
+    private final long lowerBound;
+    private final long upperBound;
+    private final ValueJoinAction<V1, V2, OUT> joinAction;
+    //左右流来自不同的shuffle topic，watermark各自推进；key是共用state topic queue的brokerName@queueId@流
+    private final ConcurrentHashMap<String, Long> watermarks = new ConcurrentHashMap<>();
+
+    public IntervalJoinAggregateSupplier(String name, long lowerBound, long upperBound, ValueJoinAction<V1, V2, OUT> joinAction) {
+        if (lowerBound > upperBound) {
+            throw new IllegalArgumentException("lower bound should not be greater than upper bound, lower=" + lowerBound + ", upper=" + upperBound);
+        }
+        this.name = name;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.joinAction = joinAction;
+    }
+
+    //左右流来自不同的shuffle topic，状态保存在两侧共用的state topic中
+    @Override
+    public String getStateTopic() {
+        return name + Constant.STATE_TOPIC_SUFFIX;
+    }
+
+    @Override
+    public Processor<Object> get() {
+        return new IntervalJoinProcessor();
+    }
+
+    private class IntervalJoinProcessor extends AbstractProcessor<Object> {
+        private MessageQueue stateTopicMessageQueue;
+        private StateStore stateStore;
+        private long lastSweepTime = System.currentTimeMillis();
+
+        @Override
+        public void preProcess(StreamContext<Object> context) throws RecoverStateStoreThrowable {
+            super.preProcess(context);
+            this.stateStore = super.waitStateReplay();
+            this.stateTopicMessageQueue = new MessageQueue(getStateTopic(), getSourceBrokerName(), getSourceQueueId());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void process(Object data) throws Throwable {
+            Object key = this.context.getKey();
+            long time = this.context.getDataTime();
+            Properties header = this.context.getHeader();
+            StreamType streamType = (StreamType) header.get(Constant.STREAM_TAG);
+            watermarks.merge(watermarkKey(streamType), this.context.getWatermark(), Math::max);
+
+            switch (streamType) {
+                case LEFT_STREAM: {
+                    store(StreamType.LEFT_STREAM, key, time, data);
+
+                    //右流中 [time + lower, time + upper] 的数据
+                    JoinState rightState = load(StreamType.RIGHT_STREAM, key);
+                    for (Pair<Long, byte[]> entry : rightState.getEntries()) {
+                        long rightTime = entry.getKey();
+                        if (rightTime >= time + lowerBound && rightTime <= time + upperBound) {
+                            V2 v2Data = super.byte2Object(entry.getValue());
+                            doFire((V1) data, v2Data, Math.max(time, rightTime));
+                        }
+                    }
+                    break;
+                }
+                case RIGHT_STREAM: {
+                    store(StreamType.RIGHT_STREAM, key, time, data);
+
+                    //左流中 [time - upper, time - lower] 的数据
+                    JoinState leftState = load(StreamType.LEFT_STREAM, key);
+                    for (Pair<Long, byte[]> entry : leftState.getEntries()) {
+                        long leftTime = entry.getKey();
+                        if (leftTime >= time - upperBound && leftTime <= time - lowerBound) {
+                            V1 v1Data = super.byte2Object(entry.getValue());
+                            doFire(v1Data, (V2) data, Math.max(time, leftTime));
+                        }
+                    }
+                    break;
+                }
+            }
+
+            sweep();
+        }
+
+        private void store(StreamType streamType, Object key, long time, Object data) throws Throwable {
+            long expireBefore = expireBefore(streamType);
+            if (time < expireBefore) {
+                //另一侧之后的数据已经不可能匹配上
+                return;
+            }
+
+            byte[] keyBytes = Utils.object2Byte(storeKey(streamType, key));
+            JoinState joinState = JoinState.byte2JoinState(this.stateStore.get(stateTopicMessageQueue, keyBytes));
+            joinState.expire(expireBefore);
+            joinState.add(time, super.object2Byte(data));
+
+            this.stateStore.put(stateTopicMessageQueue, keyBytes, JoinState.joinState2Byte(joinState));
+        }
+
+        private JoinState load(StreamType streamType, Object key) throws Throwable {
+            byte[] keyBytes = Utils.object2Byte(storeKey(streamType, key));
+            JoinState joinState = JoinState.byte2JoinState(this.stateStore.get(stateTopicMessageQueue, keyBytes));
+
+            if (joinState.expire(expireBefore(streamType))) {
+                update(keyBytes, joinState);
+            }
+            return joinState;
+        }
+
+        private void update(byte[] keyBytes, JoinState joinState) throws Throwable {
+            if (joinState.isEmpty()) {
+                this.stateStore.delete(stateTopicMessageQueue, keyBytes);
+            } else {
+                this.stateStore.put(stateTopicMessageQueue, keyBytes, JoinState.joinState2Byte(joinState));
+            }
+        }
+
+        //定期清理不再被访问的key
+        private void sweep() throws Throwable {
+            long now = System.currentTimeMillis();
+            if (now - lastSweepTime < SWEEP_INTERVAL) {
+                return;
+            }
+            lastSweepTime = now;
+
+            for (StreamType streamType : new StreamType[]{StreamType.LEFT_STREAM, StreamType.RIGHT_STREAM}) {
+                //key是json序列化的字符串，以引号开头
+                String prefix = "\"" + Utils.buildKey(name, streamType.name(), getSourceBrokerName(), String.valueOf(getSourceQueueId())) + Constant.SPLIT;
+                List<Pair<String, byte[]>> pairs = this.stateStore.searchByKeyPrefix(stateTopicMessageQueue, prefix,
+                        source -> source.getBytes(StandardCharsets.UTF_8), source -> new String(source, StandardCharsets.UTF_8));
+
+                long expireBefore = expireBefore(streamType);
+                for (Pair<String, byte[]> pair : pairs) {
+                    JoinState joinState = JoinState.byte2JoinState(pair.getValue());
+                    if (joinState.expire(expireBefore)) {
+                        update(pair.getKey().getBytes(StandardCharsets.UTF_8), joinState);
+                    }
+                }
+                logger.debug("sweep interval join state, operator:{}, side:{}, scanned:{}", name, streamType, pairs.size());
+            }
+        }
+
+        //一侧的数据只和另一侧之后的数据匹配，按另一侧的watermark清理：左流数据在 time + upper < 右流watermark 后不会再被匹配，
+        //右流数据在 time - lower < 左流watermark 后不会再被匹配；另一侧还没有数据时不清理
+        private long expireBefore(StreamType streamType) {
+            StreamType other = streamType == StreamType.LEFT_STREAM ? StreamType.RIGHT_STREAM : StreamType.LEFT_STREAM;
+            Long watermark = watermarks.get(watermarkKey(other));
+            if (watermark == null || watermark == Long.MIN_VALUE) {
+                return Long.MIN_VALUE;
+            }
+            if (streamType == StreamType.LEFT_STREAM) {
+                return watermark - upperBound;
+            }
+            return watermark + lowerBound;
+        }
+
+        private String watermarkKey(StreamType streamType) {
+            return Utils.buildKey(stateTopicMessageQueue.getBrokerName(), String.valueOf(stateTopicMessageQueue.getQueueId()), streamType.name());
+        }
+
+        private String storeKey(StreamType streamType, Object key) throws Throwable {
+            return Utils.buildKey(name, streamType.name(), getSourceBrokerName(), String.valueOf(getSourceQueueId()), super.toHexString(key));
+        }
+
+        private void doFire(V1 v1Data, V2 v2Data, long time) throws Throwable {
+            OUT out = joinAction.apply(v1Data, v2Data);
+
+            Data<K, OUT> result = new Data<>(this.context.getKey(), out, time, this.context.getHeader());
+            Data<K, Object> convert = super.convert(result);
+            this.context.forward(convert);
+        }
+    }
+}
@@ -24,27 +24,61 @@ import org.apache.rocketmq.streams.core.metadata.Data;
 import org.apache.rocketmq.streams.core.running.AbstractProcessor;
 import org.apache.rocketmq.streams.core.running.Processor;
 import org.apache.rocketmq.streams.core.running.StreamContext;
+import org.apache.rocketmq.streams.core.window.JoinState;
 import org.apache.rocketmq.streams.core.window.JoinType;
 import org.apache.rocketmq.streams.core.window.StreamType;
 import org.apache.rocketmq.streams.core.state.StateStore;
+import org.apache.rocketmq.streams.core.util.Pair;
 import org.apache.rocketmq.streams.core.util.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
-public class JoinAggregateSupplier<K, V1, V2, OUT> implements Supplier<Processor<? super OUT>> {
+public class JoinAggregateSupplier<K, V1, V2, OUT> implements Supplier<Processor<? super OUT>>, SharedStateSupplier {
     private static final Logger logger = LoggerFactory.getLogger(JoinAggregateSupplier.class.getName());
 
+    //不限制保留时间，与之前只保留最新值的行为一致
+    public static final long UNBOUNDED_RETENTION = Long.MAX_VALUE;
+
+    private static final long SWEEP_INTERVAL = 60 * 1000L;
+
     private String name;
     private JoinType joinType;
     private final ValueJoinAction<V1, V2, OUT> joinAction;
+    private final long leftRetention;
+    private final long rightRetention;
+    private final boolean multiValue;
+    //左右流来自不同的shuffle topic，watermark各自推进；key是共用state topic queue的brokerName@queueId@流
+    private final ConcurrentHashMap<String, Long> watermarks = new ConcurrentHashMap<>();
 
     public JoinAggregateSupplier(String name, JoinType joinType, ValueJoinAction<V1, V2, OUT> joinAction) {
+        this(name, joinType, joinAction, UNBOUNDED_RETENTION, UNBOUNDED_RETENTION, false);
+    }
+
+    /**
+     * @param leftRetention  event time in milliseconds to keep left stream data, UNBOUNDED_RETENTION means forever
+     * @param rightRetention event time in milliseconds to keep right stream data, UNBOUNDED_RETENTION means forever
+     * @param multiValue     buffer every value of a key, otherwise keep only the latest one
+     */
+    public JoinAggregateSupplier(String name, JoinType joinType, ValueJoinAction<V1, V2, OUT> joinAction,
+                                 long leftRetention, long rightRetention, boolean multiValue) {
         this.name = name;
         this.joinType = joinType;
         this.joinAction = joinAction;
+        this.leftRetention = leftRetention;
+        this.rightRetention = rightRetention;
+        this.multiValue = multiValue;
+    }
+
+    //左右流来自不同的shuffle topic，状态保存在两侧共用的state topic中
+    @Override
+    public String getStateTopic() {
+        return name + Constant.STATE_TOPIC_SUFFIX;
     }
 
     @Override
@@ -58,6 +92,8 @@ public class JoinAggregateSupplier<K, V1, V2, OUT> implements Supplier<Processor
         private final ValueJoinAction<V1, V2, OUT> joinAction;
         private MessageQueue stateTopicMessageQueue;
         private StateStore stateStore;
+        private long lastSweepTime = System.currentTimeMillis();
+        private boolean migrated = false;
 
 
         public JoinStreamAggregateProcessor(String name, JoinType joinType, ValueJoinAction<V1, V2, OUT> joinAction) {
@@ -70,8 +106,37 @@ public class JoinAggregateSupplier<K, V1, V2, OUT> implements Supplier<Processor
         public void preProcess(StreamContext<Object> context) throws RecoverStateStoreThrowable {
             super.preProcess(context);
             this.stateStore = super.waitStateReplay();
-            String stateTopicName = getSourceTopic() + Constant.STATE_TOPIC_SUFFIX;
-            this.stateTopicMessageQueue = new MessageQueue(stateTopicName, getSourceBrokerName(), getSourceQueueId());
+            this.stateTopicMessageQueue = new MessageQueue(getStateTopic(), getSourceBrokerName(), getSourceQueueId());
+            migrate();
+        }
+
+        //升级前每一侧的数据保存在自己source topic的state topic中，值只有最新的一条；第一次处理时移到共用的state topic
+        private void migrate() throws RecoverStateStoreThrowable {
+            if (migrated) {
+                return;
+            }
+            migrated = true;
+
+            MessageQueue legacyQueue = new MessageQueue(getSourceTopic() + Constant.STATE_TOPIC_SUFFIX, getSourceBrokerName(), getSourceQueueId());
+            try {
+                //key是json序列化的字符串，以引号开头
+                List<Pair<String, byte[]>> pairs = this.stateStore.searchByKeyPrefix(legacyQueue, "\"" + this.name + Constant.SPLIT,
+                        source -> source.getBytes(StandardCharsets.UTF_8), source -> new String(source, StandardCharsets.UTF_8));
+                for (Pair<String, byte[]> pair : pairs) {
+                    byte[] keyBytes = pair.getKey().getBytes(StandardCharsets.UTF_8);
+                    if (this.stateStore.get(stateTopicMessageQueue, keyBytes) == null) {
+                        JoinState joinState = new JoinState();
+                        joinState.replace(Long.MIN_VALUE, pair.getValue());
+                        this.stateStore.put(stateTopicMessageQueue, keyBytes, JoinState.joinState2Byte(joinState));
+                    }
+                    this.stateStore.delete(legacyQueue, keyBytes);
+                }
+                if (pairs.size() != 0) {
+                    logger.info("migrate join state, operator:{}, queue:[{}], keys:{}", this.name, legacyQueue, pairs.size());
+                }
+            } catch (Throwable t) {
+                throw new RecoverStateStoreThrowable(t);
+            }
         }
 
         @Override
@@ -79,22 +144,35 @@ public class JoinAggregateSupplier<K, V1, V2, OUT> implements Supplier<Processor
             Object key = this.context.getKey();
             Properties header = this.context.getHeader();
             StreamType streamType = (StreamType) header.get(Constant.STREAM_TAG);
+            watermarks.merge(watermarkKey(streamType), this.context.getWatermark(), Math::max);
 
             store(key, data, streamType);
             fire(key, data, streamType);
+            sweep();
         }
 
         private void store(Object key, Object data, StreamType streamType) throws Throwable {
-            String name = Utils.buildKey(this.name, streamType.name());
-
             switch (streamType) {
                 case LEFT_STREAM:
                 case RIGHT_STREAM: {
-                    String storeKey = Utils.buildKey(name, super.toHexString(key));
-                    byte[] keyBytes = Utils.object2Byte(storeKey);
-                    byte[] valueBytes = super.object2Byte(data);
+                    long dataTime = this.context.getDataTime();
+                    long expireBefore = expireBefore(streamType);
+                    if (dataTime < expireBefore) {
+                        //已经超过保留时间，只参与匹配，不保存
+                        break;
+                    }
+
+                    byte[] keyBytes = Utils.object2Byte(storeKey(streamType, key));
+                    JoinState joinState = JoinState.byte2JoinState(this.stateStore.get(stateTopicMessageQueue, keyBytes));
+                    joinState.expire(expireBefore);
+
+                    if (multiValue) {
+                        joinState.add(dataTime, super.object2Byte(data));
+                    } else {
+                        joinState.replace(dataTime, super.object2Byte(data));
+                    }
 
-                    this.stateStore.put(stateTopicMessageQueue, keyBytes, valueBytes);
+                    this.stateStore.put(stateTopicMessageQueue, keyBytes, JoinState.joinState2Byte(joinState));
                     break;
                 }
             }
@@ -105,26 +183,26 @@ public class JoinAggregateSupplier<K, V1, V2, OUT> implements Supplier<Processor
         private void fire(Object key, Object data, StreamType streamType) throws Throwable {
             switch (streamType) {
                 case LEFT_STREAM: {
-                    String name = Utils.buildKey(this.name, StreamType.RIGHT_STREAM.name());
-                    String storeKey = Utils.buildKey(name, super.toHexString(key));
-                    byte[] keyBytes = Utils.object2Byte(storeKey);
-
-                    byte[] bytes = this.stateStore.get(keyBytes);
+                    List<Pair<Long, byte[]>> rightEntries = loadOtherSide(StreamType.RIGHT_STREAM, key);
 
                     if (joinType == JoinType.INNER_JOIN) {
-                        if (bytes == null || bytes.length == 0) {
+                        if (rightEntries.size() == 0) {
                             break;
                         }
                     } else if (joinType == JoinType.LEFT_JOIN) {
-                        //no-op
+                        if (rightEntries.size() == 0) {
+                            doFire((V1) data, null);
+                            break;
+                        }
                     } else {
                         throw new UnsupportedOperationException("unknown joinType = " + joinType);
                     }
 
                     V1 v1Data = (V1) data;
-                    V2 v2Data = super.byte2Object(bytes);
-
-                    doFire(v1Data, v2Data);
+                    for (Pair<Long, byte[]> entry : rightEntries) {
+                        V2 v2Data = super.byte2Object(entry.getValue());
+                        doFire(v1Data, v2Data);
+                    }
                     break;
                 }
                 case RIGHT_STREAM: {
@@ -132,24 +210,91 @@ public class JoinAggregateSupplier<K, V1, V2, OUT> implements Supplier<Processor
                         break;
                     }
 
-                    String name = Utils.buildKey(this.name, StreamType.LEFT_STREAM.name());
-                    String storeKey = Utils.buildKey(name, super.toHexString(key));
-                    byte[] keyBytes = Utils.object2Byte(storeKey);
+                    List<Pair<Long, byte[]>> leftEntries = loadOtherSide(StreamType.LEFT_STREAM, key);
 
-                    byte[] bytes = this.stateStore.get(keyBytes);
-                    if (bytes == null || bytes.length == 0) {
-                        break;
+                    V2 v2Data = (V2) data;
+                    for (Pair<Long, byte[]> entry : leftEntries) {
+                        V1 v1Data = super.byte2Object(entry.getValue());
+                        doFire(v1Data, v2Data);
                     }
+                    break;
+                }
+            }
+        }
 
-                    V2 v2Data = (V2) data;
-                    V1 v1Data = super.byte2Object(bytes);
+        //读取另一侧的状态，顺便清理超过保留时间的数据
+        private List<Pair<Long, byte[]>> loadOtherSide(StreamType streamType, Object key) throws Throwable {
+            byte[] keyBytes = Utils.object2Byte(storeKey(streamType, key));
+            byte[] bytes = this.stateStore.get(stateTopicMessageQueue, keyBytes);
+            JoinState joinState = JoinState.byte2JoinState(bytes);
 
-                    doFire(v1Data, v2Data);
-                    break;
+            if (joinState.expire(expireBefore(streamType))) {
+                update(keyBytes, joinState);
+            }
+
+            return joinState.getEntries();
+        }
+
+        private void update(byte[] keyBytes, JoinState joinState) throws Throwable {
+            if (joinState.isEmpty()) {
+                this.stateStore.delete(stateTopicMessageQueue, keyBytes);
+            } else {
+                this.stateStore.put(stateTopicMessageQueue, keyBytes, JoinState.joinState2Byte(joinState));
+            }
+        }
+
+        //定期清理不再被访问的key，没有设置保留时间时不清理
+        private void sweep() throws Throwable {
+            long now = System.currentTimeMillis();
+            if (now - lastSweepTime < SWEEP_INTERVAL) {
+                return;
+            }
+            lastSweepTime = now;
+
+            for (StreamType streamType : new StreamType[]{StreamType.LEFT_STREAM, StreamType.RIGHT_STREAM}) {
+                long retention = streamType == StreamType.LEFT_STREAM ? leftRetention : rightRetention;
+                if (retention == UNBOUNDED_RETENTION) {
+                    continue;
                 }
+
+                //key是json序列化的字符串，以引号开头
+                String prefix = "\"" + Utils.buildKey(this.name, streamType.name()) + Constant.SPLIT;
+                List<Pair<String, byte[]>> pairs = this.stateStore.searchByKeyPrefix(stateTopicMessageQueue, prefix,
+                        source -> source.getBytes(StandardCharsets.UTF_8), source -> new String(source, StandardCharsets.UTF_8));
+
+                long expireBefore = expireBefore(streamType);
+                for (Pair<String, byte[]> pair : pairs) {
+                    JoinState joinState = JoinState.byte2JoinState(pair.getValue());
+                    if (joinState.expire(expireBefore)) {
+                        update(pair.getKey().getBytes(StandardCharsets.UTF_8), joinState);
+                    }
+                }
+                logger.debug("sweep join state, operator:{}, side:{}, scanned:{}", this.name, streamType, pairs.size());
+            }
+        }
+
+        //一侧的数据只和另一侧之后的数据匹配，按另一侧的watermark计算保留时间；另一侧还没有数据时不清理
+        private long expireBefore(StreamType streamType) {
+            long retention = streamType == StreamType.LEFT_STREAM ? leftRetention : rightRetention;
+            if (retention == UNBOUNDED_RETENTION) {
+                return Long.MIN_VALUE;
+            }
+
+            StreamType other = streamType == StreamType.LEFT_STREAM ? StreamType.RIGHT_STREAM : StreamType.LEFT_STREAM;
+            Long watermark = watermarks.get(watermarkKey(other));
+            if (watermark == null || watermark == Long.MIN_VALUE) {
+                return Long.MIN_VALUE;
             }
+            return watermark - retention;
+        }
+
+        private String watermarkKey(StreamType streamType) {
+            return Utils.buildKey(stateTopicMessageQueue.getBrokerName(), String.valueOf(stateTopicMessageQueue.getQueueId()), streamType.name());
+        }
 
-            //todo 是否需要删除状态？
+        //与升级前的key相同；共用的state topic按queue分区，清理时只扫描当前queue的数据
+        private String storeKey(StreamType streamType, Object key) throws Throwable {
+            return Utils.buildKey(this.name, streamType.name(), super.toHexString(key));
         }
 
         private void doFire(V1 v1Data, V2 v2Data) throws Throwable {
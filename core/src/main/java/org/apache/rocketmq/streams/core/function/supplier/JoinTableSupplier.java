@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.function.supplier;
+
+import org.apache.rocketmq.streams.core.exception.RecoverStateStoreThrowable;
+import org.apache.rocketmq.streams.core.function.SelectAction;
+import org.apache.rocketmq.streams.core.function.ValueJoinAction;
+import org.apache.rocketmq.streams.core.metadata.Data;
+import org.apache.rocketmq.streams.core.running.AbstractProcessor;
+import org.apache.rocketmq.streams.core.running.Processor;
+import org.apache.rocketmq.streams.core.running.StreamContext;
+import org.apache.rocketmq.streams.core.state.GlobalTableStore;
+import org.apache.rocketmq.streams.core.window.JoinType;
+
+import java.util.function.Supplier;
+
+public class JoinTableSupplier<T, K, V, OUT> implements Supplier<Processor<T>> {
+    private final GlobalTableStore<K, V> tableStore;
+    private final SelectAction<K, T> keySelectAction;
+    private final ValueJoinAction<T, V, OUT> joinAction;
+    private final JoinType joinType;
+
+    public JoinTableSupplier(GlobalTableStore<K, V> tableStore, SelectAction<K, T> keySelectAction,
+                             ValueJoinAction<T, V, OUT> joinAction, JoinType joinType) {
+        this.tableStore = tableStore;
+        this.keySelectAction = keySelectAction;
+        this.joinAction = joinAction;
+        this.joinType = joinType;
+    }
+
+    @Override
+    public Processor<T> get() {
+        return new JoinTableProcessor();
+    }
+
+    private class JoinTableProcessor extends AbstractProcessor<T> {
+
+        @Override
+        public void preProcess(StreamContext<T> context) throws RecoverStateStoreThrowable {
+            super.preProcess(context);
+            tableStore.waitIfNotReady();
+        }
+
+        @Override
+        public void process(T data) throws Throwable {
+            K key = keySelectAction.select(data);
+            V tableValue = tableStore.get(key);
+
+            if (tableValue == null && joinType == JoinType.INNER_JOIN) {
+                return;
+            }
+
+            OUT out = joinAction.apply(data, tableValue);
+            Data<Object, OUT> before = new Data<>(this.context.getKey(), out, this.context.getDataTime(), this.context.getHeader());
+            Data<Object, T> result = convert(before);
+            this.context.forward(result);
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.apache.rocketmq.streams.core.running.StreamContext;
 import org.apache.rocketmq.streams.core.window.JoinType;
 import org.apache.rocketmq.streams.core.window.StreamType;
 import org.apache.rocketmq.streams.core.window.Window;
+import org.apache.rocketmq.streams.core.window.WindowIndex;
 import org.apache.rocketmq.streams.core.window.WindowInfo;
 import org.apache.rocketmq.streams.core.window.WindowKey;
 import org.apache.rocketmq.streams.core.window.WindowState;
@@ -36,12 +37,12 @@ import org.apache.rocketmq.streams.core.util.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Properties;
 import java.util.function.Supplier;
 
-public class JoinWindowAggregateSupplier<K, V1, V2, OUT> implements Supplier<Processor<? super OUT>> {
+public class JoinWindowAggregateSupplier<K, V1, V2, OUT> implements Supplier<Processor<? super OUT>>, SharedStateSupplier {
     private static final Logger logger = LoggerFactory.getLogger(JoinWindowAggregateSupplier.class.getName());
 
     private String name;
@@ -56,6 +57,12 @@ public class JoinWindowAggregateSupplier<K, V1, V2, OUT> implements Supplier<Pro
         this.joinAction = joinAction;
     }
 
+    //左右流来自不同的shuffle topic，状态保存在两侧共用的state topic中
+    @Override
+    public String getStateTopic() {
+        return name + Constant.STATE_TOPIC_SUFFIX;
+    }
+
     @Override
     public Processor<Object> get() {
         return new JoinStreamWindowAggregateProcessor(name, windowInfo, joinType, joinAction);
@@ -71,6 +78,8 @@ public class JoinWindowAggregateSupplier<K, V1, V2, OUT> implements Supplier<Pro
         private MessageQueue stateTopicMessageQueue;
         private WindowStore<K, V1> leftWindowStore;
         private WindowStore<K, V2> rightWindowStore;
+        //左右流各自还未触发的窗口，另一侧相同窗口、相同key的数据直接按照key查找
+        private final HashMap<StreamType, WindowIndex> windowIndexes = new HashMap<>();
 
         public JoinStreamWindowAggregateProcessor(String name, WindowInfo windowInfo, JoinType joinType, ValueJoinAction<V1, V2, OUT> joinAction) {
             this.name = Utils.buildKey(name, JoinStreamWindowAggregateProcessor.class.getSimpleName());
@@ -82,10 +91,9 @@ public class JoinWindowAggregateSupplier<K, V1, V2, OUT> implements Supplier<Pro
         @Override
         public void preProcess(StreamContext<Object> context) throws RecoverStateStoreThrowable {
             super.preProcess(context);
-            leftWindowStore = new WindowStore<>(super.waitStateReplay(), WindowState::byte2WindowState, WindowState::windowState2Byte);
-            rightWindowStore = new WindowStore<>(super.waitStateReplay(), WindowState::byte2WindowState, WindowState::windowState2Byte);
-            String stateTopicName = getSourceTopic() + Constant.STATE_TOPIC_SUFFIX;
-            this.stateTopicMessageQueue = new MessageQueue(stateTopicName, getSourceBrokerName(), getSourceQueueId());
+            this.stateTopicMessageQueue = new MessageQueue(getStateTopic(), getSourceBrokerName(), getSourceQueueId());
+            leftWindowStore = new WindowStore<>(super.waitStateReplay(), stateTopicMessageQueue, WindowState::byte2WindowState, WindowState::windowState2Byte);
+            rightWindowStore = new WindowStore<>(super.waitStateReplay(), stateTopicMessageQueue, WindowState::byte2WindowState, WindowState::windowState2Byte);
         }
 
 
@@ -115,6 +123,7 @@ public class JoinWindowAggregateSupplier<K, V1, V2, OUT> implements Supplier<Pro
         private void store(Object key, Object data, long time, StreamType streamType) throws Throwable {
             String name = Utils.buildKey(this.name, streamType.name());
             List<Window> windows = super.calculateWindow(windowInfo, time);
+            WindowIndex windowIndex = windowIndex(streamType);
             for (Window window : windows) {
                 logger.debug("timestamp=" + time + ". time -> window: " + Utils.format(time) + "->" + window);
 
@@ -130,104 +139,83 @@ public class JoinWindowAggregateSupplier<K, V1, V2, OUT> implements Supplier<Pro
                         this.rightWindowStore.put(stateTopicMessageQueue, windowKey, rightState);
                         break;
                 }
+                windowIndex.pending(windowKey);
             }
         }
 
-        private void fire(long watermark, StreamType streamType) throws Throwable {
-            String leftWindow = Utils.buildKey(this.name, StreamType.LEFT_STREAM.name());
-            WindowKey leftWindowKey = new WindowKey(leftWindow, null, watermark, 0L);
-            List<Pair<WindowKey, WindowState<K, V1>>> leftPairs = this.leftWindowStore.searchLessThanWatermark(leftWindowKey);
-
-            String rightWindow = Utils.buildKey(this.name, StreamType.RIGHT_STREAM.name());
-            WindowKey rightWindowKey = new WindowKey(rightWindow, null, watermark, 0L);
-            List<Pair<WindowKey, WindowState<K, V2>>> rightPairs = this.rightWindowStore.searchLessThanWatermark(rightWindowKey);
-
+        @Override
+        protected long pendingWindowCount() {
+            long result = 0;
+            for (WindowIndex windowIndex : windowIndexes.values()) {
+                result += windowIndex.pendingCount();
+            }
+            return result;
+        }
 
-            if (leftPairs.size() == 0 && rightPairs.size() == 0) {
-                return;
+        //重启后内存中没有窗口信息，从状态中加载一次
+        private WindowIndex windowIndex(StreamType streamType) throws Throwable {
+            WindowIndex windowIndex = windowIndexes.get(streamType);
+            if (windowIndex != null) {
+                return windowIndex;
             }
 
-            leftPairs.sort(Comparator.comparing(pair -> {
-                WindowKey key = pair.getKey();
-                return key.getWindowEnd();
-            }));
-            rightPairs.sort(Comparator.comparing(pair -> {
-                WindowKey key = pair.getKey();
-                return key.getWindowEnd();
-            }));
-
-            switch (joinType) {
-                case INNER_JOIN:
-                    //匹配上才触发
-                    for (Pair<WindowKey, WindowState<K, V1>> leftPair : leftPairs) {
-                        String leftPrefix = leftPair.getKey().getKeyAndWindow();
-
-                        for (Pair<WindowKey, WindowState<K, V2>> rightPair : rightPairs) {
-                            String rightPrefix = rightPair.getKey().getKeyAndWindow();
-
-                            //相同window中相同key，聚合
-                            if (leftPrefix.equals(rightPrefix)) {
-                                //do fire
-                                V1 o1 = leftPair.getValue().getValue();
-                                V2 o2 = rightPair.getValue().getValue();
-
-                                OUT out = this.joinAction.apply(o1, o2);
-
-                                Properties header = this.context.getHeader();
-                                header.put(Constant.WINDOW_START_TIME, leftPair.getKey().getWindowStart());
-                                header.put(Constant.WINDOW_END_TIME, leftPair.getKey().getWindowEnd());
-                                Data<K, OUT> result = new Data<>(this.context.getKey(), out, this.context.getDataTime(), header);
-                                Data<K, Object> convert = super.convert(result);
-                                this.context.forward(convert);
-                            }
-                        }
+            windowIndex = new WindowIndex(0L);
+            WindowKey prefix = new WindowKey(Utils.buildKey(this.name, streamType.name()), null, 0L, 0L);
+            switch (streamType) {
+                case LEFT_STREAM:
+                    for (Pair<WindowKey, WindowState<K, V1>> pair : this.leftWindowStore.searchMatchKeyPrefix(prefix)) {
+                        windowIndex.pending(pair.getKey());
                     }
                     break;
-                case LEFT_JOIN:
-                    switch (streamType) {
-                        case LEFT_STREAM:
-                            //左流全部触发，不管右流匹配上没
-                            for (Pair<WindowKey, WindowState<K, V1>> leftPair : leftPairs) {
-                                String leftPrefix = leftPair.getKey().getKeyAndWindow();
-                                Pair<WindowKey, WindowState<K, V2>> targetPair = null;
-                                for (Pair<WindowKey, WindowState<K, V2>> rightPair : rightPairs) {
-                                    if (rightPair.getKey().getKeyAndWindow().equals(leftPrefix)) {
-                                        targetPair = rightPair;
-                                        break;
-                                    }
-                                }
-
-                                //fire
-                                V1 o1 = leftPair.getValue().getValue();
-                                V2 o2 = null;
-                                if (targetPair != null) {
-                                    o2 = targetPair.getValue().getValue();
-                                }
-
-                                OUT out = this.joinAction.apply(o1, o2);
-                                Properties header = this.context.getHeader();
-                                header.put(Constant.WINDOW_START_TIME, leftPair.getKey().getWindowStart());
-                                header.put(Constant.WINDOW_END_TIME, leftPair.getKey().getWindowEnd());
-                                Data<K, OUT> result = new Data<>(this.context.getKey(), out, this.context.getDataTime(), header);
-                                Data<K, Object> convert = super.convert(result);
-                                this.context.forward(convert);
-                            }
-                            break;
-                        case RIGHT_STREAM:
-                            //do nothing.
+                case RIGHT_STREAM:
+                    for (Pair<WindowKey, WindowState<K, V2>> pair : this.rightWindowStore.searchMatchKeyPrefix(prefix)) {
+                        windowIndex.pending(pair.getKey());
                     }
                     break;
             }
+            windowIndexes.put(streamType, windowIndex);
+            return windowIndex;
+        }
 
-            //删除状态
-            for (Pair<WindowKey, WindowState<K, V1>> leftPair : leftPairs) {
-                this.leftWindowStore.deleteByKey(leftPair.getKey());
+        //只取出这一侧到期的窗口，另一侧相同窗口、相同key的数据直接查找；先触发的一侧输出结果并删除两侧的状态
+        private void fire(long watermark, StreamType streamType) throws Throwable {
+            WindowIndex windowIndex = windowIndex(streamType);
+            if (!windowIndex.hasPending(watermark)) {
+                return;
             }
 
-            for (Pair<WindowKey, WindowState<K, V2>> rightPair : rightPairs) {
-                this.rightWindowStore.deleteByKey(rightPair.getKey());
+            String leftWindow = Utils.buildKey(this.name, StreamType.LEFT_STREAM.name());
+            String rightWindow = Utils.buildKey(this.name, StreamType.RIGHT_STREAM.name());
+            for (WindowKey windowKey : windowIndex.pollPending(watermark)) {
+                WindowKey leftWindowKey = new WindowKey(leftWindow, windowKey.getKey2String(), windowKey.getWindowEnd(), windowKey.getWindowStart());
+                WindowKey rightWindowKey = new WindowKey(rightWindow, windowKey.getKey2String(), windowKey.getWindowEnd(), windowKey.getWindowStart());
+
+                //另一侧已经触发过时，两侧的状态都已经删除
+                WindowState<K, V1> leftState = this.leftWindowStore.get(leftWindowKey);
+                WindowState<K, V2> rightState = this.rightWindowStore.get(rightWindowKey);
+
+                //LEFT_JOIN: 左流全部触发，不管右流匹配上没；INNER_JOIN: 匹配上才触发
+                if (leftState != null && (rightState != null || joinType != JoinType.INNER_JOIN)) {
+                    V1 o1 = leftState.getValue();
+                    V2 o2 = rightState == null ? null : rightState.getValue();
+                    OUT out = this.joinAction.apply(o1, o2);
+
+                    Properties header = this.context.getHeader();
+                    header.put(Constant.WINDOW_START_TIME, windowKey.getWindowStart());
+                    header.put(Constant.WINDOW_END_TIME, windowKey.getWindowEnd());
+                    Data<K, OUT> result = new Data<>(this.context.getKey(), out, this.context.getDataTime(), header);
+                    Data<K, Object> convert = super.convert(result);
+                    this.context.forward(convert);
+                }
+
+                //删除状态
+                if (leftState != null) {
+                    this.leftWindowStore.deleteByKey(leftWindowKey);
+                }
+                if (rightState != null) {
+                    this.rightWindowStore.deleteByKey(rightWindowKey);
+                }
             }
         }
-
     }
 }
@@ -23,7 +23,7 @@ import org.apache.rocketmq.streams.core.running.Processor;
 
 import java.util.function.Supplier;
 
-public class MultiValueChangeSupplier<T, VR> implements Supplier<Processor<T>> {
+public class MultiValueChangeSupplier<T, VR> implements Supplier<Processor<T>>, FusibleSupplier {
     private final ValueMapperAction<T, ? extends Iterable<? extends VR>> valueMapperAction;
 
     public MultiValueChangeSupplier(ValueMapperAction<T, ? extends Iterable<? extends VR>> valueMapperAction) {
@@ -35,6 +35,17 @@ public class MultiValueChangeSupplier<T, VR> implements Supplier<Processor<T>> {
         return new MultiValueMapperProcessor<>(this.valueMapperAction);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public Collector fuse(Collector downstream) {
+        return data -> {
+            Iterable<? extends VR> convert = valueMapperAction.convert((T) data);
+            for (VR item : convert) {
+                downstream.collect(item);
+            }
+        };
+    }
+
     static class MultiValueMapperProcessor<T, VR> extends AbstractProcessor<T> {
         private final ValueMapperAction<T, ? extends Iterable<? extends VR>> valueMapperAction;
 
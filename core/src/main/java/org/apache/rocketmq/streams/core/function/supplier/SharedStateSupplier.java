@@ -0,0 +1,29 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.function.supplier;
+
+/**
+ * 状态不属于某一个source topic queue的算子，例如join的左右流来自不同的shuffle topic，
+ * 这些topic中brokerName、queueId相同的queue共用一个state topic queue。
+ */
+public interface SharedStateSupplier {
+
+    /**
+     * @return 共用的state topic，queue的brokerName、queueId与source topic queue相同
+     */
+    String getStateTopic();
+}
@@ -21,8 +21,13 @@ import org.apache.rocketmq.client.producer.DefaultMQProducer;
 import org.apache.rocketmq.client.producer.selector.SelectMessageQueueByHash;
 import org.apache.rocketmq.common.message.Message;
 import org.apache.rocketmq.streams.core.common.Constant;
+import org.apache.rocketmq.streams.core.metrics.Counter;
+import org.apache.rocketmq.streams.core.metrics.Histogram;
+import org.apache.rocketmq.streams.core.metrics.MetricsRegistry;
 import org.apache.rocketmq.streams.core.running.AbstractProcessor;
+import org.apache.rocketmq.streams.core.running.LocalShuffleExchange;
 import org.apache.rocketmq.streams.core.running.Processor;
+import org.apache.rocketmq.streams.core.running.ShuffleBatcher;
 import org.apache.rocketmq.streams.core.running.StreamContext;
 import org.apache.rocketmq.streams.core.serialization.KeyValueSerializer;
 import org.apache.rocketmq.streams.core.util.Utils;
@@ -46,8 +51,12 @@ public class SinkSupplier<K, T> implements Supplier<Processor<T>> {
     private class SinkProcessor extends AbstractProcessor<T> {
         private final String topicName;
         private DefaultMQProducer producer;
+        private ShuffleBatcher shuffleBatcher;
+        private LocalShuffleExchange localShuffleExchange;
         private final KeyValueSerializer<K, T> serializer;
         private K key;
+        private Histogram sendLatency;
+        private Counter sendErrors;
 
         public SinkProcessor(String topicName, KeyValueSerializer<K, T> serializer) {
             this.topicName = topicName;
@@ -58,7 +67,15 @@ public class SinkSupplier<K, T> implements Supplier<Processor<T>> {
         public void preProcess(StreamContext<T> context) {
             this.context = context;
             this.producer = context.getDefaultMQProducer();
+            this.shuffleBatcher = context.getShuffleBatcher();
+            this.localShuffleExchange = context.getLocalShuffleExchange();
             this.key = context.getKey();
+
+            MetricsRegistry metricsRegistry = context.getMetricsRegistry();
+            if (metricsRegistry != null && this.sendLatency == null) {
+                this.sendLatency = metricsRegistry.histogram("sink." + topicName + ".sendLatencyNs");
+                this.sendErrors = metricsRegistry.counter("sink." + topicName + ".sendErrors");
+            }
         }
 
         //sink into shuffle topic/state topic/user topic
@@ -71,6 +88,23 @@ public class SinkSupplier<K, T> implements Supplier<Processor<T>> {
                     return;
                 }
 
+                if (this.topicName.contains(Constant.SHUFFLE_TOPIC_SUFFIX)) {
+                    String hexKey = this.key == null ? null : Utils.toHexString(this.key);
+                    String keyClassName = this.key == null ? null : this.key.getClass().getName();
+                    String valueClassName = data.getClass().getName();
+                    long dataTime = this.context.getDataTime();
+
+                    if (localShuffleExchange != null
+                            && localShuffleExchange.offer(this.topicName, hexKey, keyClassName, valueClassName, dataTime, value)) {
+                        return;
+                    }
+
+                    if (shuffleBatcher != null && shuffleBatcher.isEnable()) {
+                        shuffleBatcher.add(this.topicName, hexKey, keyClassName, valueClassName, dataTime, value);
+                        return;
+                    }
+                }
+
                 Message message;
 
                 if (this.key == null) {
@@ -80,7 +114,7 @@ public class SinkSupplier<K, T> implements Supplier<Processor<T>> {
                         message.putUserProperty(Constant.SOURCE_TIMESTAMP, String.valueOf(this.context.getDataTime()));
                     }
 
-                    producer.send(message);
+                    send(message, null);
                 } else {
                     message = new Message(this.topicName, value);
                     String hexKey = Utils.toHexString(this.key);
@@ -95,8 +129,28 @@ public class SinkSupplier<K, T> implements Supplier<Processor<T>> {
                         message.putUserProperty(Constant.SOURCE_TIMESTAMP, String.valueOf(this.context.getDataTime()));
                     }
 
+                    send(message, hexKey);
+                }
+            }
+        }
+
+        private void send(Message message, String hexKey) throws Throwable {
+            long begin = System.nanoTime();
+            try {
+                if (hexKey == null) {
+                    producer.send(message);
+                } else {
                     producer.send(message, new SelectMessageQueueByHash(), hexKey);
                 }
+            } catch (Throwable t) {
+                if (sendErrors != null) {
+                    sendErrors.inc();
+                }
+                throw t;
+            } finally {
+                if (sendLatency != null) {
+                    sendLatency.record(System.nanoTime() - begin);
+                }
             }
         }
 
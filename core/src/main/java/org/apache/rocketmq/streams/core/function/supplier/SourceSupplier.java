@@ -22,8 +22,10 @@ import org.apache.rocketmq.streams.core.running.AbstractProcessor;
 import org.apache.rocketmq.streams.core.running.Processor;
 import org.apache.rocketmq.streams.core.window.TimeType;
 import org.apache.rocketmq.streams.core.serialization.KeyValueDeserializer;
+import org.apache.rocketmq.streams.core.serialization.ShuffleBatchProtocol;
 import org.apache.rocketmq.streams.core.util.Pair;
 
+import java.util.List;
 import java.util.function.Supplier;
 
 public class SourceSupplier<K, V> implements Supplier<Processor<V>> {
@@ -43,16 +45,25 @@ public class SourceSupplier<K, V> implements Supplier<Processor<V>> {
     public interface SourceProcessor<K, V> extends Processor<V> {
         Pair<K, V> deserialize(String keyClass, String valueClass, byte[] data) throws DeserializeThrowable;
 
+        //拆开批量发送的shuffle消息，每条数据带有自己的时间戳
+        List<ShuffleBatchProtocol.Record> unpack(byte[] data) throws DeserializeThrowable;
+
         long getTimestamp(MessageExt originData, TimeType timeType);
 
         default long getWatermark(long time, Long delay) {
             return -1;
         }
+
+        //最近一次计算出的watermark，可以在其他线程读取
+        default long getWatermark() {
+            return Long.MIN_VALUE;
+        }
     }
 
     private class SourceProcessorImpl extends AbstractProcessor<V> implements SourceProcessor<K, V> {
         private KeyValueDeserializer<K, V> deserializer;
         private long maxTimestamp = Long.MIN_VALUE;
+        private volatile long watermark = Long.MIN_VALUE;
 
 
         public SourceProcessorImpl(KeyValueDeserializer<K, V> deserializer) {
@@ -69,6 +80,15 @@ public class SourceSupplier<K, V> implements Supplier<Processor<V>> {
             }
         }
 
+        @Override
+        public List<ShuffleBatchProtocol.Record> unpack(byte[] data) throws DeserializeThrowable {
+            try {
+                return ShuffleBatchProtocol.decode(data);
+            } catch (Throwable t) {
+                throw new DeserializeThrowable(t);
+            }
+        }
+
         @Override
         public long getTimestamp(MessageExt originData, TimeType timeType) {
 
@@ -88,7 +108,13 @@ public class SourceSupplier<K, V> implements Supplier<Processor<V>> {
             maxTimestamp = Math.max(time, this.maxTimestamp);
             long delayTimestamp = delay == null ? 0L : delay;
 
-            return maxTimestamp - delayTimestamp;
+            this.watermark = maxTimestamp - delayTimestamp;
+            return this.watermark;
+        }
+
+        @Override
+        public long getWatermark() {
+            return this.watermark;
         }
 
         @Override
@@ -24,7 +24,7 @@ import org.apache.rocketmq.streams.core.running.Processor;
 
 import java.util.function.Supplier;
 
-public class ValueChangeSupplier<T, O> implements Supplier<Processor<T>> {
+public class ValueChangeSupplier<T, O> implements Supplier<Processor<T>>, FusibleSupplier {
     private final ValueMapperAction<T, O> valueMapperAction;
 
 
@@ -37,6 +37,12 @@ public class ValueChangeSupplier<T, O> implements Supplier<Processor<T>> {
         return new ValueMapperProcessor<>(this.valueMapperAction);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public Collector fuse(Collector downstream) {
+        return data -> downstream.collect(valueMapperAction.convert((T) data));
+    }
+
 
     static class ValueMapperProcessor<T, O> extends AbstractProcessor<T> {
         private final ValueMapperAction<T, O> valueMapperAction;
@@ -25,7 +25,9 @@ import org.apache.rocketmq.streams.core.metadata.Data;
 import org.apache.rocketmq.streams.core.running.AbstractWindowProcessor;
 import org.apache.rocketmq.streams.core.running.Processor;
 import org.apache.rocketmq.streams.core.running.StreamContext;
+import org.apache.rocketmq.streams.core.window.Trigger;
 import org.apache.rocketmq.streams.core.window.Window;
+import org.apache.rocketmq.streams.core.window.WindowIndex;
 import org.apache.rocketmq.streams.core.window.WindowInfo;
 import org.apache.rocketmq.streams.core.window.WindowKey;
 import org.apache.rocketmq.streams.core.window.WindowState;
@@ -75,13 +77,14 @@ public class WindowAggregateSupplier<K, V, OV> implements Supplier<Processor<V>>
         private String name;
         private Supplier<OV> initAction;
         private AggregateAction<K, V, OV> aggregateAction;
-        private MessageQueue stateTopicMessageQueue;
 
         private final AtomicReference<Throwable> errorReference = new AtomicReference<>(null);
 
         public WindowAggregateProcessor(String name, WindowInfo windowInfo, Supplier<OV> initAction, AggregateAction<K, V, OV> aggregateAction) {
             this.name = name + WindowAggregateProcessor.class.getSimpleName();
             this.windowInfo = windowInfo;
+            this.allowedLateness = allowedLateness(windowInfo);
+            this.trigger = windowInfo.getTrigger();
             this.initAction = initAction;
             this.aggregateAction = aggregateAction;
         }
@@ -89,10 +92,10 @@ public class WindowAggregateSupplier<K, V, OV> implements Supplier<Processor<V>>
         @Override
         public void preProcess(StreamContext<V> context) throws RecoverStateStoreThrowable {
             super.preProcess(context);
-            this.windowStore = new WindowStore<>(super.waitStateReplay(), WindowState::byte2WindowState, WindowState::windowState2Byte);
-
             String stateTopicName = getSourceTopic() + Constant.STATE_TOPIC_SUFFIX;
             this.stateTopicMessageQueue = new MessageQueue(stateTopicName, getSourceBrokerName(), getSourceQueueId());
+
+            this.windowStore = new WindowStore<>(super.waitStateReplay(), stateTopicMessageQueue, WindowState::byte2WindowState, WindowState::windowState2Byte);
         }
 
         /**
@@ -110,18 +113,20 @@ public class WindowAggregateSupplier<K, V, OV> implements Supplier<Processor<V>>
             long time = this.context.getDataTime();
 
             long watermark = this.context.getWatermark();
-            if (time < watermark) {
-                //已经触发，丢弃数据
-                logger.warn("discard data:[{}], watermark[{}] > time[{}],", data, watermark, time);
-                return;
-            }
 
             //如果存在窗口，且窗口结束时间小于watermark，触发这个窗口
-            fireWindowEndTimeLassThanWatermark(watermark, name, key);
+            fireWindowEndTimeLassThanWatermark(watermark, name);
 
             //f(time) -> List<Window>
             List<Window> windows = super.calculateWindow(windowInfo, time);
+            boolean accepted = false;
             for (Window window : windows) {
+                //窗口触发后只保留allowedLateness，之后状态已经删除
+                if (window.getEndTime() + allowedLateness < watermark) {
+                    continue;
+                }
+                accepted = true;
+
                 logger.debug("timestamp=" + time + ". time -> window: " + Utils.format(time) + "->" + window);
 
                 //f(Window + key, store) -> oldValue
@@ -145,11 +150,23 @@ public class WindowAggregateSupplier<K, V, OV> implements Supplier<Processor<V>>
                 //f(Window + key, newValue, store)
                 WindowState<K, OV> state = new WindowState<>(key, newValue, time);
                 this.windowStore.put(stateTopicMessageQueue, windowKey, state);
+                windowIndex(name).pending(windowKey);
+
+                //窗口结束前按照trigger提前输出
+                if (trigger != null && window.getEndTime() >= watermark && onEarlyUpdate(trigger, windowKey)) {
+                    earlyFire(windowKey, state);
+                }
+            }
+
+            if (!accepted) {
+                super.late(windowInfo, name, key, data, time, watermark);
+                return;
             }
 
             try {
-                //如果存在窗口，且窗口结束时间小于watermark，触发这个窗口
-                fireWindowEndTimeLassThanWatermark(watermark, name, key);
+                //如果存在窗口，且窗口结束时间小于watermark，触发这个窗口；迟到数据更新过的窗口再次输出
+                fireWindowEndTimeLassThanWatermark(watermark, name);
+                fireDueEarlyWindows(watermark);
             } catch (Throwable t) {
                 errorReference.compareAndSet(null, t);
             }
@@ -160,14 +177,16 @@ public class WindowAggregateSupplier<K, V, OV> implements Supplier<Processor<V>>
     private class SessionWindowAggregateProcessor extends CommonWindowFire {
         private final String name;
         private final WindowInfo windowInfo;
+        //还没有触发的session窗口数，每条数据遍历状态时更新
+        private int pendingSessions = 0;
         private Supplier<OV> initAction;
         private AggregateAction<K, V, OV> aggregateAction;
-        private MessageQueue stateTopicMessageQueue;
 
 
         public SessionWindowAggregateProcessor(String name, WindowInfo windowInfo, Supplier<OV> initAction, AggregateAction<K, V, OV> aggregateAction) {
             this.name = name + SessionWindowAggregateProcessor.class.getSimpleName();
             this.windowInfo = windowInfo;
+            this.allowedLateness = allowedLateness(windowInfo);
             this.initAction = initAction;
             this.aggregateAction = aggregateAction;
         }
@@ -175,10 +194,10 @@ public class WindowAggregateSupplier<K, V, OV> implements Supplier<Processor<V>>
         @Override
         public void preProcess(StreamContext<V> context) throws RecoverStateStoreThrowable {
             super.preProcess(context);
-            super.windowStore = new WindowStore<>(super.waitStateReplay(), WindowState::byte2WindowState, WindowState::windowState2Byte);
-
             String stateTopicName = getSourceTopic() + Constant.STATE_TOPIC_SUFFIX;
             this.stateTopicMessageQueue = new MessageQueue(stateTopicName, getSourceBrokerName(), getSourceQueueId());
+
+            super.windowStore = new WindowStore<>(super.waitStateReplay(), stateTopicMessageQueue, WindowState::byte2WindowState, WindowState::windowState2Byte);
         }
 
         @Override
@@ -204,9 +223,15 @@ public class WindowAggregateSupplier<K, V, OV> implements Supplier<Processor<V>>
                 logger.info("new session window, with key={}, valueTime={}, sessionBegin=[{}], sessionEnd=[{}]", key, time,
                         Utils.format(newSessionWindowTime.getKey()), Utils.format(newSessionWindowTime.getValue()));
                 this.windowStore.put(stateTopicMessageQueue, windowKey, state);
+                pendingSessions++;
             }
         }
 
+        @Override
+        protected long pendingWindowCount() {
+            return pendingSessions;
+        }
+
 
         //使用前缀查询找到session state, 触发已经session out的 watermark
         @SuppressWarnings("unchecked")
@@ -216,6 +241,7 @@ public class WindowAggregateSupplier<K, V, OV> implements Supplier<Processor<V>>
             List<Pair<WindowKey, WindowState<K, OV>>> pairs = this.windowStore.searchMatchKeyPrefix(windowKeyPrefix);
 
             if (pairs.size() == 0) {
+                pendingSessions = 0;
                 return new Pair<>(dataTime, dataTime + windowInfo.getSessionTimeout().toMilliseconds());
             }
 
@@ -239,17 +265,26 @@ public class WindowAggregateSupplier<K, V, OV> implements Supplier<Processor<V>>
                     lastStateSessionEnd = sessionEnd;
                 }
 
-                //先触发一遍，触发后从集合中删除
+                //先触发一遍，超过allowedLateness的状态删除，并从集合中删除
                 if (sessionEnd < watermark) {
                     //触发state
-                    fire(key, windowKey, state);
-                    iterator.remove();
-                    maxFireSessionEnd = Long.max(sessionEnd, maxFireSessionEnd);
+                    if (!state.isFired()) {
+                        fire(key, windowKey, state);
+                    }
+                    if (sessionEnd + allowedLateness < watermark) {
+                        this.windowStore.deleteByKey(windowKey);
+                        iterator.remove();
+                        maxFireSessionEnd = Long.max(sessionEnd, maxFireSessionEnd);
+                    } else if (!state.isFired()) {
+                        state.setFired(true);
+                        this.windowStore.put(stateTopicMessageQueue, windowKey, state);
+                    }
                 }
             }
 
             if (dataTime < maxFireSessionEnd) {
-                logger.warn("late data, discard. key=[{}], data=[{}], dataTime < maxFireSessionEnd: [{}] < [{}]", key, data, dataTime, maxFireSessionEnd);
+                pendingSessions = countPending(pairs);
+                super.late(windowInfo, name, key, data, dataTime, watermark);
                 return null;
             }
 
@@ -289,6 +324,13 @@ public class WindowAggregateSupplier<K, V, OV> implements Supplier<Processor<V>>
                             windowKey = new WindowKey(windowKey.getOperatorName(), windowKey.getKey2String(), mayBeSessionEnd, windowKey.getWindowStart());
                         }
                     }
+
+                    //已经触发过的session在allowedLateness内更新，再次输出新的结果
+                    state.setFired(false);
+                    if (windowKey.getWindowEnd() < watermark) {
+                        fire(key, windowKey, state);
+                        state.setFired(true);
+                    }
                 } else {
                     logger.warn("discard data: key=[{}], data=[{}], dataTime=[{}], watermark=[{}]", key, data, dataTime, watermark);
                 }
@@ -297,6 +339,7 @@ public class WindowAggregateSupplier<K, V, OV> implements Supplier<Processor<V>>
                 this.windowStore.deleteByKey(needToDelete);
             }
 
+            pendingSessions = countPending(pairs);
             if (pairs.size() == 0 || createNewSessionWindow) {
                 return new Pair<>(lastStateSessionEnd, dataTime + windowInfo.getSessionTimeout().toMilliseconds());
             }
@@ -304,6 +347,16 @@ public class WindowAggregateSupplier<K, V, OV> implements Supplier<Processor<V>>
         }
 
 
+        private int countPending(List<Pair<WindowKey, WindowState<K, OV>>> pairs) {
+            int result = 0;
+            for (Pair<WindowKey, WindowState<K, OV>> pair : pairs) {
+                if (!pair.getValue().isFired()) {
+                    result++;
+                }
+            }
+            return result;
+        }
+
         private void fire(K key, WindowKey windowKey, WindowState<K, OV> state) throws Throwable {
             long windowEnd = windowKey.getWindowEnd();
             long windowBegin;
@@ -323,44 +376,112 @@ public class WindowAggregateSupplier<K, V, OV> implements Supplier<Processor<V>>
             Data<K, V> convert = super.convert(result);
 
             this.context.forward(convert);
-
-            //删除状态
-            this.windowStore.deleteByKey(windowKey);
         }
     }
 
     public abstract class CommonWindowFire extends AbstractWindowProcessor<V> {
         protected WindowStore<K, OV> windowStore;
+        protected MessageQueue stateTopicMessageQueue;
+        protected long allowedLateness;
+        protected Trigger trigger;
+        //还未触发、allowedLateness内保留的窗口，触发时不再遍历状态
+        private WindowIndex windowIndex;
+
+        //重启或者queue重新分配后内存中没有窗口信息，从状态中加载一次
+        protected WindowIndex windowIndex(String operatorName) throws Throwable {
+            if (windowIndex == null) {
+                WindowIndex index = new WindowIndex(allowedLateness);
+                for (Pair<WindowKey, WindowState<K, OV>> pair : this.windowStore.searchMatchKeyPrefix(new WindowKey(operatorName, null, 0L, 0L))) {
+                    if (pair.getValue().isFired()) {
+                        index.retained(pair.getKey());
+                    } else {
+                        index.pending(pair.getKey());
+                    }
+                }
+                windowIndex = index;
+            }
+            return windowIndex;
+        }
 
+        @Override
+        protected long pendingWindowCount() {
+            return windowIndex == null ? 0 : windowIndex.pendingCount();
+        }
 
-        protected void fireWindowEndTimeLassThanWatermark(long watermark, String operatorName, K key) throws Throwable {
-            WindowKey windowKeyWatermark = new WindowKey(operatorName, toHexString(key), watermark, 0L);
-
-            List<Pair<WindowKey, WindowState<K, OV>>> pairs = this.windowStore.searchLessThanWatermark(windowKeyWatermark);
+        protected void fireWindowEndTimeLassThanWatermark(long watermark, String operatorName) throws Throwable {
+            WindowIndex windowIndex = windowIndex(operatorName);
 
-            //pairs中最后一个时间最小，应该最先触发
-            for (int i = pairs.size() - 1; i >= 0; i--) {
+            //allowedLateness内保留的状态，已经输出过
+            for (WindowKey windowKey : windowIndex.pollRetained(watermark)) {
+                this.windowStore.deleteByKey(windowKey);
+            }
 
-                Pair<WindowKey, WindowState<K, OV>> pair = pairs.get(i);
-                WindowKey windowKey = pair.getKey();
-                WindowState<K, OV> value = pair.getValue();
+            //按照窗口结束时间从小到大触发
+            for (WindowKey windowKey : windowIndex.pollPending(watermark)) {
+                WindowState<K, OV> value = this.windowStore.get(windowKey);
+                if (value == null) {
+                    continue;
+                }
 
-                Properties header = this.context.getHeader();
-                header.put(Constant.WINDOW_START_TIME, windowKey.getWindowStart());
-                header.put(Constant.WINDOW_END_TIME, windowKey.getWindowEnd());
-                Data<K, OV> result = new Data<>(value.getKey(), value.getValue(), value.getRecordLastTimestamp(), header);
-                Data<K, V> convert = super.convert(result);
+                Data<K, V> convert = forward(windowKey, value);
 
                 if (logger.isDebugEnabled()) {
                     logger.debug("fire window, windowKey={}, search watermark={}, window: [{} - {}], data to next:[{}]", windowKey.toString(),
                             watermark, Utils.format(windowKey.getWindowStart()), Utils.format(windowKey.getWindowEnd()), convert);
                 }
 
-                this.context.forward(convert);
+                if (trigger != null) {
+                    clearEarlyFire(windowKey);
+                }
+
+                //discarding模式已经输出的结果不再保留，allowedLateness内的迟到数据只输出增量
+                if (windowKey.getWindowEnd() + allowedLateness < watermark || (trigger != null && trigger.isDiscarding())) {
+                    //删除状态
+                    this.windowStore.deleteByKey(windowKey);
+                } else {
+                    //保留到allowedLateness之后，期间不再重复输出
+                    value.setFired(true);
+                    this.windowStore.put(stateTopicMessageQueue, windowKey, value);
+                    windowIndex.retained(windowKey);
+                }
+            }
+        }
 
-                //删除状态
+        //窗口结束前提前输出，状态保留到最终触发
+        protected void earlyFire(WindowKey windowKey, WindowState<K, OV> state) throws Throwable {
+            Data<K, V> convert = forward(windowKey, state);
+            logger.debug("early fire window, windowKey={}, data to next:[{}]", windowKey, convert);
+
+            earlyFired(windowKey);
+            if (trigger.isDiscarding()) {
                 this.windowStore.deleteByKey(windowKey);
+                if (windowIndex != null) {
+                    windowIndex.remove(windowKey);
+                }
+            }
+        }
+
+        protected void fireDueEarlyWindows(long watermark) throws Throwable {
+            if (trigger == null) {
+                return;
+            }
+            for (WindowKey windowKey : dueEarlyFires(watermark)) {
+                WindowState<K, OV> state = this.windowStore.get(windowKey);
+                if (state != null && !state.isFired()) {
+                    earlyFire(windowKey, state);
+                }
             }
         }
+
+        private Data<K, V> forward(WindowKey windowKey, WindowState<K, OV> value) throws Throwable {
+            Properties header = this.context.getHeader();
+            header.put(Constant.WINDOW_START_TIME, windowKey.getWindowStart());
+            header.put(Constant.WINDOW_END_TIME, windowKey.getWindowEnd());
+            Data<K, OV> result = new Data<>(value.getKey(), value.getValue(), value.getRecordLastTimestamp(), header);
+            Data<K, V> convert = super.convert(result);
+
+            this.context.forward(convert);
+            return convert;
+        }
     }
 }
@@ -26,6 +26,8 @@ public class StreamConfig {
 
     public static final Integer SHUFFLE_TOPIC_QUEUE_NUM = Integer.valueOf(System.getProperty("shuffle_topic_queue_num","16"));
 
+    public static final Boolean STREAMS_OPERATOR_FUSION = Boolean.valueOf(System.getProperty("streams_operator_fusion","true"));
+
 
 
 }
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+public class LogMetricsReporter implements MetricsReporter {
+    private static final Logger logger = LoggerFactory.getLogger(LogMetricsReporter.class.getName());
+
+    @Override
+    public void report(MetricsRegistry registry) {
+        String jobId = registry.getJobId();
+        for (Map.Entry<String, Counter> entry : registry.getCounters().entrySet()) {
+            logger.info("jobId:{}, counter:{}, count:{}", jobId, entry.getKey(), entry.getValue().getCount());
+        }
+
+        for (Map.Entry<String, Histogram> entry : registry.getHistograms().entrySet()) {
+            Histogram histogram = entry.getValue();
+            logger.info("jobId:{}, histogram:{}, count:{}, mean:{}, p50:{}, p99:{}, p999:{}, max:{}", jobId, entry.getKey(),
+                    histogram.getCount(), String.format("%.1f", histogram.getMean()), histogram.getP50(), histogram.getP99(),
+                    histogram.getP999(), histogram.getMax());
+        }
+
+        for (Map.Entry<String, Gauge> entry : registry.getGauges().entrySet()) {
+            logger.info("jobId:{}, gauge:{}, value:{}", jobId, entry.getKey(), entry.getValue().getValue());
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.metrics;
+
+import org.apache.rocketmq.streams.core.common.Constant;
+import org.apache.rocketmq.streams.core.exception.RStreamsException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * metrics of one job, shared by all WorkerThreads.
+ * <pre>
+ * operator.{name}.recordsIn       counter   records received by the operator
+ * operator.{name}.recordsOut      counter   records forwarded by the operator
+ * operator.{name}.errors          counter   records failed in the operator
+ * operator.{name}.processTimeNs   histogram exclusive process time, without downstream operators
+ * </pre>
+ * metrics are exposed by JMX under domain org.apache.rocketmq.streams and reported by MetricsReporter.
+ */
+public class MetricsRegistry implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsRegistry.class.getName());
+    private static final String JMX_DOMAIN = "org.apache.rocketmq.streams";
+
+    private final String jobId;
+    private final boolean jmxEnable;
+    private final long reportIntervalMillis;
+    private final String reporterClassName;
+
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, OperatorMetrics> operators = new ConcurrentHashMap<>();
+
+    private MetricsReporter reporter;
+    private ScheduledExecutorService reportExecutor;
+
+    public MetricsRegistry(String jobId, Properties properties) {
+        this.jobId = jobId;
+
+        Object jmxEnable = properties.getOrDefault(Constant.METRICS_JMX_ENABLE, Boolean.TRUE);
+        this.jmxEnable = jmxEnable == Boolean.TRUE || Constant.TRUE.equalsIgnoreCase(String.valueOf(jmxEnable));
+
+        Object interval = properties.getOrDefault(Constant.METRICS_REPORT_INTERVAL_MILLISECOND, 60 * 1000L);
+        this.reportIntervalMillis = interval instanceof Number ? ((Number) interval).longValue() : Long.parseLong(String.valueOf(interval));
+
+        this.reporterClassName = properties.getProperty(Constant.METRICS_REPORTER_CLASS, LogMetricsReporter.class.getName());
+        this.reporter = createReporter(properties);
+    }
+
+    private MetricsReporter createReporter(Properties properties) {
+        try {
+            MetricsReporter result = (MetricsReporter) Class.forName(reporterClassName).newInstance();
+            result.init(properties);
+            return result;
+        } catch (Throwable t) {
+            throw new RStreamsException("create metrics reporter error, class=" + reporterClassName, t);
+        }
+    }
+
+    public synchronized void start() {
+        if (reportExecutor != null || reportIntervalMillis <= 0) {
+            return;
+        }
+
+        reportExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics_reporter_" + jobId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        reportExecutor.scheduleAtFixedRate(this::report, reportIntervalMillis, reportIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void report() {
+        try {
+            reporter.report(this);
+        } catch (Throwable t) {
+            logger.error("report metrics error, jobId:{}", jobId, t);
+        }
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter != null) {
+            return counter;
+        }
+        return counters.computeIfAbsent(name, key -> register("counter", key, new Counter()));
+    }
+
+    public Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram != null) {
+            return histogram;
+        }
+        return histograms.computeIfAbsent(name, key -> register("histogram", key, new Histogram()));
+    }
+
+    public void gauge(String name, Gauge gauge) {
+        Gauge old = gauges.put(name, gauge);
+        if (old != null) {
+            unregister("gauge", name);
+        }
+        GaugeMXBean bean = gauge::getValue;
+        register("gauge", name, bean);
+    }
+
+    public void remove(String name) {
+        if (counters.remove(name) != null) {
+            unregister("counter", name);
+        }
+        if (histograms.remove(name) != null) {
+            unregister("histogram", name);
+        }
+        if (gauges.remove(name) != null) {
+            unregister("gauge", name);
+        }
+    }
+
+    public OperatorMetrics operator(String operatorName) {
+        OperatorMetrics result = operators.get(operatorName);
+        if (result != null) {
+            return result;
+        }
+        return operators.computeIfAbsent(operatorName, name -> new OperatorMetrics(
+                counter("operator." + name + ".recordsIn"),
+                counter("operator." + name + ".recordsOut"),
+                counter("operator." + name + ".errors"),
+                histogram("operator." + name + ".processTimeNs")));
+    }
+
+    public Map<String, Counter> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    public Map<String, Histogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    public Map<String, Gauge> getGauges() {
+        return Collections.unmodifiableMap(gauges);
+    }
+
+    private <T> T register(String type, String name, T bean) {
+        if (!jmxEnable) {
+            return bean;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName(type, name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(bean, objectName);
+        } catch (Throwable t) {
+            logger.warn("register metric into jmx error, type:{}, name:{}", type, name, t);
+        }
+        return bean;
+    }
+
+    private void unregister(String type, String name) {
+        if (!jmxEnable) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = objectName(type, name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (Throwable t) {
+            logger.warn("unregister metric from jmx error, type:{}, name:{}", type, name, t);
+        }
+    }
+
+    private ObjectName objectName(String type, String name) throws Exception {
+        return new ObjectName(JMX_DOMAIN + ":type=" + type + ",job=" + ObjectName.quote(jobId) + ",name=" + ObjectName.quote(name));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (reportExecutor != null) {
+            reportExecutor.shutdownNow();
+            reportExecutor = null;
+            report();
+        }
+
+        for (String name : counters.keySet()) {
+            unregister("counter", name);
+        }
+        for (String name : histograms.keySet()) {
+            unregister("histogram", name);
+        }
+        for (String name : gauges.keySet()) {
+            unregister("gauge", name);
+        }
+        counters.clear();
+        histograms.clear();
+        gauges.clear();
+        operators.clear();
+
+        try {
+            reporter.close();
+        } catch (Throwable t) {
+            logger.error("close metrics reporter error, jobId:{}", jobId, t);
+        }
+    }
+
+    public static class OperatorMetrics {
+        private final Counter recordsIn;
+        private final Counter recordsOut;
+        private final Counter errors;
+        private final Histogram processTime;
+
+        OperatorMetrics(Counter recordsIn, Counter recordsOut, Counter errors, Histogram processTime) {
+            this.recordsIn = recordsIn;
+            this.recordsOut = recordsOut;
+            this.errors = errors;
+            this.processTime = processTime;
+        }
+
+        public Counter getRecordsIn() {
+            return recordsIn;
+        }
+
+        public Counter getRecordsOut() {
+            return recordsOut;
+        }
+
+        public Counter getErrors() {
+            return errors;
+        }
+
+        public Histogram getProcessTime() {
+            return processTime;
+        }
+    }
+}
@@ -19,11 +19,13 @@ package org.apache.rocketmq.streams.core.rstream;
 import org.apache.rocketmq.streams.core.function.SelectAction;
 import org.apache.rocketmq.streams.core.function.ValueJoinAction;
 import org.apache.rocketmq.streams.core.function.supplier.AddTagSupplier;
+import org.apache.rocketmq.streams.core.function.supplier.IntervalJoinAggregateSupplier;
 import org.apache.rocketmq.streams.core.function.supplier.JoinAggregateSupplier;
 import org.apache.rocketmq.streams.core.function.supplier.JoinWindowAggregateSupplier;
 import org.apache.rocketmq.streams.core.running.Processor;
 import org.apache.rocketmq.streams.core.window.JoinType;
 import org.apache.rocketmq.streams.core.window.StreamType;
+import org.apache.rocketmq.streams.core.window.Time;
 import org.apache.rocketmq.streams.core.window.WindowInfo;
 import org.apache.rocketmq.streams.core.topology.virtual.GraphNode;
 import org.apache.rocketmq.streams.core.topology.virtual.ProcessorNode;
@@ -54,6 +56,9 @@ public class JoinedStream<V1, V2> {
     public class Where<K> {
         private SelectAction<K, V1> leftSelectAction;
         private SelectAction<K, V2> rightSelectAction;
+        private long leftRetention = JoinAggregateSupplier.UNBOUNDED_RETENTION;
+        private long rightRetention = JoinAggregateSupplier.UNBOUNDED_RETENTION;
+        private boolean multiValue = false;
 
         public Where(SelectAction<K, V1> leftSelectAction) {
             this.leftSelectAction = leftSelectAction;
@@ -65,48 +70,100 @@ public class JoinedStream<V1, V2> {
             return this;
         }
 
-        public <OUT> RStream<OUT> apply(ValueJoinAction<V1, V2, OUT> joinAction) {
-            List<String> temp = new ArrayList<>();
-            Pipeline leftStreamPipeline = JoinedStream.this.leftStream.getPipeline();
-            String jobId = leftStreamPipeline.getJobId();
+        //按事件时间保留每一侧的数据，超过保留时间的数据不再参与join并从状态中删除
+        public Where<K> retention(Time leftRetention, Time rightRetention) {
+            this.leftRetention = leftRetention.toMilliseconds();
+            this.rightRetention = rightRetention.toMilliseconds();
+            return this;
+        }
 
+        //保留一个key的所有数据，而不是只保留最新的一条
+        public Where<K> multiValue() {
+            this.multiValue = true;
+            return this;
+        }
+
+        public <OUT> RStream<OUT> apply(ValueJoinAction<V1, V2, OUT> joinAction) {
+            String jobId = JoinedStream.this.leftStream.getPipeline().getJobId();
             String name = OperatorNameMaker.makeName(OperatorNameMaker.JOIN_PREFIX, jobId);
-            Supplier<Processor<? super OUT>> supplier = new JoinAggregateSupplier<>(name, joinType, joinAction);
-            ProcessorNode<OUT> commChild = new ProcessorNode(name, temp, supplier);
+            Supplier<Processor<? super OUT>> supplier = new JoinAggregateSupplier<>(name, joinType, joinAction,
+                    leftRetention, rightRetention, multiValue);
 
+            return join(name, supplier, leftSelectAction, rightSelectAction);
+        }
 
-            {
-                GroupedStream<K, V1> leftGroupedStream = JoinedStream.this.leftStream.keyBy(leftSelectAction);
-                String addTagName = OperatorNameMaker.makeName(ADD_TAG, jobId);
-                leftGroupedStream.addGraphNode(addTagName, new AddTagSupplier<>(() -> StreamType.LEFT_STREAM));
+        //左流数据time，匹配右流中时间在 [time + lower, time + upper] 内的数据
+        public IntervalJoin<K> between(Time lower, Time upper) {
+            return new IntervalJoin<>(this.leftSelectAction, this.rightSelectAction, lower, upper);
+        }
 
-                GraphNode lastNode = leftStreamPipeline.getLastNode();
-                temp.add(lastNode.getName());
-                commChild.addParent(lastNode);
-            }
+        public JoinWindow<K> window(WindowInfo windowInfo) {
+            return new JoinWindow<>(this.leftSelectAction, this.rightSelectAction, windowInfo);
+        }
+    }
 
-            Pipeline rightStreamPipeline = JoinedStream.this.rightStream.getPipeline();
-            String rightJobId = rightStreamPipeline.getJobId();
-            if (!Objects.equals(jobId, rightJobId)) {
-                throw new IllegalStateException("left stream and right stream must have same jobId.");
-            }
+    private <K, OUT> RStream<OUT> join(String name, Supplier<Processor<? super OUT>> supplier,
+                                       SelectAction<K, V1> leftSelectAction, SelectAction<K, V2> rightSelectAction) {
+        List<String> temp = new ArrayList<>();
+        Pipeline leftStreamPipeline = this.leftStream.getPipeline();
+        String jobId = leftStreamPipeline.getJobId();
 
-            {
-                GroupedStream<K, V2> rightGroupedStream = JoinedStream.this.rightStream.keyBy(rightSelectAction);
-                String addTagName = OperatorNameMaker.makeName(ADD_TAG, jobId);
-                rightGroupedStream.addGraphNode(addTagName, new AddTagSupplier<>(()-> StreamType.RIGHT_STREAM));
+        ProcessorNode<OUT> commChild = new ProcessorNode(name, temp, supplier);
 
-                GraphNode lastNode = rightStreamPipeline.getLastNode();
-                temp.add(lastNode.getName());
-                commChild.addParent(lastNode);
+        {
+            GroupedStream<K, V1> leftGroupedStream = this.leftStream.keyBy(leftSelectAction);
+            String addTagName = OperatorNameMaker.makeName(ADD_TAG, jobId);
+            leftGroupedStream.addGraphNode(addTagName, new AddTagSupplier<>(() -> StreamType.LEFT_STREAM));
 
-                lastNode.addChild(commChild);
-            }
-            return new RStreamImpl<>(leftStreamPipeline, commChild);
+            GraphNode lastNode = leftStreamPipeline.getLastNode();
+            temp.add(lastNode.getName());
+            commChild.addParent(lastNode);
         }
 
-        public JoinWindow<K> window(WindowInfo windowInfo) {
-            return new JoinWindow<>(this.leftSelectAction, this.rightSelectAction, windowInfo);
+        Pipeline rightStreamPipeline = this.rightStream.getPipeline();
+        String rightJobId = rightStreamPipeline.getJobId();
+        if (!Objects.equals(jobId, rightJobId)) {
+            throw new IllegalStateException("left stream and right stream must have same jobId.");
+        }
+
+        {
+            GroupedStream<K, V2> rightGroupedStream = this.rightStream.keyBy(rightSelectAction);
+            String addTagName = OperatorNameMaker.makeName(ADD_TAG, jobId);
+            rightGroupedStream.addGraphNode(addTagName, new AddTagSupplier<>(()-> StreamType.RIGHT_STREAM));
+
+            GraphNode lastNode = rightStreamPipeline.getLastNode();
+            temp.add(lastNode.getName());
+            commChild.addParent(lastNode);
+
+            lastNode.addChild(commChild);
+        }
+        return new RStreamImpl<>(leftStreamPipeline, commChild);
+    }
+
+    public class IntervalJoin<K> {
+        private final SelectAction<K, V1> leftSelectAction;
+        private final SelectAction<K, V2> rightSelectAction;
+        private final Time lower;
+        private final Time upper;
+
+        public IntervalJoin(SelectAction<K, V1> leftSelectAction, SelectAction<K, V2> rightSelectAction, Time lower, Time upper) {
+            this.leftSelectAction = leftSelectAction;
+            this.rightSelectAction = rightSelectAction;
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        public <OUT> RStream<OUT> apply(ValueJoinAction<V1, V2, OUT> joinAction) {
+            if (JoinedStream.this.joinType != JoinType.INNER_JOIN) {
+                throw new UnsupportedOperationException("interval join only support inner join, joinType = " + JoinedStream.this.joinType);
+            }
+
+            String jobId = JoinedStream.this.leftStream.getPipeline().getJobId();
+            String name = OperatorNameMaker.makeName(OperatorNameMaker.INTERVAL_JOIN_PREFIX, jobId);
+            Supplier<Processor<? super OUT>> supplier = new IntervalJoinAggregateSupplier<>(name,
+                    lower.toMilliseconds(), upper.toMilliseconds(), joinAction);
+
+            return join(name, supplier, leftSelectAction, rightSelectAction);
         }
     }
 
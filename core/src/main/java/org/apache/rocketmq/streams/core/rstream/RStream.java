@@ -19,6 +19,7 @@ package org.apache.rocketmq.streams.core.rstream;
 import org.apache.rocketmq.streams.core.function.FilterAction;
 import org.apache.rocketmq.streams.core.function.ForeachAction;
 import org.apache.rocketmq.streams.core.function.SelectAction;
+import org.apache.rocketmq.streams.core.function.ValueJoinAction;
 import org.apache.rocketmq.streams.core.function.ValueMapperAction;
 import org.apache.rocketmq.streams.core.serialization.KeyValueSerializer;
 
@@ -41,6 +42,11 @@ public interface RStream<T> {
 
     <T2> JoinedStream<T, T2> leftJoin(RStream<T2> rightStream);
 
+    //在本地全量加载的table中查找，不需要shuffle
+    <K, V, OUT> RStream<OUT> joinTable(GlobalTable<K, V> table, SelectAction<K, T> keySelectAction, ValueJoinAction<T, V, OUT> joinAction);
+
+    <K, V, OUT> RStream<OUT> leftJoinTable(GlobalTable<K, V> table, SelectAction<K, T> keySelectAction, ValueJoinAction<T, V, OUT> joinAction);
+
     Pipeline getPipeline();
 
     void sink(String topicName, KeyValueSerializer<Object, T> serializer);
@@ -22,9 +22,11 @@ import org.apache.rocketmq.streams.core.util.OperatorNameMaker;
 import org.apache.rocketmq.streams.core.function.FilterAction;
 import org.apache.rocketmq.streams.core.function.ForeachAction;
 import org.apache.rocketmq.streams.core.function.SelectAction;
+import org.apache.rocketmq.streams.core.function.ValueJoinAction;
 import org.apache.rocketmq.streams.core.function.ValueMapperAction;
 import org.apache.rocketmq.streams.core.function.supplier.FilterSupplier;
 import org.apache.rocketmq.streams.core.function.supplier.ForeachSupplier;
+import org.apache.rocketmq.streams.core.function.supplier.JoinTableSupplier;
 import org.apache.rocketmq.streams.core.function.supplier.KeySelectSupplier;
 import org.apache.rocketmq.streams.core.function.supplier.PrintSupplier;
 import org.apache.rocketmq.streams.core.function.supplier.SinkSupplier;
@@ -41,6 +43,7 @@ import static org.apache.rocketmq.streams.core.util.OperatorNameMaker.FILTER_PRE
 import static org.apache.rocketmq.streams.core.util.OperatorNameMaker.FLAT_MAP_PREFIX;
 import static org.apache.rocketmq.streams.core.util.OperatorNameMaker.FOR_EACH_PREFIX;
 import static org.apache.rocketmq.streams.core.util.OperatorNameMaker.GROUPBY_PREFIX;
+import static org.apache.rocketmq.streams.core.util.OperatorNameMaker.JOIN_TABLE_PREFIX;
 import static org.apache.rocketmq.streams.core.util.OperatorNameMaker.MAP_PREFIX;
 import static org.apache.rocketmq.streams.core.util.OperatorNameMaker.PRINT_PREFIX;
 import static org.apache.rocketmq.streams.core.util.OperatorNameMaker.SINK_PREFIX;
@@ -136,6 +139,26 @@ public class RStreamImpl<T> implements RStream<T> {
         return new JoinedStream<>(this, rightStream, JoinType.LEFT_JOIN);
     }
 
+    @Override
+    public <K, V, OUT> RStream<OUT> joinTable(GlobalTable<K, V> table, SelectAction<K, T> keySelectAction, ValueJoinAction<T, V, OUT> joinAction) {
+        return joinTable(table, keySelectAction, joinAction, JoinType.INNER_JOIN);
+    }
+
+    @Override
+    public <K, V, OUT> RStream<OUT> leftJoinTable(GlobalTable<K, V> table, SelectAction<K, T> keySelectAction, ValueJoinAction<T, V, OUT> joinAction) {
+        return joinTable(table, keySelectAction, joinAction, JoinType.LEFT_JOIN);
+    }
+
+    private <K, V, OUT> RStream<OUT> joinTable(GlobalTable<K, V> table, SelectAction<K, T> keySelectAction,
+                                               ValueJoinAction<T, V, OUT> joinAction, JoinType joinType) {
+        String name = OperatorNameMaker.makeName(JOIN_TABLE_PREFIX, pipeline.getJobId());
+
+        JoinTableSupplier<T, K, V, OUT> supplier = new JoinTableSupplier<>(table.getStore(), keySelectAction, joinAction, joinType);
+        GraphNode processorNode = new ProcessorNode<>(name, parent.getName(), supplier);
+
+        return pipeline.addRStreamVirtualNode(processorNode, parent);
+    }
+
     @Override
     public Pipeline getPipeline() {
         return pipeline;
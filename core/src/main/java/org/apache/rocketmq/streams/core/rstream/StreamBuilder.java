@@ -17,6 +17,7 @@
 package org.apache.rocketmq.streams.core.rstream;
 
 import org.apache.rocketmq.streams.core.serialization.KeyValueDeserializer;
+import org.apache.rocketmq.streams.core.state.GlobalTableStore;
 import org.apache.rocketmq.streams.core.topology.TopologyBuilder;
 import org.apache.rocketmq.streams.core.topology.virtual.GraphNode;
 import org.apache.rocketmq.streams.core.topology.virtual.SourceGraphNode;
@@ -25,6 +26,7 @@ import org.apache.rocketmq.streams.core.util.OperatorNameMaker;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.apache.rocketmq.streams.core.util.OperatorNameMaker.GLOBAL_TABLE_PREFIX;
 import static org.apache.rocketmq.streams.core.util.OperatorNameMaker.SOURCE_PREFIX;
 
 public class StreamBuilder {
@@ -48,6 +50,16 @@ public class StreamBuilder {
         return pipeline.addVirtualSource(sourceGraphNode);
     }
 
+    //每个进程全量加载topic，用于RStream.joinTable
+    public <K, V> GlobalTable<K, V> table(String topicName, KeyValueDeserializer<K, V> deserializer) {
+        String name = OperatorNameMaker.makeName(GLOBAL_TABLE_PREFIX, jobId);
+
+        GlobalTableStore<K, V> store = new GlobalTableStore<>(name, topicName, deserializer);
+        this.topologyBuilder.addGlobalTable(store);
+
+        return new GlobalTable<>(store);
+    }
+
     public TopologyBuilder build() {
         for (Pipeline pipeline : pipelines) {
             doBuild(pipeline.getRoot());
@@ -22,10 +22,14 @@ import org.apache.rocketmq.streams.core.function.ValueJoinAction;
 import org.apache.rocketmq.streams.core.function.ValueMapperAction;
 import org.apache.rocketmq.streams.core.function.accumulator.Accumulator;
 import org.apache.rocketmq.streams.core.serialization.KeyValueSerializer;
+import org.apache.rocketmq.streams.core.window.Trigger;
 
 import java.util.Properties;
 
 public interface WindowStream<K, V> {
+    //窗口结束前提前输出，在count或者aggregate之前调用
+    WindowStream<K, V> trigger(Trigger trigger);
+
     WindowStream<K, Integer> count();
 
     WindowStream<K, V> filter(FilterAction<V> predictor);
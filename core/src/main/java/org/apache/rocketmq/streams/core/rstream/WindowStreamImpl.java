@@ -27,6 +27,7 @@ import org.apache.rocketmq.streams.core.function.supplier.ValueChangeSupplier;
 import org.apache.rocketmq.streams.core.function.supplier.WindowAccumulatorSupplier;
 import org.apache.rocketmq.streams.core.function.supplier.WindowAggregateSupplier;
 import org.apache.rocketmq.streams.core.running.Processor;
+import org.apache.rocketmq.streams.core.window.Trigger;
 import org.apache.rocketmq.streams.core.window.WindowInfo;
 import org.apache.rocketmq.streams.core.serialization.KeyValueSerializer;
 import org.apache.rocketmq.streams.core.topology.virtual.GraphNode;
@@ -53,6 +54,15 @@ public class WindowStreamImpl<K, V> implements WindowStream<K, V> {
         this.windowInfo = windowInfo;
     }
 
+    @Override
+    public WindowStream<K, V> trigger(Trigger trigger) {
+        if (trigger != null && this.windowInfo.getWindowType() == WindowInfo.WindowType.SESSION_WINDOW) {
+            throw new UnsupportedOperationException("trigger is not supported by session window.");
+        }
+        this.windowInfo.setTrigger(trigger);
+        return this;
+    }
+
     @Override
     public WindowStream<K, Integer> count() {
         String name = OperatorNameMaker.makeName(WINDOW_COUNT_PREFIX, pipeline.getJobId());
@@ -24,6 +24,7 @@ import io.netty.buffer.Unpooled;
 import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.streams.core.exception.RecoverStateStoreThrowable;
 import org.apache.rocketmq.streams.core.metadata.Data;
+import org.apache.rocketmq.streams.core.metrics.MetricsRegistry;
 import org.apache.rocketmq.streams.core.state.StateStore;
 import org.apache.rocketmq.streams.core.util.Utils;
 
@@ -36,18 +37,49 @@ import java.util.List;
 public abstract class AbstractProcessor<T> implements Processor<T> {
     private final List<Processor<T>> children = new ArrayList<>();
     protected StreamContext<T> context;
+    private String name;
+    //算子的metrics只查找一次，不在每条数据上按名字查找
+    private MetricsRegistry.OperatorMetrics operatorMetrics;
 
     @Override
     public void addChild(Processor<T> processor) {
         children.add(processor);
     }
 
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name == null ? this.getClass().getSimpleName() : name;
+    }
+
     @Override
     public void preProcess(StreamContext<T> context) throws RecoverStateStoreThrowable {
         this.context = context;
         this.context.init(getChildren());
     }
 
+    MetricsRegistry.OperatorMetrics operatorMetrics(MetricsRegistry metricsRegistry) {
+        if (this.operatorMetrics == null) {
+            this.operatorMetrics = metricsRegistry.operator(getName());
+        }
+        return this.operatorMetrics;
+    }
+
+    //这个processor及其下游processor中还没有触发的窗口数，用于metrics
+    long pendingWindows() {
+        long result = 0;
+        for (Processor<T> child : children) {
+            if (child instanceof AbstractProcessor) {
+                result += ((AbstractProcessor<T>) child).pendingWindows();
+            }
+        }
+        return result;
+    }
+
     protected List<Processor<T>> getChildren() {
         return Collections.unmodifiableList(children);
     }
@@ -17,15 +17,36 @@
 package org.apache.rocketmq.streams.core.running;
 
 
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.streams.core.common.Constant;
+import org.apache.rocketmq.streams.core.metrics.Counter;
+import org.apache.rocketmq.streams.core.metrics.MetricsRegistry;
+import org.apache.rocketmq.streams.core.util.Pair;
+import org.apache.rocketmq.streams.core.util.Utils;
+import org.apache.rocketmq.streams.core.window.Time;
+import org.apache.rocketmq.streams.core.window.Trigger;
 import org.apache.rocketmq.streams.core.window.Window;
 import org.apache.rocketmq.streams.core.window.WindowInfo;
+import org.apache.rocketmq.streams.core.window.WindowKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.PriorityQueue;
 
 public abstract class AbstractWindowProcessor<V> extends AbstractProcessor<V> {
+    private static final Logger logger = LoggerFactory.getLogger(AbstractWindowProcessor.class.getName());
+    private Counter lateRecords;
+
+    //配置了trigger时，窗口结束前上次输出之后的更新，最终触发后删除
+    private final HashMap<String/*windowKey*/, EarlyFire> earlyFires = new HashMap<>();
+    //按照处理时间到期的提前输出，过期的条目取出时跳过
+    private final PriorityQueue<Pair<Long/*due*/, EarlyFire>> earlyFireTimers = new PriorityQueue<>(Comparator.comparing(Pair::getKey));
+    //按照窗口结束时间排序，watermark超过之后删除；discarding模式提前输出后状态已删除，不会再经过最终触发
+    private final PriorityQueue<EarlyFire> earlyFireEnds = new PriorityQueue<>(Comparator.comparingLong(earlyFire -> earlyFire.windowKey.getWindowEnd()));
 
     protected List<Window> calculateWindow(WindowInfo windowInfo, long valueTime) {
         long sizeInterval = windowInfo.getWindowSize().toMillSecond();
@@ -42,4 +63,127 @@ public abstract class AbstractWindowProcessor<V> extends AbstractProcessor<V> {
         return result;
     }
 
+    protected long allowedLateness(WindowInfo windowInfo) {
+        Time allowedLateness = windowInfo.getAllowedLateness();
+        return allowedLateness == null ? 0L : allowedLateness.toMilliseconds();
+    }
+
+    //所有窗口的状态都已经删除的迟到数据，配置了lateDataTopic时写入，否则丢弃
+    protected void late(WindowInfo windowInfo, String operatorName, Object key, V data, long dataTime, long watermark) throws Throwable {
+        MetricsRegistry metricsRegistry = this.context.getMetricsRegistry();
+        if (metricsRegistry != null && this.lateRecords == null) {
+            this.lateRecords = metricsRegistry.counter("window." + operatorName + ".lateRecords");
+        }
+        if (this.lateRecords != null) {
+            this.lateRecords.inc();
+        }
+
+        String lateDataTopic = windowInfo.getLateDataTopic();
+        if (lateDataTopic == null || data == null) {
+            logger.warn("discard late data:[{}], watermark[{}] > time[{}].", data, watermark, dataTime);
+            return;
+        }
+
+        Message message = new Message(lateDataTopic, Utils.object2Byte(data));
+        if (key != null) {
+            message.setKeys(Utils.toHexString(key));
+            message.putUserProperty(Constant.SHUFFLE_KEY_CLASS_NAME, key.getClass().getName());
+        }
+        message.putUserProperty(Constant.SHUFFLE_VALUE_CLASS_NAME, data.getClass().getName());
+        message.putUserProperty(Constant.SOURCE_TIMESTAMP, String.valueOf(dataTime));
+
+        this.context.getDefaultMQProducer().send(message);
+    }
+
+    //窗口结束前更新了状态，返回true时需要立即提前输出
+    protected boolean onEarlyUpdate(Trigger trigger, WindowKey windowKey) {
+        long now = System.currentTimeMillis();
+        EarlyFire earlyFire = earlyFires.computeIfAbsent(windowKey.toString(), key -> {
+            EarlyFire created = new EarlyFire(windowKey);
+            earlyFireEnds.add(created);
+            return created;
+        });
+        earlyFire.records++;
+
+        if (trigger.getEveryRecords() > 0 && earlyFire.records >= trigger.getEveryRecords()) {
+            return true;
+        }
+        if (trigger.getUpdateInterval() >= 0 && now - earlyFire.lastFireTime >= trigger.getUpdateInterval()) {
+            return true;
+        }
+
+        if (earlyFire.due == Long.MAX_VALUE) {
+            long due = Long.MAX_VALUE;
+            if (trigger.getProcessingTimeInterval() > 0) {
+                due = now + trigger.getProcessingTimeInterval();
+            }
+            if (trigger.getUpdateInterval() >= 0) {
+                due = Math.min(due, earlyFire.lastFireTime + trigger.getUpdateInterval());
+            }
+            if (due != Long.MAX_VALUE) {
+                earlyFire.due = due;
+                earlyFireTimers.add(new Pair<>(due, earlyFire));
+            }
+        }
+        return false;
+    }
+
+    //处理时间已经到期、需要提前输出的窗口，结束时间小于watermark的窗口不再提前输出
+    protected List<WindowKey> dueEarlyFires(long watermark) {
+        while (!earlyFireEnds.isEmpty() && earlyFireEnds.peek().windowKey.getWindowEnd() < watermark) {
+            EarlyFire ended = earlyFireEnds.poll();
+            earlyFires.remove(ended.windowKey.toString(), ended);
+        }
+
+        long now = System.currentTimeMillis();
+        List<WindowKey> result = new ArrayList<>();
+        while (!earlyFireTimers.isEmpty() && earlyFireTimers.peek().getKey() <= now) {
+            Pair<Long, EarlyFire> timer = earlyFireTimers.poll();
+            EarlyFire earlyFire = timer.getValue();
+            if (earlyFire.due == timer.getKey() && earlyFires.get(earlyFire.windowKey.toString()) == earlyFire) {
+                result.add(earlyFire.windowKey);
+            }
+        }
+        return result;
+    }
+
+    protected void earlyFired(WindowKey windowKey) {
+        EarlyFire earlyFire = earlyFires.get(windowKey.toString());
+        if (earlyFire == null) {
+            return;
+        }
+        earlyFire.records = 0;
+        earlyFire.lastFireTime = System.currentTimeMillis();
+        earlyFire.due = Long.MAX_VALUE;
+    }
+
+    protected void clearEarlyFire(WindowKey windowKey) {
+        earlyFires.remove(windowKey.toString());
+    }
+
+    //还没有触发的窗口数，状态写入、触发、删除时维护，不遍历状态
+    protected long pendingWindowCount() {
+        return 0;
+    }
+
+    @Override
+    long pendingWindows() {
+        return super.pendingWindows() + pendingWindowCount();
+    }
+
+    //还没有最终触发的窗口数
+    protected int earlyFireCount() {
+        return earlyFires.size();
+    }
+
+    private static class EarlyFire {
+        private final WindowKey windowKey;
+        private long records;
+        private long lastFireTime;
+        private long due = Long.MAX_VALUE;
+
+        EarlyFire(WindowKey windowKey) {
+            this.windowKey = windowKey;
+        }
+    }
 }
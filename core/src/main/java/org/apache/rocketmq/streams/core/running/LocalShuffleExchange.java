@@ -0,0 +1,125 @@
+package org.apache.rocketmq.streams.core.running;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.streams.core.common.Constant;
+import org.apache.rocketmq.streams.core.serialization.ShuffleBatchProtocol;
+import org.apache.rocketmq.streams.core.util.Utils;
+
+import java.util.ArrayDeque;
+import java.util.Properties;
+
+/**
+ * 目标shuffle queue由当前WorkerThread消费时，数据不再经过broker，直接放入内存队列，
+ * 由同一个线程在本轮poll的位点提交之前处理完。
+ * 只在同一线程内交换：源数据的位点要等本地数据处理完、状态持久化之后才提交，失败后重新消费源数据即可恢复；
+ * 跨线程交换无法保证这一点，所以其他线程/进程的queue仍然走broker。
+ */
+public class LocalShuffleExchange {
+    private final boolean enable;
+    private final DefaultMQProducer producer;
+    private final ShuffleQueueSelector queueSelector;
+    private final ShuffleBatcher shuffleBatcher;
+    private final MessageQueueListenerWrapper wrapper;
+
+    private final ArrayDeque<LocalRecord> inbox = new ArrayDeque<>();
+
+    LocalShuffleExchange(DefaultMQProducer producer, ShuffleQueueSelector queueSelector, ShuffleBatcher shuffleBatcher,
+                         MessageQueueListenerWrapper wrapper, Properties properties) {
+        this.producer = producer;
+        this.queueSelector = queueSelector;
+        this.shuffleBatcher = shuffleBatcher;
+        this.wrapper = wrapper;
+        Object enable = properties.get(Constant.SHUFFLE_LOCAL_ENABLE);
+        this.enable = enable == Boolean.TRUE || Constant.TRUE.equalsIgnoreCase(String.valueOf(enable));
+    }
+
+    /**
+     * @return true 数据已放入本地队列；false 目标queue不属于当前线程，需要发送到broker
+     */
+    public boolean offer(String topic, String hexKey, String keyClassName, String valueClassName, long timestamp, byte[] body) throws Throwable {
+        if (!enable || hexKey == null) {
+            return false;
+        }
+
+        MessageQueue queue = queueSelector.select(topic, hexKey);
+        String queueKey = Utils.buildKey(queue.getBrokerName(), queue.getTopic(), queue.getQueueId());
+        if (wrapper.selectProcessor(queueKey) == null) {
+            return false;
+        }
+
+        inbox.add(new LocalRecord(queue, queueKey, hexKey, new ShuffleBatchProtocol.Record(timestamp, keyClassName, valueClassName, body)));
+        return true;
+    }
+
+    LocalRecord poll() {
+        return inbox.poll();
+    }
+
+    //rebalance后queue已经不属于当前线程，退回到broker
+    void sendToBroker(LocalRecord localRecord) throws Throwable {
+        ShuffleBatchProtocol.Record record = localRecord.getRecord();
+        MessageQueue queue = localRecord.getQueue();
+
+        if (shuffleBatcher.isEnable()) {
+            shuffleBatcher.add(queue.getTopic(), localRecord.getHexKey(), record.getKeyClassName(), record.getValueClassName(),
+                    record.getTimestamp(), record.getBody());
+            return;
+        }
+
+        Message message = new Message(queue.getTopic(), record.getBody());
+        message.setKeys(localRecord.getHexKey());
+        message.putUserProperty(Constant.SHUFFLE_KEY_CLASS_NAME, record.getKeyClassName());
+        message.putUserProperty(Constant.SHUFFLE_VALUE_CLASS_NAME, record.getValueClassName());
+        message.putUserProperty(Constant.SOURCE_TIMESTAMP, String.valueOf(record.getTimestamp()));
+
+        producer.send(message, queue);
+    }
+
+    static class LocalRecord {
+        private final MessageQueue queue;
+        private final String queueKey;
+        private final String hexKey;
+        private final ShuffleBatchProtocol.Record record;
+
+        LocalRecord(MessageQueue queue, String queueKey, String hexKey, ShuffleBatchProtocol.Record record) {
+            this.queue = queue;
+            this.queueKey = queueKey;
+            this.hexKey = hexKey;
+            this.record = record;
+        }
+
+        MessageQueue getQueue() {
+            return queue;
+        }
+
+        String getQueueKey() {
+            return queueKey;
+        }
+
+        String getHexKey() {
+            return hexKey;
+        }
+
+        ShuffleBatchProtocol.Record getRecord() {
+            return record;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 
 class MessageQueueListenerWrapper implements MessageQueueListener {
@@ -40,6 +41,8 @@ class MessageQueueListenerWrapper implements MessageQueueListener {
     private final ConcurrentHashMap<String, Processor<?>> mq2Processor = new ConcurrentHashMap<>();
 
     private BiFunction<Set<MessageQueue>, Set<MessageQueue>, Throwable> recoverHandler;
+    private BiFunction<Set<MessageQueue>, Set<MessageQueue>, Throwable> revokeHandler;
+    private BiConsumer<String, Set<MessageQueue>> standbyHandler;
 
     MessageQueueListenerWrapper(MessageQueueListener originListener, TopologyBuilder topologyBuilder) {
         this.originListener = originListener;
@@ -59,6 +62,14 @@ class MessageQueueListenerWrapper implements MessageQueueListener {
         ownedQueues.addAll(new HashSet<>(addQueue));
         ownedQueues.removeAll(new HashSet<>(removeQueue));
 
+        //先等worker停止处理被撤销的queue，已经处理的数据持久化状态、提交位点之后，再删除状态和处理任务
+        if (this.revokeHandler != null) {
+            Throwable throwable = this.revokeHandler.apply(addQueue, removeQueue);
+            if (throwable != null) {
+                logger.warn("release revoked messageQueue:[{}] error, remove it anyway.", removeQueue, throwable);
+            }
+        }
+
         //从shuffle topic中读出的数据才能进行有状态计算。
         if (topic.endsWith(Constant.SHUFFLE_TOPIC_SUFFIX)) {
             Throwable throwable = this.recoverHandler.apply(addQueue, removeQueue);
@@ -66,11 +77,15 @@ class MessageQueueListenerWrapper implements MessageQueueListener {
                 throw new RuntimeException(throwable);
             }
             logger.info("recover messageQueue finish, addQueue: [{}], removeQueue:[{}].", addQueue, removeQueue);
+
+            //接管的queue已经从standby中摘出，再更新需要跟随的queue
+            if (this.standbyHandler != null) {
+                this.standbyHandler.accept(topic, mqAll);
+            }
         }
 
         buildTask(addQueue);
-        //设计的不太好，移除q，添加消费任务之前，应该加一个状态移除函数;目前这样写的问题是：状态提前移除/加载了，consumer其实仍然在从某个将要移除的q中拉取数据，但是状态却被移除了。
-        //也不能把originListener.messageQueueChanged放在loadState/removeState之前，那样会已经在拉取数据了，但是状态没有加载好。
+        //不能把originListener.messageQueueChanged放在loadState之前，那样会已经在拉取数据了，但是状态没有加载好；恢复中的queue由worker暂停拉取。
         originListener.messageQueueChanged(topic, mqAll, mqDivided);
         removeTask(removeQueue);
     }
@@ -105,4 +120,13 @@ class MessageQueueListenerWrapper implements MessageQueueListener {
     public void setRecoverHandler(BiFunction<Set<MessageQueue>, Set<MessageQueue>, Throwable> handler) {
         this.recoverHandler = handler;
     }
+
+    //addQueue: 重新分配到的queue，removeQueue: 返回时worker已经不再处理
+    public void setRevokeHandler(BiFunction<Set<MessageQueue>, Set<MessageQueue>, Throwable> handler) {
+        this.revokeHandler = handler;
+    }
+
+    public void setStandbyHandler(BiConsumer<String, Set<MessageQueue>> handler) {
+        this.standbyHandler = handler;
+    }
 }
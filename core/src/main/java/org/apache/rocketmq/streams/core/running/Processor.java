@@ -21,6 +21,11 @@ import org.apache.rocketmq.streams.core.exception.RecoverStateStoreThrowable;
 public interface Processor<T> {
     void addChild(Processor<T> processor);
 
+    //算子名称，用于metrics
+    void setName(String name);
+
+    String getName();
+
 
     void preProcess(StreamContext<T> context) throws RecoverStateStoreThrowable;
 
@@ -27,6 +27,9 @@ import java.util.UUID;
 
 import static org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData.SUB_ALL;
 
+/**
+ * 创建所有连接RocketMQ的客户端，可以继承后替换成其他实现，例如压测时使用的内存broker。
+ */
 public class RocketMQClient {
     private final String nameSrvAddr;
 
@@ -49,6 +52,16 @@ public class RocketMQClient {
         return pullConsumer;
     }
 
+    //assign模式，从头开始拉取，用于恢复状态
+    public DefaultLitePullConsumer restoreConsumer(String groupName) throws MQClientException {
+        DefaultLitePullConsumer consumer = new DefaultLitePullConsumer(groupName);
+        consumer.setNamesrvAddr(nameSrvAddr);
+        consumer.setInstanceName(UUID.randomUUID().toString());
+        consumer.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_FIRST_OFFSET);
+        consumer.setAutoCommit(false);
+        return consumer;
+    }
+
     public DefaultMQProducer producer(String groupName) {
         DefaultMQProducer producer = new DefaultMQProducer(groupName);
         producer.setNamesrvAddr(nameSrvAddr);
@@ -62,4 +75,8 @@ public class RocketMQClient {
         mqAdminExt.start();
         return mqAdminExt;
     }
+
+    public String getNameSrvAddr() {
+        return nameSrvAddr;
+    }
 }
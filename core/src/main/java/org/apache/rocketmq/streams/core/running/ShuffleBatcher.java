@@ -0,0 +1,135 @@
+package org.apache.rocketmq.streams.core.running;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.streams.core.common.Constant;
+import org.apache.rocketmq.streams.core.serialization.ShuffleBatchProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * 将发往同一个shuffle queue的数据打包成一条消息发送，减少broker的TPS压力。
+ * 每轮poll结束、提交位点之前必须调用flush，保证at-least-once。
+ * 非线程安全，每个WorkerThread一个实例。
+ */
+public class ShuffleBatcher {
+    private static final Logger logger = LoggerFactory.getLogger(ShuffleBatcher.class.getName());
+
+    private final DefaultMQProducer producer;
+    private final boolean enable;
+    private final int maxBytes;
+    private final long lingerMillis;
+
+    private final ShuffleQueueSelector queueSelector;
+    //按照创建顺序，lingerMillis相同，也就是按照到期时间排序；发送后删除，再次创建时排到最后
+    private final LinkedHashMap<MessageQueue, Batch> batches = new LinkedHashMap<>();
+
+    public ShuffleBatcher(DefaultMQProducer producer, ShuffleQueueSelector queueSelector, Properties properties) {
+        this.producer = producer;
+        this.queueSelector = queueSelector;
+        Object enable = properties.get(Constant.SHUFFLE_BATCH_ENABLE);
+        this.enable = enable == Boolean.TRUE || Constant.TRUE.equalsIgnoreCase(String.valueOf(enable));
+        this.maxBytes = (int) getLong(properties, Constant.SHUFFLE_BATCH_MAX_BYTES, 512 * 1024L);
+        this.lingerMillis = getLong(properties, Constant.SHUFFLE_BATCH_LINGER_MILLISECOND, 50L);
+    }
+
+    public boolean isEnable() {
+        return enable;
+    }
+
+    public void add(String topic, String hexKey, String keyClassName, String valueClassName, long timestamp, byte[] body) throws Throwable {
+        MessageQueue queue = queueSelector.select(topic, hexKey);
+
+        Batch batch = batches.computeIfAbsent(queue, mq -> new Batch());
+        batch.add(new ShuffleBatchProtocol.Record(timestamp, keyClassName, valueClassName, body),
+                ShuffleBatchProtocol.estimateSize(keyClassName, valueClassName, body));
+
+        if (batch.bytes >= maxBytes) {
+            send(queue, batch);
+            batches.remove(queue);
+        }
+
+        flushExpired();
+    }
+
+    public void flush() throws Throwable {
+        Iterator<Map.Entry<MessageQueue, Batch>> iterator = batches.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<MessageQueue, Batch> entry = iterator.next();
+            send(entry.getKey(), entry.getValue());
+            iterator.remove();
+        }
+    }
+
+    private void flushExpired() throws Throwable {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<MessageQueue, Batch>> iterator = batches.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<MessageQueue, Batch> entry = iterator.next();
+            //后面的batch创建得更晚，也没有到期
+            if (now - entry.getValue().createTime < lingerMillis) {
+                break;
+            }
+            send(entry.getKey(), entry.getValue());
+            iterator.remove();
+        }
+    }
+
+    private void send(MessageQueue queue, Batch batch) throws Throwable {
+        if (batch.records.size() == 0) {
+            return;
+        }
+
+        Message message = new Message(queue.getTopic(), ShuffleBatchProtocol.encode(batch.records));
+        message.putUserProperty(Constant.SHUFFLE_BATCH_SIZE, String.valueOf(batch.records.size()));
+
+        producer.send(message, queue);
+        logger.debug("send shuffle batch, queue:[{}], records:{}, bytes:{}", queue, batch.records.size(), batch.bytes);
+    }
+
+    private static long getLong(Properties properties, String key, long defaultValue) {
+        Object value = properties.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return Long.parseLong(String.valueOf(value));
+    }
+
+    private static class Batch {
+        private final long createTime = System.currentTimeMillis();
+        private final List<ShuffleBatchProtocol.Record> records = new ArrayList<>();
+        private int bytes = 4;
+
+        void add(ShuffleBatchProtocol.Record record, int size) {
+            this.records.add(record);
+            this.bytes += size;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.apache.rocketmq.streams.core.running;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.selector.SelectMessageQueueByHash;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 选择shuffle数据要发往的queue，与SinkSupplier中逐条发送使用相同的路由规则，同一个key总是进入同一个queue。
+ * 非线程安全，每个WorkerThread一个实例。
+ */
+public class ShuffleQueueSelector {
+    private static final long QUEUE_REFRESH_INTERVAL = 30 * 1000L;
+
+    private final DefaultMQProducer producer;
+    private final SelectMessageQueueByHash selector = new SelectMessageQueueByHash();
+    private final HashMap<String/*topic*/, List<MessageQueue>> topic2Queues = new HashMap<>();
+    private final HashMap<String/*topic*/, Long> topic2RefreshTime = new HashMap<>();
+
+    public ShuffleQueueSelector(DefaultMQProducer producer) {
+        this.producer = producer;
+    }
+
+    public MessageQueue select(String topic, String hexKey) throws Throwable {
+        long now = System.currentTimeMillis();
+        List<MessageQueue> queues = topic2Queues.get(topic);
+        Long refreshTime = topic2RefreshTime.get(topic);
+
+        if (queues == null || queues.size() == 0 || refreshTime == null || now - refreshTime > QUEUE_REFRESH_INTERVAL) {
+            queues = new ArrayList<>(producer.fetchPublishMessageQueues(topic));
+            topic2Queues.put(topic, queues);
+            topic2RefreshTime.put(topic, now);
+        }
+
+        if (hexKey == null) {
+            //没有key时轮流发送
+            return queues.get((int) (now % queues.size()));
+        }
+
+        return selector.select(queues, null, hexKey);
+    }
+}
@@ -0,0 +1,113 @@
+package org.apache.rocketmq.streams.core.running;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.rocketmq.client.consumer.AllocateMessageQueueStrategy;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.streams.core.common.Constant;
+import org.apache.rocketmq.streams.core.util.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 尽量不移动有状态queue的分配策略。每个consumer独立计算分配结果，只能依赖所有consumer都能看到的输入，即queue列表和consumer列表：
+ * 用rendezvous hash给每个queue的consumer排序，放到第一个没有超出容量的consumer上，consumer增减时只移动少量queue。
+ * consumer按照ip和同一ip上的序号参与hash，进程重启后clientId中的pid变化，queue仍然分回原来的机器，可以从本地checkpoint恢复。
+ * 不按照broker上的位点等运行时数据加权，各个consumer读到的值不同时会出现一个queue有两个或者没有consumer。
+ */
+public class StickyAllocateMessageQueueStrategy implements AllocateMessageQueueStrategy {
+
+    @Override
+    public List<MessageQueue> allocate(String consumerGroup, String currentCID, List<MessageQueue> mqAll, List<String> cidAll) {
+        List<MessageQueue> result = new ArrayList<>();
+        if (currentCID == null || mqAll == null || mqAll.isEmpty() || cidAll == null || !cidAll.contains(currentCID)) {
+            return result;
+        }
+
+        List<String> cids = new ArrayList<>(cidAll);
+        Collections.sort(cids);
+        HashMap<String, String> identities = identities(cids);
+
+        List<MessageQueue> queues = new ArrayList<>(mqAll);
+        Collections.sort(queues);
+
+        //每个consumer最多分到的queue数，总容量不小于queue数，总能找到没有满的consumer
+        int capacity = (queues.size() + cids.size() - 1) / cids.size();
+        HashMap<String, Integer> loads = new HashMap<>();
+        for (MessageQueue queue : queues) {
+            //不同shuffle topic中queueId相同的queue分给同一个consumer，join左右流共用这个queueId的状态
+            String queueKey = queue.getTopic().endsWith(Constant.SHUFFLE_TOPIC_SUFFIX) ? Utils.buildKey(queue.getBrokerName(), String.valueOf(queue.getQueueId()))
+                    : Utils.buildKey(queue.getBrokerName(), queue.getTopic(), queue.getQueueId());
+
+            List<String> ranked = new ArrayList<>(cids);
+            ranked.sort(Comparator.comparing((String cid) -> hash(queueKey + "@" + identities.get(cid)), Comparator.reverseOrder()));
+
+            String owner = null;
+            for (String cid : ranked) {
+                if (loads.getOrDefault(cid, 0) < capacity) {
+                    owner = cid;
+                    break;
+                }
+            }
+
+            loads.merge(owner, 1, Integer::sum);
+            if (owner.equals(currentCID)) {
+                result.add(queue);
+            }
+        }
+
+        Collections.sort(result);
+        return result;
+    }
+
+    //clientId是ip@instanceName，instanceName默认是pid，重启后会变化
+    private HashMap<String, String> identities(List<String> sortedCids) {
+        HashMap<String, String> result = new HashMap<>();
+        HashMap<String, Integer> ordinals = new HashMap<>();
+        for (String cid : sortedCids) {
+            int index = cid.indexOf('@');
+            String ip = index < 0 ? cid : cid.substring(0, index);
+            int ordinal = ordinals.merge(ip, 1, Integer::sum);
+            result.put(cid, ip + "#" + ordinal);
+        }
+        return result;
+    }
+
+    //FNV-1a，不依赖JVM的hashCode实现，所有consumer算出的结果相同
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        //FNV的低位分布不均匀，再混合一次
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @Override
+    public String getName() {
+        return "STICKY";
+    }
+}
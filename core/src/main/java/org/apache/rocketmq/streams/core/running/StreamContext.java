@@ -18,6 +18,7 @@ package org.apache.rocketmq.streams.core.running;
 
 import org.apache.rocketmq.client.producer.DefaultMQProducer;
 import org.apache.rocketmq.streams.core.metadata.Data;
+import org.apache.rocketmq.streams.core.metrics.MetricsRegistry;
 import org.apache.rocketmq.streams.core.state.StateStore;
 
 import java.util.List;
@@ -38,7 +39,13 @@ public interface StreamContext<V> {
 
     DefaultMQProducer getDefaultMQProducer();
 
+    ShuffleBatcher getShuffleBatcher();
+
+    LocalShuffleExchange getLocalShuffleExchange();
+
     String getMessageFromWhichSourceTopicQueue();
 
+    MetricsRegistry getMetricsRegistry();
+
     <K> void forward(Data<K, V> data) throws Throwable;
 }
@@ -19,6 +19,7 @@ package org.apache.rocketmq.streams.core.running;
 import org.apache.rocketmq.client.producer.DefaultMQProducer;
 import org.apache.rocketmq.streams.core.exception.DataProcessThrowable;
 import org.apache.rocketmq.streams.core.metadata.Data;
+import org.apache.rocketmq.streams.core.metrics.MetricsRegistry;
 import org.apache.rocketmq.streams.core.state.StateStore;
 import org.apache.rocketmq.tools.admin.DefaultMQAdminExt;
 
@@ -34,28 +35,52 @@ import java.util.Properties;
 public class StreamContextImpl<V> implements StreamContext<V> {
 
     private final DefaultMQProducer producer;
+    private final ShuffleBatcher shuffleBatcher;
+    private final LocalShuffleExchange localShuffleExchange;
     private final DefaultMQAdminExt mqAdmin;
     private final StateStore stateStore;
     private final String messageFromWhichSourceTopicQueue;
+    private final MetricsRegistry metricsRegistry;
 
     private Object key;
     private long dataTime;
     private Properties header = new Properties();
     private long watermark;
 
+    //正在执行的processor的metrics，以及其下游processor累计耗时，用于计算算子自身耗时
+    private MetricsRegistry.OperatorMetrics processorMetrics;
+    private long childNanos;
+    private Throwable countedError;
+
     private final List<Processor<V>> childList = new ArrayList<>();
 
-    StreamContextImpl(DefaultMQProducer producer, DefaultMQAdminExt mqAdmin, StateStore stateStore, String messageFromWhichSourceTopicQueue) {
+    StreamContextImpl(DefaultMQProducer producer, ShuffleBatcher shuffleBatcher, LocalShuffleExchange localShuffleExchange,
+                      DefaultMQAdminExt mqAdmin, StateStore stateStore, String messageFromWhichSourceTopicQueue,
+                      MetricsRegistry metricsRegistry) {
         this.producer = producer;
+        this.shuffleBatcher = shuffleBatcher;
+        this.localShuffleExchange = localShuffleExchange;
         this.mqAdmin = mqAdmin;
         this.stateStore = stateStore;
         this.messageFromWhichSourceTopicQueue = messageFromWhichSourceTopicQueue;
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    void setProcessorMetrics(MetricsRegistry.OperatorMetrics processorMetrics) {
+        this.processorMetrics = processorMetrics;
     }
 
     void setWatermark(long watermark) {
         this.watermark = watermark;
     }
 
+    static <V> MetricsRegistry.OperatorMetrics operatorMetrics(MetricsRegistry metricsRegistry, Processor<V> processor) {
+        if (processor instanceof AbstractProcessor) {
+            return ((AbstractProcessor<V>) processor).operatorMetrics(metricsRegistry);
+        }
+        return metricsRegistry.operator(processor.getName());
+    }
+
     @Override
     public void init(List<Processor<V>> childrenProcessors) {
         this.childList.clear();
@@ -74,10 +99,25 @@ public class StreamContextImpl<V> implements StreamContext<V> {
         return producer;
     }
 
+    @Override
+    public ShuffleBatcher getShuffleBatcher() {
+        return shuffleBatcher;
+    }
+
+    @Override
+    public LocalShuffleExchange getLocalShuffleExchange() {
+        return localShuffleExchange;
+    }
+
     public String getMessageFromWhichSourceTopicQueue() {
         return messageFromWhichSourceTopicQueue;
     }
 
+    @Override
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
     @Override
     public long getDataTime() {
         return this.dataTime;
@@ -120,12 +160,49 @@ public class StreamContextImpl<V> implements StreamContext<V> {
 
         List<Processor<V>> store = new ArrayList<>(childList);
 
-        for (Processor<V> processor : childList) {
+        if (metricsRegistry == null) {
+            for (Processor<V> processor : store) {
+                try {
+                    processor.preProcess(this);
+                    processor.process(data.getValue());
+                } finally {
+                    this.childList.clear();
+                    this.childList.addAll(store);
+                }
+            }
+            return;
+        }
 
+        if (processorMetrics != null) {
+            processorMetrics.getRecordsOut().inc();
+        }
+
+        MetricsRegistry.OperatorMetrics parentMetrics = this.processorMetrics;
+        for (Processor<V> processor : store) {
+            MetricsRegistry.OperatorMetrics metrics = operatorMetrics(metricsRegistry, processor);
+            metrics.getRecordsIn().inc();
+
+            long parentChildNanos = this.childNanos;
+            this.childNanos = 0;
+            this.processorMetrics = metrics;
+
+            long begin = System.nanoTime();
             try {
                 processor.preProcess(this);
                 processor.process(data.getValue());
+            } catch (Throwable t) {
+                //异常会经过所有上游算子，只记在抛出的算子上
+                if (t != countedError) {
+                    countedError = t;
+                    metrics.getErrors().inc();
+                }
+                throw t;
             } finally {
+                long elapsed = System.nanoTime() - begin;
+                metrics.getProcessTime().record(elapsed - this.childNanos);
+
+                this.childNanos = parentChildNanos + elapsed;
+                this.processorMetrics = parentMetrics;
                 this.childList.clear();
                 this.childList.addAll(store);
             }
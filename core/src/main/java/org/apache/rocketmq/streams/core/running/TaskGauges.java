@@ -0,0 +1,227 @@
+package org.apache.rocketmq.streams.core.running;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.rocketmq.client.consumer.DefaultLitePullConsumer;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.streams.core.common.Constant;
+import org.apache.rocketmq.streams.core.function.supplier.SourceSupplier;
+import org.apache.rocketmq.streams.core.metrics.MetricsRegistry;
+import org.apache.rocketmq.streams.core.state.RocketMQStore;
+import org.apache.rocketmq.streams.core.util.Utils;
+import org.apache.rocketmq.tools.admin.DefaultMQAdminExt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 每个source/shuffle queue的gauge，在WorkerThread中定期刷新，queue分配时注册，撤销时移除。
+ * <pre>
+ * task.{brokerName@topic@queueId}.consumerLag      maxOffset - committed offset
+ * task.{brokerName@topic@queueId}.watermarkLagMs   wall clock - watermark
+ * task.{brokerName@topic@queueId}.stateKeys        keys in state, shuffle queue only
+ * task.{brokerName@topic@queueId}.stateBytes       rocksdb.estimate-live-data-size of the queue, shuffle queue only
+ * task.{brokerName@topic@queueId}.pendingWindows   windows not fired yet, shuffle queue only
+ * task.{brokerName@topic@queueId}.restoring        1 while the state is restoring and the queue is paused, shuffle queue only
+ * worker.{threadName}.stateEstimateBytes           rocksdb.estimate-live-data-size
+ * worker.{threadName}.stateEstimateKeys            rocksdb.estimate-num-keys
+ * </pre>
+ * 统计需要访问broker、本地状态和算子，所以在worker线程中定期统计，gauge只读取统计结果。
+ */
+class TaskGauges {
+    private static final Logger logger = LoggerFactory.getLogger(TaskGauges.class.getName());
+    private static final long REFRESH_INTERVAL_MILLIS = 5 * 1000L;
+
+    private final String threadName;
+    private final MetricsRegistry metricsRegistry;
+    private final DefaultLitePullConsumer consumer;
+    private final DefaultMQAdminExt mqAdmin;
+    private final RocketMQStore stateStore;
+    private final MessageQueueListenerWrapper wrapper;
+
+    private final HashMap<String, TaskState> tasks = new HashMap<>();
+    private long lastRefreshTime = 0;
+
+    TaskGauges(String threadName, MetricsRegistry metricsRegistry, DefaultLitePullConsumer consumer, DefaultMQAdminExt mqAdmin,
+               RocketMQStore stateStore, MessageQueueListenerWrapper wrapper) {
+        this.threadName = threadName;
+        this.metricsRegistry = metricsRegistry;
+        this.consumer = consumer;
+        this.mqAdmin = mqAdmin;
+        this.stateStore = stateStore;
+        this.wrapper = wrapper;
+    }
+
+    void start() {
+        if (metricsRegistry == null) {
+            return;
+        }
+        metricsRegistry.gauge(workerMetricName("stateEstimateBytes"), () -> {
+            try {
+                return stateStore.getEstimateStateBytes();
+            } catch (Throwable t) {
+                return -1;
+            }
+        });
+        metricsRegistry.gauge(workerMetricName("stateEstimateKeys"), () -> {
+            try {
+                return stateStore.getEstimateStateKeys();
+            } catch (Throwable t) {
+                return -1;
+            }
+        });
+    }
+
+    void refresh() {
+        if (metricsRegistry == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastRefreshTime < REFRESH_INTERVAL_MILLIS) {
+            return;
+        }
+        lastRefreshTime = now;
+
+        Set<String> assigned = new HashSet<>(wrapper.selectAllProcessor().keySet());
+
+        Iterator<Map.Entry<String, TaskState>> iterator = tasks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, TaskState> entry = iterator.next();
+            if (!assigned.contains(entry.getKey())) {
+                entry.getValue().unregister();
+                iterator.remove();
+            }
+        }
+
+        for (String key : assigned) {
+            TaskState taskState = tasks.computeIfAbsent(key, this::register);
+            taskState.consumerLag = consumerLag(taskState.queue);
+            if (taskState.stateful) {
+                taskState.pendingWindows = pendingWindows(key);
+                try {
+                    taskState.stateKeys = stateStore.getStateKeyCount(taskState.queue);
+                    taskState.stateBytes = stateStore.getStateBytes(taskState.queue);
+                } catch (Throwable t) {
+                    //queue正在撤销，下次再统计
+                    logger.debug("count state keys of queue:[{}] failed.", key, t);
+                }
+            }
+        }
+    }
+
+    void close() {
+        if (metricsRegistry == null) {
+            return;
+        }
+        for (TaskState taskState : tasks.values()) {
+            taskState.unregister();
+        }
+        tasks.clear();
+        metricsRegistry.remove(workerMetricName("stateEstimateBytes"));
+        metricsRegistry.remove(workerMetricName("stateEstimateKeys"));
+    }
+
+    private TaskState register(String key) {
+        String[] split = Utils.split(key);
+        MessageQueue queue = new MessageQueue(split[1], split[0], Integer.parseInt(split[2]));
+        TaskState taskState = new TaskState(key, queue);
+
+        metricsRegistry.gauge(taskState.metricName("consumerLag"), () -> taskState.consumerLag);
+        metricsRegistry.gauge(taskState.metricName("watermarkLagMs"), () -> watermarkLag(key));
+        if (taskState.stateful) {
+            metricsRegistry.gauge(taskState.metricName("stateKeys"), () -> taskState.stateKeys);
+            metricsRegistry.gauge(taskState.metricName("stateBytes"), () -> taskState.stateBytes);
+            metricsRegistry.gauge(taskState.metricName("pendingWindows"), () -> taskState.pendingWindows);
+            metricsRegistry.gauge(taskState.metricName("restoring"), () -> stateStore.isReady(queue) ? 0 : 1);
+        }
+        return taskState;
+    }
+
+    private long consumerLag(MessageQueue queue) {
+        try {
+            Long committed = consumer.committed(queue);
+            long maxOffset = mqAdmin.maxOffset(queue);
+            if (committed == null || committed < 0) {
+                return maxOffset;
+            }
+            return Math.max(0, maxOffset - committed);
+        } catch (Throwable t) {
+            logger.debug("get consumer lag error, queue:[{}]", queue, t);
+            return -1;
+        }
+    }
+
+    //窗口算子在内存中维护还未触发的窗口，不需要遍历状态
+    private long pendingWindows(String key) {
+        Processor<?> processor = wrapper.selectProcessor(key);
+        if (!(processor instanceof AbstractProcessor)) {
+            return 0;
+        }
+        return ((AbstractProcessor<?>) processor).pendingWindows();
+    }
+
+    private long watermarkLag(String key) {
+        Processor<?> processor = wrapper.selectProcessor(key);
+        if (!(processor instanceof SourceSupplier.SourceProcessor)) {
+            return -1;
+        }
+
+        long watermark = ((SourceSupplier.SourceProcessor<?, ?>) processor).getWatermark();
+        if (watermark == Long.MIN_VALUE) {
+            return -1;
+        }
+        return System.currentTimeMillis() - watermark;
+    }
+
+    private String workerMetricName(String name) {
+        return String.join(".", "worker", threadName, name);
+    }
+
+    private class TaskState {
+        private final String key;
+        private final MessageQueue queue;
+        private final boolean stateful;
+        private volatile long consumerLag = -1;
+        private volatile long stateKeys;
+        private volatile long stateBytes;
+        private volatile long pendingWindows;
+
+        TaskState(String key, MessageQueue queue) {
+            this.key = key;
+            this.queue = queue;
+            this.stateful = queue.getTopic().endsWith(Constant.SHUFFLE_TOPIC_SUFFIX);
+        }
+
+        String metricName(String name) {
+            return String.join(".", "task", key, name);
+        }
+
+        void unregister() {
+            metricsRegistry.remove(metricName("consumerLag"));
+            metricsRegistry.remove(metricName("watermarkLagMs"));
+            metricsRegistry.remove(metricName("stateKeys"));
+            metricsRegistry.remove(metricName("stateBytes"));
+            metricsRegistry.remove(metricName("pendingWindows"));
+            metricsRegistry.remove(metricName("restoring"));
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package org.apache.rocketmq.streams.core.running;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.MessageQueueSelector;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.streams.core.common.Constant;
+import org.apache.rocketmq.streams.core.exception.DataProcessThrowable;
+import org.apache.rocketmq.streams.core.function.supplier.SourceSupplier;
+import org.apache.rocketmq.streams.core.metadata.Data;
+import org.apache.rocketmq.streams.core.serialization.KeyValueDeserializer;
+import org.apache.rocketmq.streams.core.serialization.ShuffleBatchProtocol;
+import org.apache.rocketmq.streams.core.state.InMemoryStateStore;
+import org.apache.rocketmq.streams.core.topology.TopologyBuilder;
+import org.apache.rocketmq.streams.core.util.Pair;
+import org.apache.rocketmq.streams.core.util.Utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 不依赖RocketMQ，在当前线程中执行一个TopologyBuilder，用于测试和性能问题复现：
+ * <pre>
+ * TopologyTestDriver driver = new TopologyTestDriver(builder.build(), properties);
+ * driver.pipeInput("sourceTopic", body, 1000L);
+ * List&lt;Pair&lt;K, V&gt;&gt; result = driver.readOutput("sinkTopic", deserializer);
+ * </pre>
+ * 每个topic只有一个queue，发往shuffle topic的数据在内存中路由回对应的source processor，其他topic的数据可以通过readOutput读取。
+ * 状态保存在{@link InMemoryStateStore}中。数据的时间由pipeInput指定，watermark和WorkerThread一样由数据时间推进，
+ * 窗口只在有数据到达时才会触发，advanceWatermark之后需要再输入一条数据。
+ * 非线程安全。
+ */
+public class TopologyTestDriver implements AutoCloseable {
+    public static final String BROKER_NAME = "test-driver";
+
+    private final TopologyBuilder topologyBuilder;
+    private final Properties properties;
+    private final InMemoryStateStore stateStore = new InMemoryStateStore();
+    private final CaptureProducer producer = new CaptureProducer();
+    private final ShuffleBatcher shuffleBatcher;
+
+    private final HashMap<String/*topic*/, SourceSupplier.SourceProcessor<?, ?>> processors = new HashMap<>();
+    private final ArrayDeque<Message> pending = new ArrayDeque<>();
+    private final HashMap<String/*topic*/, List<Message>> outputs = new HashMap<>();
+
+    private long currentTime = 0;
+    private long minWatermark = Long.MIN_VALUE;
+
+    public TopologyTestDriver(TopologyBuilder topologyBuilder, Properties properties) {
+        if (topologyBuilder.getGlobalTables().size() != 0) {
+            throw new UnsupportedOperationException("global table is not supported in TopologyTestDriver, jobId=" + topologyBuilder.getJobId());
+        }
+        this.topologyBuilder = topologyBuilder;
+        this.properties = properties;
+        this.shuffleBatcher = new ShuffleBatcher(producer, new ShuffleQueueSelector(producer), properties);
+    }
+
+    public void pipeInput(String topic, byte[] body) throws Throwable {
+        pipeInput(topic, body, currentTime);
+    }
+
+    public void pipeInput(String topic, byte[] body, long timestamp) throws Throwable {
+        Message message = new Message(topic, body);
+        message.putUserProperty(Constant.SOURCE_TIMESTAMP, String.valueOf(timestamp));
+        pipeInput(message);
+    }
+
+    //数据时间取自Constant.SOURCE_TIMESTAMP属性，没有时使用driver当前时间
+    public void pipeInput(Message message) throws Throwable {
+        if (!topologyBuilder.getSourceTopic().contains(message.getTopic())) {
+            throw new IllegalArgumentException("topic is not a source topic of job " + topologyBuilder.getJobId() + ": " + message.getTopic());
+        }
+
+        pending.add(message);
+        while (!pending.isEmpty()) {
+            dispatch(pending.poll());
+            this.shuffleBatcher.flush();
+        }
+    }
+
+    public void advanceTime(long millis) {
+        this.currentTime += millis;
+    }
+
+    public long getCurrentTime() {
+        return currentTime;
+    }
+
+    //后续数据的watermark不会小于这个值
+    public void advanceWatermark(long watermark) {
+        this.minWatermark = Math.max(this.minWatermark, watermark);
+    }
+
+    //读取并清空发往这个topic的数据
+    public List<Message> readOutput(String topic) {
+        List<Message> result = outputs.remove(topic);
+        return result == null ? Collections.emptyList() : result;
+    }
+
+    public <K, V> List<Pair<K, V>> readOutput(String topic, KeyValueDeserializer<K, V> deserializer) throws Throwable {
+        List<Pair<K, V>> result = new ArrayList<>();
+        for (Message message : readOutput(topic)) {
+            deserializer.configure(message.getUserProperty(Constant.SHUFFLE_KEY_CLASS_NAME), message.getUserProperty(Constant.SHUFFLE_VALUE_CLASS_NAME));
+            result.add(deserializer.deserialize(message.getBody()));
+        }
+        return result;
+    }
+
+    public InMemoryStateStore getStateStore() {
+        return stateStore;
+    }
+
+    //所有窗口算子中还没有触发的窗口数，和task.{queue}.pendingWindows相同
+    public long getPendingWindowCount() {
+        long result = 0;
+        for (SourceSupplier.SourceProcessor<?, ?> processor : processors.values()) {
+            if (processor instanceof AbstractProcessor) {
+                result += ((AbstractProcessor<?>) processor).pendingWindows();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws Exception {
+        this.stateStore.close();
+        this.processors.clear();
+        this.pending.clear();
+        this.outputs.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K, V> void dispatch(Message message) throws Throwable {
+        String topic = message.getTopic();
+        SourceSupplier.SourceProcessor<K, V> processor = (SourceSupplier.SourceProcessor<K, V>) processors.computeIfAbsent(topic,
+                name -> (SourceSupplier.SourceProcessor<?, ?>) topologyBuilder.build(name));
+
+        if (message.getUserProperty(Constant.SHUFFLE_BATCH_SIZE) != null) {
+            for (ShuffleBatchProtocol.Record record : processor.unpack(message.getBody())) {
+                process(processor, topic, record.getKeyClassName(), record.getValueClassName(), record.getBody(), record.getTimestamp());
+            }
+            return;
+        }
+
+        String timestamp = message.getUserProperty(Constant.SOURCE_TIMESTAMP);
+        process(processor, topic, message.getUserProperty(Constant.SHUFFLE_KEY_CLASS_NAME), message.getUserProperty(Constant.SHUFFLE_VALUE_CLASS_NAME),
+                message.getBody(), StringUtils.isEmpty(timestamp) ? currentTime : Long.parseLong(timestamp));
+    }
+
+    private <K, V> void process(SourceSupplier.SourceProcessor<K, V> processor, String topic, String keyClassName,
+                                String valueClassName, byte[] body, long timestamp) throws Throwable {
+        String key = Utils.buildKey(BROKER_NAME, topic, 0);
+        StreamContextImpl<V> context = new StreamContextImpl<>(producer, shuffleBatcher, null, null, stateStore, key, null);
+        processor.preProcess(context);
+
+        Pair<K, V> pair = processor.deserialize(keyClassName, valueClassName, body);
+
+        long watermark = processor.getWatermark(timestamp, getAllowLateness());
+        context.setWatermark(Math.max(watermark, minWatermark));
+
+        Data<K, V> data = new Data<>(pair.getKey(), pair.getValue(), timestamp, new Properties());
+        context.setKey(pair.getKey());
+
+        try {
+            context.forward(data);
+        } catch (Throwable t) {
+            throw new DataProcessThrowable(t);
+        }
+    }
+
+    private long getAllowLateness() {
+        Object value = properties.get(Constant.ALLOW_LATENESS_MILLISECOND);
+        if (value == null) {
+            return 0L;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return Long.parseLong(String.valueOf(value));
+    }
+
+    //shuffle topic的数据放回待处理队列，其他topic的数据保存下来供readOutput读取
+    private void receive(Message message) {
+        if (topologyBuilder.getSourceTopic().contains(message.getTopic())) {
+            pending.add(message);
+        } else {
+            outputs.computeIfAbsent(message.getTopic(), topic -> new ArrayList<>()).add(message);
+        }
+    }
+
+    private class CaptureProducer extends DefaultMQProducer {
+        private long offset = 0;
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<MessageQueue> fetchPublishMessageQueues(String topic) {
+            return Collections.singletonList(new MessageQueue(topic, BROKER_NAME, 0));
+        }
+
+        @Override
+        public SendResult send(Message msg) {
+            return send(msg, new MessageQueue(msg.getTopic(), BROKER_NAME, 0));
+        }
+
+        @Override
+        public SendResult send(Message msg, MessageQueue mq) {
+            receive(msg);
+            return new SendResult(SendStatus.SEND_OK, String.valueOf(offset), null, mq, offset++);
+        }
+
+        @Override
+        public SendResult send(Message msg, MessageQueueSelector selector, Object arg) {
+            return send(msg, selector.select(fetchPublishMessageQueues(msg.getTopic()), msg, arg));
+        }
+    }
+}
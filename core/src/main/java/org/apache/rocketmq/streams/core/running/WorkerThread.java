@@ -17,13 +17,15 @@ package org.apache.rocketmq.streams.core.running;
  */
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.rocketmq.client.consumer.AllocateMessageQueueStrategy;
 import org.apache.rocketmq.client.consumer.DefaultLitePullConsumer;
 import org.apache.rocketmq.client.consumer.MessageQueueListener;
 import org.apache.rocketmq.client.exception.MQClientException;
 import org.apache.rocketmq.client.producer.DefaultMQProducer;
-import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.body.Connection;
 import org.apache.rocketmq.streams.core.common.Constant;
 import org.apache.rocketmq.streams.core.exception.DataProcessThrowable;
 import org.apache.rocketmq.streams.core.exception.DeserializeThrowable;
@@ -31,7 +33,12 @@ import org.apache.rocketmq.streams.core.exception.RStreamsException;
 import org.apache.rocketmq.streams.core.function.supplier.SourceSupplier;
 import org.apache.rocketmq.streams.core.metadata.Data;
 import org.apache.rocketmq.streams.core.metadata.StreamConfig;
+import org.apache.rocketmq.streams.core.metrics.Histogram;
+import org.apache.rocketmq.streams.core.metrics.MetricsRegistry;
+import org.apache.rocketmq.streams.core.serialization.ShuffleBatchProtocol;
 import org.apache.rocketmq.streams.core.window.TimeType;
+import org.apache.rocketmq.streams.core.state.HeapStore;
+import org.apache.rocketmq.streams.core.state.LocalStore;
 import org.apache.rocketmq.streams.core.state.RocketMQStore;
 import org.apache.rocketmq.streams.core.state.RocksDBStore;
 import org.apache.rocketmq.streams.core.state.StateStore;
@@ -43,49 +50,102 @@ import org.apache.rocketmq.tools.admin.DefaultMQAdminExt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.apache.rocketmq.streams.core.metadata.StreamConfig.ROCKETMQ_STREAMS_CONSUMER_GROUP;
 
 public class WorkerThread extends Thread {
     private static final Logger logger = LoggerFactory.getLogger(WorkerThread.class.getName());
+    private static final long SHUTDOWN_TIMEOUT_MILLISECOND = 30 * 1000L;
+    private static final long REVOKE_TIMEOUT_MILLISECOND = 10 * 1000L;
     private final TopologyBuilder topologyBuilder;
     private final PlanetaryEngine<?, ?> planetaryEngine;
     private final Properties properties;
     private final String jobId;
+    private final MetricsRegistry metricsRegistry;
 
 
-    public WorkerThread(String threadName, TopologyBuilder topologyBuilder, Properties properties) throws MQClientException {
+    public WorkerThread(String threadName, TopologyBuilder topologyBuilder, Properties properties,
+                        RocketMQClient rocketMQClient, MetricsRegistry metricsRegistry) throws MQClientException {
         super(threadName);
 
         this.topologyBuilder = topologyBuilder;
         this.properties = properties;
+        this.metricsRegistry = metricsRegistry;
         jobId = topologyBuilder.getJobId();
 
         String groupName = String.join("_", jobId, ROCKETMQ_STREAMS_CONSUMER_GROUP);
 
-        RocketMQClient rocketMQClient = new RocketMQClient(properties.getProperty(MixAll.NAMESRV_ADDR_PROPERTY));
-
         Set<String> topicNames = topologyBuilder.getSourceTopic();
 
 
         DefaultLitePullConsumer unionConsumer = rocketMQClient.pullConsumer(groupName, topicNames);
+        //同一个进程中的多个worker使用不同的clientId，否则共用一个MQClientInstance，同一个group不能重复注册
+        String instanceName = UtilAll.getPid() + "_" + threadName;
+        unionConsumer.setInstanceName(instanceName);
 
         MessageQueueListener originListener = unionConsumer.getMessageQueueListener();
         MessageQueueListenerWrapper wrapper = new MessageQueueListenerWrapper(originListener, topologyBuilder);
         unionConsumer.setMessageQueueListener(wrapper);
 
         DefaultMQProducer producer = rocketMQClient.producer(groupName);
+        producer.setInstanceName(instanceName);
         DefaultMQAdminExt mqAdmin = rocketMQClient.getMQAdmin();
+        unionConsumer.setAllocateMessageQueueStrategy(createAllocateStrategy(unionConsumer));
+
+        RocketMQStore store = new RocketMQStore(producer, createLocalStore(threadName), mqAdmin, rocketMQClient, metricsRegistry, properties);
+        store.setSharedStateTopics(topologyBuilder.getSharedStateTopics());
+
+        TaskGauges taskGauges = new TaskGauges(threadName, metricsRegistry, unionConsumer, mqAdmin, store, wrapper);
+
+        this.planetaryEngine = new PlanetaryEngine<>(unionConsumer, producer, store, mqAdmin, wrapper, taskGauges);
+    }
+
+    private LocalStore createLocalStore(String threadName) {
+        Object type = properties.get(Constant.STATE_STORE_TYPE);
+        if (type == null || Constant.STATE_STORE_TYPE_ROCKSDB.equalsIgnoreCase(String.valueOf(type))) {
+            Object checkpointDir = properties.get(Constant.STATE_CHECKPOINT_DIR);
+            if (checkpointDir == null) {
+                return new RocksDBStore(threadName);
+            }
+            return new RocksDBStore(threadName, new File(String.valueOf(checkpointDir), jobId));
+        }
+
+        if (Constant.STATE_STORE_TYPE_HEAP.equalsIgnoreCase(String.valueOf(type))) {
+            Object maxBytes = properties.get(Constant.STATE_HEAP_MAX_BYTES);
+            if (maxBytes == null) {
+                return new HeapStore(256 * 1024 * 1024L);
+            }
+            return new HeapStore(maxBytes instanceof Number ? ((Number) maxBytes).longValue() : Long.parseLong(String.valueOf(maxBytes)));
+        }
 
-        RocksDBStore rocksDBStore = new RocksDBStore(threadName);
-        RocketMQStore store = new RocketMQStore(producer, rocksDBStore, mqAdmin, this.properties);
+        throw new IllegalArgumentException("unknown state store type: " + type + ", should be rocksdb or heap.");
+    }
+
+    private AllocateMessageQueueStrategy createAllocateStrategy(DefaultLitePullConsumer consumer) {
+        Object strategy = properties.get(Constant.QUEUE_ALLOCATE_STRATEGY);
+        if (strategy == null || Constant.QUEUE_ALLOCATE_STRATEGY_AVERAGE.equalsIgnoreCase(String.valueOf(strategy))) {
+            return consumer.getAllocateMessageQueueStrategy();
+        }
 
-        this.planetaryEngine = new PlanetaryEngine<>(unionConsumer, producer, store, mqAdmin, wrapper);
+        if (Constant.QUEUE_ALLOCATE_STRATEGY_STICKY.equalsIgnoreCase(String.valueOf(strategy))) {
+            return new StickyAllocateMessageQueueStrategy();
+        }
+
+        throw new IllegalArgumentException("unknown queue allocate strategy: " + strategy + ", should be average or sticky.");
     }
 
     @Override
@@ -103,7 +163,16 @@ public class WorkerThread extends Thread {
         }
     }
 
+    //先让工作线程退出循环，由它自己关闭RocksDB等资源，避免关闭时还有线程在写入
     public void shutdown() {
+        this.planetaryEngine.stopLoop();
+        if (Thread.currentThread() != this && this.isAlive()) {
+            try {
+                this.join(SHUTDOWN_TIMEOUT_MILLISECOND);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         this.planetaryEngine.stop();
     }
 
@@ -112,27 +181,114 @@ public class WorkerThread extends Thread {
     class PlanetaryEngine<K, V> {
         private final DefaultLitePullConsumer unionConsumer;
         private final DefaultMQProducer producer;
+        private final ShuffleBatcher shuffleBatcher;
+        private final LocalShuffleExchange localShuffleExchange;
         private final DefaultMQAdminExt mqAdmin;
         private final StateStore stateStore;
         private final MessageQueueListenerWrapper wrapper;
+        private final TaskGauges taskGauges;
+        private final Histogram pollTime;
+        private final Histogram persistTime;
+        private final Histogram commitTime;
+        private final int standbyReplicas;
+        private final long watermarkDelay;
+        //正在恢复状态的shuffle queue，rebalance线程加入，worker线程在恢复完成后移除
+        private final Set<MessageQueue> restoringQueues = ConcurrentHashMap.newKeySet();
+        private final Set<MessageQueue> pausedQueues = new HashSet<>();
+        //rebalance线程提交撤销请求，worker线程在两轮处理之间响应
+        private final ConcurrentLinkedQueue<Revocation> revocations = new ConcurrentLinkedQueue<>();
+        private final Set<MessageQueue> revokedQueues = ConcurrentHashMap.newKeySet();
         private volatile boolean stop = false;
+        private boolean closed = false;
 
         public PlanetaryEngine(DefaultLitePullConsumer unionConsumer, DefaultMQProducer producer, StateStore stateStore,
-                               DefaultMQAdminExt mqAdmin, MessageQueueListenerWrapper wrapper) {
+                               DefaultMQAdminExt mqAdmin, MessageQueueListenerWrapper wrapper, TaskGauges taskGauges) {
             this.unionConsumer = unionConsumer;
             this.producer = producer;
+            ShuffleQueueSelector queueSelector = new ShuffleQueueSelector(producer);
+            this.shuffleBatcher = new ShuffleBatcher(producer, queueSelector, properties);
+            this.localShuffleExchange = new LocalShuffleExchange(producer, queueSelector, shuffleBatcher, wrapper, properties);
             this.mqAdmin = mqAdmin;
             this.stateStore = stateStore;
             this.wrapper = wrapper;
+            this.taskGauges = taskGauges;
+            //关闭metrics时不记录
+            this.pollTime = metricsRegistry == null ? new Histogram() : metricsRegistry.histogram("worker.pollTimeNs");
+            this.persistTime = metricsRegistry == null ? new Histogram() : metricsRegistry.histogram("worker.persistTimeNs");
+            this.commitTime = metricsRegistry == null ? new Histogram() : metricsRegistry.histogram("worker.commitTimeNs");
             this.wrapper.setRecoverHandler((addQueue, removeQueue) -> {
                 try {
                     PlanetaryEngine.this.stateStore.recover(addQueue, removeQueue);
+                    PlanetaryEngine.this.restoringQueues.addAll(addQueue);
+                    PlanetaryEngine.this.restoringQueues.removeAll(removeQueue);
                     return null;
                 } catch (Throwable e) {
                     logger.error("recover error.", e);
                     return e;
                 }
             });
+
+            this.wrapper.setRevokeHandler((addQueue, removeQueue) -> {
+                try {
+                    PlanetaryEngine.this.revoke(addQueue, removeQueue);
+                    return null;
+                } catch (Throwable e) {
+                    return e;
+                }
+            });
+
+            //示例中配置的是Integer，getProperty只能读到String
+            Object delay = properties.get(Constant.ALLOW_LATENESS_MILLISECOND);
+            if (delay == null) {
+                this.watermarkDelay = 0L;
+            } else {
+                this.watermarkDelay = delay instanceof Number ? ((Number) delay).longValue() : Long.parseLong(String.valueOf(delay));
+            }
+
+            Object standbyReplicas = properties.get(Constant.STATE_STANDBY_REPLICAS);
+            if (standbyReplicas == null) {
+                this.standbyReplicas = 0;
+            } else {
+                this.standbyReplicas = standbyReplicas instanceof Number ? ((Number) standbyReplicas).intValue()
+                        : Integer.parseInt(String.valueOf(standbyReplicas));
+            }
+            this.wrapper.setStandbyHandler((topic, mqAll) -> {
+                if (PlanetaryEngine.this.standbyReplicas <= 0) {
+                    return;
+                }
+                try {
+                    PlanetaryEngine.this.stateStore.standby(topic, selectStandbyQueues(mqAll));
+                } catch (Throwable e) {
+                    //standby只影响接管速度，失败时下次rebalance再更新
+                    logger.warn("update standby queues error, topic:[{}].", topic, e);
+                }
+            });
+        }
+
+        //按照consumer的分配策略算出其他worker分到的queue，跟随排在自己前面的standbyReplicas个worker
+        private Set<MessageQueue> selectStandbyQueues(Set<MessageQueue> mqAll) throws Throwable {
+            String consumerGroup = this.unionConsumer.getConsumerGroup();
+            List<String> cidAll = new ArrayList<>();
+            for (Connection connection : this.mqAdmin.examineConsumerConnectionInfo(consumerGroup).getConnectionSet()) {
+                cidAll.add(connection.getClientId());
+            }
+            Collections.sort(cidAll);
+
+            int index = cidAll.indexOf(this.unionConsumer.buildMQClientId());
+            if (index < 0 || cidAll.size() <= 1) {
+                return Collections.emptySet();
+            }
+
+            List<MessageQueue> mqList = new ArrayList<>(mqAll);
+            Collections.sort(mqList);
+
+            AllocateMessageQueueStrategy strategy = this.unionConsumer.getAllocateMessageQueueStrategy();
+            Set<MessageQueue> result = new HashSet<>();
+            for (int i = 1; i <= Math.min(this.standbyReplicas, cidAll.size() - 1); i++) {
+                String cid = cidAll.get((index - i + cidAll.size()) % cidAll.size());
+                result.addAll(strategy.allocate(consumerGroup, cid, mqList, cidAll));
+            }
+            return result;
         }
 
 
@@ -142,15 +298,37 @@ public class WorkerThread extends Thread {
             this.unionConsumer.start();
             this.producer.start();
             this.stateStore.init();
+            this.taskGauges.start();
         }
 
         void runInLoop() throws Throwable {
             while (!stop) {
                 HashSet<MessageQueue> set = new HashSet<>();
+                //本地交换的shuffle queue，只持久化状态，没有位点需要提交
+                HashSet<MessageQueue> localSet = new HashSet<>();
+                //暂停之前已经拉取到的恢复中queue的消息，不处理，回退到第一条的位点
+                HashMap<MessageQueue, Long> skipped = new HashMap<>();
 
                 try {
+                    releaseRevokedQueues();
+                    pauseRestoringQueues();
+
+                    long pollBegin = System.nanoTime();
                     List<MessageExt> list = this.unionConsumer.poll(10);
+                    pollTime.record(System.nanoTime() - pollBegin);
                     for (MessageExt messageExt : list) {
+                        String topic = messageExt.getTopic();
+                        int queueId = messageExt.getQueueId();
+                        String brokerName = messageExt.getBrokerName();
+                        MessageQueue queue = new MessageQueue(topic, brokerName, queueId);
+                        if (this.revokedQueues.contains(queue)) {
+                            continue;
+                        }
+                        if (skipped.containsKey(queue) || this.restoringQueues.contains(queue)) {
+                            skipped.putIfAbsent(queue, messageExt.getQueueOffset());
+                            continue;
+                        }
+
                         byte[] body = messageExt.getBody();
                         if (body == null || body.length == 0) {
                             continue;
@@ -159,22 +337,23 @@ public class WorkerThread extends Thread {
                         String keyClassName = messageExt.getUserProperty(Constant.SHUFFLE_KEY_CLASS_NAME);
                         String valueClassName = messageExt.getUserProperty(Constant.SHUFFLE_VALUE_CLASS_NAME);
 
-                        String topic = messageExt.getTopic();
-                        int queueId = messageExt.getQueueId();
-                        String brokerName = messageExt.getBrokerName();
-                        MessageQueue queue = new MessageQueue(topic, brokerName, queueId);
-                        set.add(queue);
-                        logger.debug("source topic queue:[{}]", queue);
-
-
                         String key = Utils.buildKey(brokerName, topic, queueId);
                         SourceSupplier.SourceProcessor<K, V> processor = (SourceSupplier.SourceProcessor<K, V>) wrapper.selectProcessor(key);
+                        if (processor == null) {
+                            //rebalance之前拉取到的消息，queue已经被撤销，由新的consumer从提交的位点开始消费
+                            continue;
+                        }
 
-                        StreamContextImpl<V> context = new StreamContextImpl<>(producer, mqAdmin, stateStore, key);
-
-                        processor.preProcess(context);
+                        set.add(queue);
+                        logger.debug("source topic queue:[{}]", queue);
 
-                        Pair<K, V> pair = processor.deserialize(keyClassName, valueClassName, body);
+                        if (messageExt.getUserProperty(Constant.SHUFFLE_BATCH_SIZE) != null) {
+                            List<ShuffleBatchProtocol.Record> records = processor.unpack(body);
+                            for (ShuffleBatchProtocol.Record record : records) {
+                                process(processor, key, topic, record.getKeyClassName(), record.getValueClassName(), record.getBody(), record.getTimestamp());
+                            }
+                            continue;
+                        }
 
                         long timestamp;
                         String userProperty = messageExt.getUserProperty(Constant.SOURCE_TIMESTAMP);
@@ -184,26 +363,10 @@ public class WorkerThread extends Thread {
                             timestamp = processor.getTimestamp(messageExt, (TimeType) properties.get(Constant.TIME_TYPE));
                         }
 
-                        String delay = properties.getProperty(Constant.ALLOW_LATENESS_MILLISECOND, "0");
-                        long watermark = processor.getWatermark(timestamp, Long.parseLong(delay));
-                        context.setWatermark(watermark);
-
-                        Data<K, V> data = new Data<>(pair.getKey(), pair.getValue(), timestamp, new Properties());
-                        context.setKey(pair.getKey());
-                        if (topic.contains(Constant.SHUFFLE_TOPIC_SUFFIX)) {
-                            logger.debug("shuffle data: [{}]", data);
-                        } else {
-                            logger.debug("source data: [{}]", data);
-                        }
-
-                        try {
-                            context.forward(data);
-                        } catch (Throwable t) {
-                            logger.error("process error.", t);
-                            throw new DataProcessThrowable(t);
-                        }
+                        process(processor, key, topic, keyClassName, valueClassName, body, timestamp);
                     }
 
+                    drainLocalShuffle(localSet);
                 } catch (Throwable t) {
                     Object skipDataError = properties.get(Constant.SKIP_DATA_ERROR);
                     if (skipDataError == Boolean.TRUE && t instanceof DataProcessThrowable || t instanceof DeserializeThrowable) {
@@ -212,18 +375,170 @@ public class WorkerThread extends Thread {
                     } else {
                         throw t;
                     }
+                } finally {
+                    //跳过数据、异常退出时也要回退，否则提交位点后跳过的消息丢失
+                    seekBack(skipped);
                 }
 
                 //todo 每次都提交位点消耗太大，后面改成拉取消息放入buffer的形式。
                 for (MessageQueue messageQueue : set) {
                     logger.debug("commit messageQueue: [{}]", messageQueue);
                 }
-                this.stateStore.persist(set);
+                //攒批的shuffle数据必须在提交位点前发出
+                this.shuffleBatcher.flush();
+                localSet.addAll(set);
+
+                long persistBegin = System.nanoTime();
+                this.stateStore.persist(localSet);
+                persistTime.record(System.nanoTime() - persistBegin);
+
+                long commitBegin = System.nanoTime();
                 this.unionConsumer.commit(set, true);
+                commitTime.record(System.nanoTime() - commitBegin);
+
+                this.taskGauges.refresh();
             }
         }
 
 
+        //在rebalance线程中调用，等worker不再处理被撤销的queue之后返回
+        private void revoke(Set<MessageQueue> addQueue, Set<MessageQueue> removeQueue) throws Throwable {
+            if (this.revokedQueues.removeAll(addQueue)) {
+                this.unionConsumer.resume(addQueue);
+            }
+            if (removeQueue.size() == 0) {
+                return;
+            }
+
+            //worker正在退出，最后一轮处理完会自己持久化、提交
+            if (!WorkerThread.this.isAlive() || this.stop) {
+                this.revokedQueues.addAll(removeQueue);
+                return;
+            }
+
+            Revocation revocation = new Revocation(removeQueue);
+            this.revocations.add(revocation);
+            if (Thread.currentThread() == WorkerThread.this) {
+                releaseRevokedQueues();
+                return;
+            }
+
+            if (!revocation.released.await(REVOKE_TIMEOUT_MILLISECOND, TimeUnit.MILLISECONDS)) {
+                throw new TimeoutException("wait for worker to release queue:" + removeQueue + " timeout.");
+            }
+        }
+
+        //上一轮处理的数据已经在轮末持久化状态、提交位点，这里再flush一次，之后不再处理这些queue
+        private void releaseRevokedQueues() throws Throwable {
+            Revocation revocation;
+            while ((revocation = this.revocations.poll()) != null) {
+                try {
+                    this.revokedQueues.addAll(revocation.queues);
+                    this.unionConsumer.pause(revocation.queues);
+
+                    this.shuffleBatcher.flush();
+                    this.stateStore.persist(revocation.queues);
+                    this.unionConsumer.commit(revocation.queues, true);
+                    //接管的worker在本机时可以从checkpoint恢复，不用重放state topic
+                    this.stateStore.checkpoint();
+                    logger.info("release revoked queue:[{}]", revocation.queues);
+                } finally {
+                    revocation.released.countDown();
+                }
+            }
+        }
+
+        //只暂停恢复中的queue，其他queue继续处理；恢复完成后恢复拉取
+        private void pauseRestoringQueues() {
+            if (this.restoringQueues.size() == 0 && this.pausedQueues.size() == 0) {
+                return;
+            }
+
+            Set<MessageQueue> restoring = new HashSet<>();
+            for (MessageQueue queue : this.restoringQueues) {
+                if (this.stateStore.isReady(queue)) {
+                    this.restoringQueues.remove(queue);
+                } else {
+                    restoring.add(queue);
+                }
+            }
+
+            //还没有分配到consumer的queue暂停不生效，每轮都重新暂停
+            if (restoring.size() != 0) {
+                this.unionConsumer.pause(restoring);
+                this.pausedQueues.addAll(restoring);
+            }
+
+            Set<MessageQueue> resume = new HashSet<>(this.pausedQueues);
+            resume.removeAll(restoring);
+            if (resume.size() != 0) {
+                this.unionConsumer.resume(resume);
+                this.pausedQueues.removeAll(resume);
+                logger.info("state of queue:[{}] is ready, resume consuming.", resume);
+            }
+        }
+
+        private void seekBack(Map<MessageQueue, Long> skipped) {
+            for (Map.Entry<MessageQueue, Long> entry : skipped.entrySet()) {
+                try {
+                    this.unionConsumer.seek(entry.getKey(), entry.getValue());
+                } catch (Throwable t) {
+                    //queue已经被撤销，由新的consumer从提交的位点开始消费
+                    logger.warn("seek back to offset:{} of restoring queue:[{}] failed.", entry.getValue(), entry.getKey(), t);
+                }
+            }
+        }
+
+        private void drainLocalShuffle(Set<MessageQueue> localSet) throws Throwable {
+            LocalShuffleExchange.LocalRecord localRecord;
+            while ((localRecord = this.localShuffleExchange.poll()) != null) {
+                SourceSupplier.SourceProcessor<K, V> processor = (SourceSupplier.SourceProcessor<K, V>) wrapper.selectProcessor(localRecord.getQueueKey());
+                //恢复中的queue交给broker，恢复完成后和其他消息一起按顺序处理
+                if (processor == null || this.restoringQueues.contains(localRecord.getQueue()) || this.revokedQueues.contains(localRecord.getQueue())) {
+                    this.localShuffleExchange.sendToBroker(localRecord);
+                    continue;
+                }
+
+                localSet.add(localRecord.getQueue());
+                ShuffleBatchProtocol.Record record = localRecord.getRecord();
+                process(processor, localRecord.getQueueKey(), localRecord.getQueue().getTopic(), record.getKeyClassName(),
+                        record.getValueClassName(), record.getBody(), record.getTimestamp());
+            }
+        }
+
+        private void process(SourceSupplier.SourceProcessor<K, V> processor, String key, String topic, String keyClassName,
+                             String valueClassName, byte[] body, long timestamp) throws Throwable {
+            StreamContextImpl<V> context = new StreamContextImpl<>(producer, shuffleBatcher, localShuffleExchange, mqAdmin,
+                    stateStore, key, metricsRegistry);
+            if (metricsRegistry != null) {
+                MetricsRegistry.OperatorMetrics metrics = StreamContextImpl.operatorMetrics(metricsRegistry, processor);
+                context.setProcessorMetrics(metrics);
+                metrics.getRecordsIn().inc();
+            }
+
+            processor.preProcess(context);
+
+            Pair<K, V> pair = processor.deserialize(keyClassName, valueClassName, body);
+
+            long watermark = processor.getWatermark(timestamp, this.watermarkDelay);
+            context.setWatermark(watermark);
+
+            Data<K, V> data = new Data<>(pair.getKey(), pair.getValue(), timestamp, new Properties());
+            context.setKey(pair.getKey());
+            if (topic.contains(Constant.SHUFFLE_TOPIC_SUFFIX)) {
+                logger.debug("shuffle data: [{}]", data);
+            } else {
+                logger.debug("source data: [{}]", data);
+            }
+
+            try {
+                context.forward(data);
+            } catch (Throwable t) {
+                logger.error("process error.", t);
+                throw new DataProcessThrowable(t);
+            }
+        }
+
         void createShuffleTopic() throws Throwable {
             Set<String> total = WorkerThread.this.topologyBuilder.getSourceTopic();
 
@@ -240,14 +555,38 @@ public class WorkerThread extends Thread {
             }
         }
 
+        private class Revocation {
+            private final Set<MessageQueue> queues;
+            private final CountDownLatch released = new CountDownLatch(1);
+
+            Revocation(Set<MessageQueue> queues) {
+                this.queues = new HashSet<>(queues);
+            }
+        }
+
+        void stopLoop() {
+            this.stop = true;
+        }
+
         public synchronized void stop() {
-            if (this.stop) {
+            if (this.closed) {
                 return;
             }
 
             this.stop = true;
+            this.closed = true;
+
+            //worker已经退出循环，最后一轮的状态已经持久化，在其他worker接管queue之前写checkpoint
+            if (!WorkerThread.this.isAlive() || Thread.currentThread() == WorkerThread.this) {
+                try {
+                    this.stateStore.checkpoint();
+                } catch (Throwable t) {
+                    logger.warn("checkpoint before shutdown error, thread:{}.", WorkerThread.this.getName(), t);
+                }
+            }
 
             try {
+                this.taskGauges.close();
                 this.unionConsumer.shutdown();
                 this.producer.shutdown();
                 this.mqAdmin.shutdown();
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.serialization;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * several shuffle records packed into one message body
+ * <pre>
+ * +-----------+
+ * | Int(4)    |  record count, then every record:
+ * | count     |
+ * +-----------+-----------------+-----------+-----------------+-------------+--------------+-------------+
+ * | Long(8)   | Int(4)          | key class | Int(4)          | value class | Int(4)       | record body |
+ * | timestamp | key class length|           | value class len |             | body length  |             |
+ * +-----------+-----------------+-----------+-----------------+-------------+--------------+-------------+
+ * </pre>
+ * key class length is 0 when the record has no key.
+ */
+public class ShuffleBatchProtocol {
+
+    public static int estimateSize(String keyClassName, String valueClassName, byte[] body) {
+        int keyClassLength = keyClassName == null ? 0 : keyClassName.length();
+        int valueClassLength = valueClassName == null ? 0 : valueClassName.length();
+        return 8 + 12 + keyClassLength + valueClassLength + body.length;
+    }
+
+    public static byte[] encode(List<Record> records) {
+        ByteBuf buf = Unpooled.buffer(256);
+        try {
+            buf.writeInt(records.size());
+            for (Record record : records) {
+                buf.writeLong(record.getTimestamp());
+                writeString(buf, record.getKeyClassName());
+                writeString(buf, record.getValueClassName());
+                buf.writeInt(record.getBody().length);
+                buf.writeBytes(record.getBody());
+            }
+
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.readBytes(bytes);
+            return bytes;
+        } finally {
+            buf.release();
+        }
+    }
+
+    public static List<Record> decode(byte[] total) {
+        ByteBuf buf = Unpooled.wrappedBuffer(total);
+        try {
+            int count = buf.readInt();
+            List<Record> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long timestamp = buf.readLong();
+                String keyClassName = readString(buf);
+                String valueClassName = readString(buf);
+
+                byte[] body = new byte[buf.readInt()];
+                buf.readBytes(body);
+
+                result.add(new Record(timestamp, keyClassName, valueClassName, body));
+            }
+            return result;
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static void writeString(ByteBuf buf, String value) {
+        if (value == null) {
+            buf.writeInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buf.writeInt(bytes.length);
+        buf.writeBytes(bytes);
+    }
+
+    private static String readString(ByteBuf buf) {
+        int length = buf.readInt();
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buf.readBytes(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static class Record {
+        private final long timestamp;
+        private final String keyClassName;
+        private final String valueClassName;
+        private final byte[] body;
+
+        public Record(long timestamp, String keyClassName, String valueClassName, byte[] body) {
+            this.timestamp = timestamp;
+            this.keyClassName = keyClassName;
+            this.valueClassName = valueClassName;
+            this.body = body;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getKeyClassName() {
+            return keyClassName;
+        }
+
+        public String getValueClassName() {
+            return valueClassName;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+}
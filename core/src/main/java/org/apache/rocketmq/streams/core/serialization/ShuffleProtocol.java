@@ -31,7 +31,7 @@ import org.apache.rocketmq.streams.core.util.Pair;
  * </pre>
  */
 public class ShuffleProtocol {
-    private final ByteBuf buf = Unpooled.buffer(16);
+    //多个WorkerThread共享同一个序列化器，每次使用新的buffer
     public byte[] merge(byte[] keyBytes, byte[] valueBytes) {
         if (keyBytes == null || keyBytes.length ==0) {
             return valueBytes;
@@ -41,16 +41,13 @@ public class ShuffleProtocol {
             return keyBytes;
         }
 
+        ByteBuf buf = Unpooled.buffer(8 + keyBytes.length + valueBytes.length);
         buf.writeInt(keyBytes.length);
         buf.writeInt(valueBytes.length);
         buf.writeBytes(keyBytes);
         buf.writeBytes(valueBytes);
 
-        byte[] bytes = new byte[buf.readableBytes()];
-        buf.readBytes(bytes);
-
-        buf.clear();
-        return bytes;
+        return buf.array();
     }
 
     public Pair<byte[], byte[]> split(byte[] total) {
@@ -20,28 +20,25 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.streams.core.common.Constant;
+import org.apache.rocketmq.streams.core.util.Bytes;
 import org.apache.rocketmq.streams.core.util.Utils;
 
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class AbstractStore {
     private final Wrapper wrapper = new Wrapper();
-
-
-    protected void putInRecover(String stateTopicQueueKey, byte[] key) {
-        wrapper.putInRecover(stateTopicQueueKey, key);
-    }
+    //多个source topic共用的state topic，例如join左右流的shuffle topic
+    private volatile Map<String/*source topic*/, Set<String/*state topic*/>> sharedStateTopics = Collections.emptyMap();
 
     protected void putInCalculating(String stateTopicQueueKey, byte[] key) {
         wrapper.putInCalculating(stateTopicQueueKey, key);
     }
 
-    protected Set<byte[]> getInCalculating(String stateTopicQueue) {
+    protected Set<Bytes> getInCalculating(String stateTopicQueue) {
         return wrapper.getInCalculating(stateTopicQueue);
     }
 
@@ -49,34 +46,19 @@ public abstract class AbstractStore {
         wrapper.removeCalculating(stateTopicQueue);
     }
 
-    protected Set<byte[]> getAll(String stateTopicQueue) {
-        return wrapper.getAll(stateTopicQueue);
-    }
-
-
-    protected String whichStateTopicQueueBelongTo(byte[] key) {
-        return wrapper.whichStateTopicQueueBelongTo(key);
-    }
-
-    protected void removeAllKey(byte[] key) {
-        wrapper.deleteByKey(key);
-    }
-
-
-    protected void removeAll(String stateTopicQueue) {
-        wrapper.removeAll(stateTopicQueue);
+    public void setSharedStateTopics(Map<String, Set<String>> sharedStateTopics) {
+        this.sharedStateTopics = sharedStateTopics;
     }
 
+    //只转换为source topic自己的state topic queue，不包括共用的state topic
     protected MessageQueue convertSourceTopicQueue2StateTopicQueue(MessageQueue messageQueue) {
-        HashSet<MessageQueue> messageQueues = new HashSet<>();
-        messageQueues.add(messageQueue);
-
-        Set<MessageQueue> stateTopicQueue = convertSourceTopicQueue2StateTopicQueue(messageQueues);
-
-        Iterator<MessageQueue> iterator = stateTopicQueue.iterator();
-        return iterator.next();
+        if (messageQueue.getTopic().endsWith(Constant.STATE_TOPIC_SUFFIX)) {
+            return messageQueue;
+        }
+        return new MessageQueue(messageQueue.getTopic() + Constant.STATE_TOPIC_SUFFIX, messageQueue.getBrokerName(), messageQueue.getQueueId());
     }
 
+    //source topic queue的全部state topic queue，包括共用state topic中brokerName、queueId相同的queue
     protected Set<MessageQueue> convertSourceTopicQueue2StateTopicQueue(Set<MessageQueue> messageQueues) {
         if (messageQueues == null || messageQueues.size() == 0) {
             return new HashSet<>();
@@ -84,17 +66,39 @@ public abstract class AbstractStore {
 
         HashSet<MessageQueue> result = new HashSet<>();
         for (MessageQueue messageQueue : messageQueues) {
-            if (messageQueue.getTopic().endsWith(Constant.STATE_TOPIC_SUFFIX)) {
-                result.add(messageQueue);
+            result.add(convertSourceTopicQueue2StateTopicQueue(messageQueue));
+
+            Set<String> stateTopics = sharedStateTopics.get(messageQueue.getTopic());
+            if (stateTopics == null) {
                 continue;
             }
-            MessageQueue queue = new MessageQueue(messageQueue.getTopic() + Constant.STATE_TOPIC_SUFFIX, messageQueue.getBrokerName(), messageQueue.getQueueId());
-            result.add(queue);
+            for (String stateTopic : stateTopics) {
+                result.add(new MessageQueue(stateTopic, messageQueue.getBrokerName(), messageQueue.getQueueId()));
+            }
         }
 
         return result;
     }
 
+    protected boolean isSharedStateTopic(String stateTopic) {
+        for (Set<String> stateTopics : sharedStateTopics.values()) {
+            if (stateTopics.contains(stateTopic)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //state topic的queue数量、所在集群与哪个source topic相同；共用的state topic取其中一个source topic，它们的queue数量相同
+    protected String layoutSourceTopic(String stateTopic) {
+        for (Map.Entry<String, Set<String>> entry : sharedStateTopics.entrySet()) {
+            if (entry.getValue().contains(stateTopic)) {
+                return entry.getKey();
+            }
+        }
+        return stateTopic2SourceTopic(stateTopic);
+    }
+
     protected static String stateTopic2SourceTopic(String stateTopic) {
         if (StringUtils.isEmpty(stateTopic)) {
             return null;
@@ -113,101 +117,20 @@ public abstract class AbstractStore {
     }
 
     static class Wrapper {
-        //新增，写消费未提交保存的中间状态，提交时移除
-        private final ConcurrentHashMap<String/*brokerName@topic@queueId of state topic*/, Set<byte[]/*Key*/>> calculating = new ConcurrentHashMap<>();
-        //全量, 与rocksdb保持同步
-        private final ConcurrentHashMap<String/*brokerName@topic@queueId of state topic*/, Set<byte[]/*Key*/>> recover = new ConcurrentHashMap<>();
-
-        public void putInRecover(String stateTopicQueueKey, byte[] key) {
-            Set<byte[]> allSet = this.recover.computeIfAbsent(stateTopicQueueKey, s -> new HashSet<>());
-            allSet.add(key);
-        }
+        //新增，写消费未提交保存的中间状态，提交时移除；全量的key只在本地存储中
+        private final ConcurrentHashMap<String/*brokerName@topic@queueId of state topic*/, Set<Bytes/*Key*/>> calculating = new ConcurrentHashMap<>();
 
         public void putInCalculating(String stateTopicQueueKey, byte[] key) {
-            Set<byte[]> keySet = this.calculating.computeIfAbsent(stateTopicQueueKey, s -> new HashSet<>());
-            keySet.add(key);
-
-            putInRecover(stateTopicQueueKey, key);
+            Set<Bytes> keySet = this.calculating.computeIfAbsent(stateTopicQueueKey, s -> ConcurrentHashMap.newKeySet());
+            keySet.add(Bytes.wrap(key));
         }
 
-        public Set<byte[]> getInCalculating(String stateTopicQueue) {
+        public Set<Bytes> getInCalculating(String stateTopicQueue) {
             return calculating.get(stateTopicQueue);
         }
 
-        public Set<byte[]> getAll(String stateTopicQueue) {
-            Set<byte[]> calculating = this.calculating.get(stateTopicQueue);
-            Set<byte[]> recover = this.recover.get(stateTopicQueue);
-
-            Set<byte[]> result = new HashSet<>();
-            result.addAll(calculating);
-            result.addAll(recover);
-
-            //可能有重复，不同byte[] 但是时一个key
-            return result;
-        }
-
-        public String whichStateTopicQueueBelongTo(byte[] key) {
-            for (String uniqueQueue : recover.keySet()) {
-                for (byte[] tempKeyByte : recover.get(uniqueQueue)) {
-                    if (Arrays.equals(tempKeyByte, key)) {
-                        return uniqueQueue;
-                    }
-                }
-            }
-
-            for (String uniqueQueue : calculating.keySet()) {
-                for (byte[] tempKeyByte : calculating.get(uniqueQueue)) {
-                    if (Arrays.equals(tempKeyByte, key)) {
-                        return uniqueQueue;
-                    }
-                }
-            }
-
-            return null;
-        }
-
-
-        public void deleteByKey(byte[] key) {
-            {
-                Set<Map.Entry<String, Set<byte[]>>> entries = calculating.entrySet();
-                Iterator<Map.Entry<String, Set<byte[]>>> iterator = entries.iterator();
-                while (iterator.hasNext()) {
-                    Map.Entry<String, Set<byte[]>> next = iterator.next();
-
-                    Set<byte[]> keySet = next.getValue();
-                    keySet.removeIf(rocksDBKey -> Arrays.equals(rocksDBKey, key));
-                    if (keySet.size() == 0) {
-                        iterator.remove();
-                    }
-                }
-            }
-
-            {
-                Set<Map.Entry<String, Set<byte[]>>> entries = recover.entrySet();
-                Iterator<Map.Entry<String, Set<byte[]>>> iterator = entries.iterator();
-                while (iterator.hasNext()) {
-                    Map.Entry<String, Set<byte[]>> next = iterator.next();
-
-                    Set<byte[]> keySet = next.getValue();
-                    keySet.removeIf(rocksDBKey -> Arrays.equals(rocksDBKey, key));
-                    if (keySet.size() == 0) {
-                        iterator.remove();
-                    }
-                }
-            }
-
-
-
-        }
-
         public void removeCalculating(String stateTopicQueueKey) {
             this.calculating.remove(stateTopicQueueKey);
         }
-
-        public void removeAll(String stateTopicQueueKey) {
-            this.recover.remove(stateTopicQueueKey);
-            this.calculating.remove(stateTopicQueueKey);
-        }
-
     }
 }
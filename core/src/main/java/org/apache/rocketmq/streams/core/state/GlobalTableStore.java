@@ -0,0 +1,227 @@
+package org.apache.rocketmq.streams.core.state;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.rocketmq.client.consumer.DefaultLitePullConsumer;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.streams.core.common.Constant;
+import org.apache.rocketmq.streams.core.exception.RecoverStateStoreThrowable;
+import org.apache.rocketmq.streams.core.running.RocketMQClient;
+import org.apache.rocketmq.streams.core.serialization.KeyValueDeserializer;
+import org.apache.rocketmq.streams.core.util.Pair;
+import org.apache.rocketmq.streams.core.util.Utils;
+import org.apache.rocketmq.tools.admin.DefaultMQAdminExt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个进程全量消费一个table topic到本地内存，所有WorkerThread共享，用于不需要shuffle的维表join。
+ * key优先使用反序列化出来的key，没有时使用消息的keys（SinkSupplier写入时为key的hex）。
+ * body为空或者带有EMPTY_BODY属性的消息表示删除该key。
+ */
+public class GlobalTableStore<K, V> implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(GlobalTableStore.class.getName());
+
+    private final String name;
+    private final String topicName;
+    private final KeyValueDeserializer<K, V> deserializer;
+
+    private final ConcurrentHashMap<String/*hex of key*/, V> table = new ConcurrentHashMap<>();
+    private final CountDownLatch ready = new CountDownLatch(1);
+
+    private final HashMap<MessageQueue, Long> restoreStart = new HashMap<>();
+    private final HashMap<MessageQueue, Long> restoreTarget = new HashMap<>();
+    private final ConcurrentHashMap<MessageQueue, Long> restorePosition = new ConcurrentHashMap<>();
+
+    private DefaultLitePullConsumer consumer;
+    private Thread loader;
+    private volatile boolean stop = false;
+
+    public GlobalTableStore(String name, String topicName, KeyValueDeserializer<K, V> deserializer) {
+        this.name = name;
+        this.topicName = topicName;
+        this.deserializer = deserializer;
+    }
+
+    public synchronized void start(String jobId, RocketMQClient rocketMQClient, DefaultMQAdminExt mqAdmin) throws Throwable {
+        if (this.consumer != null) {
+            return;
+        }
+        this.stop = false;
+
+        String groupName = String.join("_", jobId, "global_table", name);
+        this.consumer = rocketMQClient.restoreConsumer(groupName);
+        this.consumer.start();
+
+        Collection<MessageQueue> queues = this.consumer.fetchMessageQueues(topicName);
+        this.consumer.assign(queues);
+        for (MessageQueue queue : queues) {
+            this.consumer.seekToBegin(queue);
+            //启动时的最大位点，消费到这里认为恢复完成
+            this.restoreTarget.put(queue, mqAdmin.maxOffset(queue));
+            //旧消息过期后最小位点大于0，最小位点等于最大位点时没有消息可以拉取，直接认为恢复完成
+            long minOffset = mqAdmin.minOffset(queue);
+            this.restoreStart.put(queue, minOffset);
+            this.restorePosition.put(queue, minOffset);
+        }
+
+        this.loader = new Thread(this::load, String.join("_", Constant.WORKER_THREAD_NAME, jobId, "global_table", name));
+        this.loader.setDaemon(true);
+        this.loader.start();
+        logger.info("start global table, name:{}, topic:{}, restore target:{}", name, topicName, restoreTarget);
+    }
+
+    private void load() {
+        long lastLogTime = System.currentTimeMillis();
+        long startTime = lastLogTime;
+
+        while (!stop) {
+            try {
+                List<MessageExt> list = this.consumer.poll(100);
+                for (MessageExt messageExt : list) {
+                    apply(messageExt);
+                    MessageQueue queue = new MessageQueue(messageExt.getTopic(), messageExt.getBrokerName(), messageExt.getQueueId());
+                    this.restorePosition.put(queue, messageExt.getQueueOffset() + 1);
+                }
+
+                if (ready.getCount() != 0) {
+                    long now = System.currentTimeMillis();
+                    if (isRestored()) {
+                        ready.countDown();
+                        logger.info("global table restored, name:{}, keys:{}, cost:{} ms.", name, table.size(), now - startTime);
+                    } else if (now - lastLogTime > 5000) {
+                        lastLogTime = now;
+                        logger.info("global table restoring, name:{}, progress:{}%, keys:{}", name, String.format("%.2f", getRestoreProgress() * 100), table.size());
+                    }
+                }
+            } catch (Throwable t) {
+                logger.error("load global table error, name:{}, topic:{}", name, topicName, t);
+            }
+        }
+    }
+
+    private void apply(MessageExt messageExt) throws Throwable {
+        byte[] body = messageExt.getBody();
+        String emptyBody = messageExt.getUserProperty(Constant.EMPTY_BODY);
+        if (body == null || body.length == 0 || Constant.TRUE.equals(emptyBody)) {
+            if (messageExt.getKeys() != null) {
+                table.remove(messageExt.getKeys());
+            }
+            return;
+        }
+
+        String keyClassName = messageExt.getUserProperty(Constant.SHUFFLE_KEY_CLASS_NAME);
+        String valueClassName = messageExt.getUserProperty(Constant.SHUFFLE_VALUE_CLASS_NAME);
+        this.deserializer.configure(keyClassName, valueClassName);
+        Pair<K, V> pair = this.deserializer.deserialize(body);
+
+        String key = pair.getKey() != null ? Utils.toHexString(pair.getKey()) : messageExt.getKeys();
+        if (key == null) {
+            logger.warn("can not find key of message in global table, name:{}, msgId:{}", name, messageExt.getMsgId());
+            return;
+        }
+
+        if (pair.getValue() == null) {
+            table.remove(key);
+        } else {
+            table.put(key, pair.getValue());
+        }
+    }
+
+    private boolean isRestored() {
+        for (Map.Entry<MessageQueue, Long> entry : restoreTarget.entrySet()) {
+            Long position = restorePosition.get(entry.getKey());
+            if (position == null || position < entry.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public double getRestoreProgress() {
+        long total = 0;
+        long restored = 0;
+        for (Map.Entry<MessageQueue, Long> entry : restoreTarget.entrySet()) {
+            long start = restoreStart.getOrDefault(entry.getKey(), 0L);
+            total += Math.max(0, entry.getValue() - start);
+            restored += Math.max(0, Math.min(restorePosition.getOrDefault(entry.getKey(), start), entry.getValue()) - start);
+        }
+        if (total == 0) {
+            return ready.getCount() == 0 ? 1.0d : 0.0d;
+        }
+        return (double) restored / total;
+    }
+
+    public boolean isReady() {
+        return ready.getCount() == 0;
+    }
+
+    public void waitIfNotReady() throws RecoverStateStoreThrowable {
+        try {
+            while (!ready.await(5000, TimeUnit.MILLISECONDS)) {
+                if (stop) {
+                    throw new RecoverStateStoreThrowable("global table is closed, name: " + name);
+                }
+                logger.info("wait global table ready, name:{}, progress:{}%", name, String.format("%.2f", getRestoreProgress() * 100));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RecoverStateStoreThrowable(e);
+        }
+    }
+
+    public V get(Object key) {
+        if (key == null) {
+            return null;
+        }
+        return table.get(Utils.toHexString(key));
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTopicName() {
+        return topicName;
+    }
+
+    @Override
+    public synchronized void close() throws Exception {
+        this.stop = true;
+        if (this.loader != null) {
+            this.loader.join(1000);
+            this.loader = null;
+        }
+        if (this.consumer != null) {
+            this.consumer.shutdown();
+            this.consumer = null;
+        }
+    }
+}
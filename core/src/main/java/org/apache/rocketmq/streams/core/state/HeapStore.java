@@ -0,0 +1,220 @@
+package org.apache.rocketmq.streams.core.state;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.rocketmq.streams.core.exception.RStreamsException;
+import org.apache.rocketmq.streams.core.function.ValueMapperAction;
+import org.apache.rocketmq.streams.core.util.Pair;
+import org.apache.rocketmq.streams.core.util.Utils;
+import org.apache.rocketmq.streams.core.window.WindowKey;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 堆内存中的LocalStore，状态较小的任务不需要经过JNI访问RocksDB。
+ * 超过maxBytes之后写入新数据会抛出异常，此时应该改用RocksDB。
+ */
+public class HeapStore implements LocalStore {
+    //每个entry在跳表中的大致额外开销
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final ConcurrentHashMap<String/*brokerName@topic@queueId of state topic*/, ConcurrentSkipListMap<byte[], byte[]>> stores = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final ConcurrentHashMap<String/*brokerName@topic@queueId of state topic*/, AtomicLong> queueBytes = new ConcurrentHashMap<>();
+    private final long maxBytes;
+
+    public HeapStore(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public byte[] get(String stateTopicQueueKey, byte[] key) {
+        ConcurrentSkipListMap<byte[], byte[]> store = stores.get(stateTopicQueueKey);
+        if (key == null || store == null) {
+            return null;
+        }
+        return store.get(key);
+    }
+
+    @Override
+    public void put(String stateTopicQueueKey, byte[] key, byte[] value) {
+        ConcurrentSkipListMap<byte[], byte[]> store = stores.computeIfAbsent(stateTopicQueueKey, s -> new ConcurrentSkipListMap<>(Utils::compare));
+
+        long size = key.length + value.length + ENTRY_OVERHEAD;
+        //更新已有key时value变大也要检查
+        byte[] current = store.get(key);
+        long increase = current == null ? size : value.length - current.length;
+        if (increase > 0 && bytes.get() + increase > maxBytes) {
+            throw new RStreamsException("heap state store is full, maxBytes=" + maxBytes + ", current=" + bytes.get()
+                    + ", increase it or use rocksdb state store.");
+        }
+
+        byte[] old = store.put(key, value);
+        long delta = old == null ? size : value.length - old.length;
+        bytes.addAndGet(delta);
+        queueBytes.computeIfAbsent(stateTopicQueueKey, s -> new AtomicLong()).addAndGet(delta);
+    }
+
+    @Override
+    public void deleteByKey(String stateTopicQueueKey, byte[] key) {
+        ConcurrentSkipListMap<byte[], byte[]> store = stores.get(stateTopicQueueKey);
+        if (store == null) {
+            return;
+        }
+        byte[] old = store.remove(key);
+        if (old != null) {
+            long size = key.length + old.length + ENTRY_OVERHEAD;
+            bytes.addAndGet(-size);
+            queueBytes.computeIfAbsent(stateTopicQueueKey, s -> new AtomicLong()).addAndGet(-size);
+        }
+    }
+
+    @Override
+    public List<Pair<byte[], byte[]>> searchStateLessThanWatermark(String stateTopicQueueKey, String name, long lessThanThisTime,
+                                                                   ValueMapperAction<byte[], WindowKey> deserializer) throws Throwable {
+        List<Pair<byte[], byte[]>> result = new ArrayList<>();
+        ConcurrentSkipListMap<byte[], byte[]> store = stores.get(stateTopicQueueKey);
+        if (store == null) {
+            return result;
+        }
+
+        byte[] prefix = (name + WindowKey.SPLIT).getBytes(StandardCharsets.UTF_8);
+        for (Map.Entry<byte[], byte[]> entry : store.tailMap(prefix, true).entrySet()) {
+            byte[] keyBytes = entry.getKey();
+            if (!Utils.startsWith(keyBytes, prefix)) {
+                break;
+            }
+
+            WindowKey windowKey = deserializer.convert(keyBytes);
+            if (!windowKey.getOperatorName().equals(name) || windowKey.getWindowEnd() >= lessThanThisTime) {
+                continue;
+            }
+            result.add(new Pair<>(keyBytes, entry.getValue()));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Pair<String, byte[]>> searchByKeyPrefix(String stateTopicQueueKey, String keyPrefix, ValueMapperAction<String, byte[]> string2Bytes,
+                                                        ValueMapperAction<byte[], String> byte2String) throws Throwable {
+        List<Pair<String, byte[]>> result = new ArrayList<>();
+        ConcurrentSkipListMap<byte[], byte[]> store = stores.get(stateTopicQueueKey);
+        if (store == null) {
+            return result;
+        }
+
+        //key按字节排序，相同前缀的key是连续的，遇到第一个不匹配的key就结束
+        for (Map.Entry<byte[], byte[]> entry : store.tailMap(string2Bytes.convert(keyPrefix), true).entrySet()) {
+            String storeKey = byte2String.convert(entry.getKey());
+            if (!storeKey.startsWith(keyPrefix)) {
+                break;
+            }
+            result.add(new Pair<>(storeKey, entry.getValue()));
+        }
+        return result;
+    }
+
+    @Override
+    public KeyValueIterator iterator(String stateTopicQueueKey) {
+        ConcurrentSkipListMap<byte[], byte[]> store = stores.get(stateTopicQueueKey);
+        Iterator<Map.Entry<byte[], byte[]>> iterator = store == null ? Collections.emptyIterator() : store.entrySet().iterator();
+
+        return new KeyValueIterator() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Pair<byte[], byte[]> next() {
+                Map.Entry<byte[], byte[]> entry = iterator.next();
+                return new Pair<>(entry.getKey(), entry.getValue());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public void checkpoint(Map<String, Long> offsets) {
+    }
+
+    @Override
+    public long restoreFromCheckpoint(String stateTopicQueueKey) {
+        return -1;
+    }
+
+    @Override
+    public void dropQueue(String stateTopicQueueKey) {
+        ConcurrentSkipListMap<byte[], byte[]> store = stores.remove(stateTopicQueueKey);
+        queueBytes.remove(stateTopicQueueKey);
+        if (store == null) {
+            return;
+        }
+        long size = 0;
+        for (Map.Entry<byte[], byte[]> entry : store.entrySet()) {
+            size += entry.getKey().length + entry.getValue().length + ENTRY_OVERHEAD;
+        }
+        bytes.addAndGet(-size);
+    }
+
+    @Override
+    public long countKeys(String stateTopicQueueKey) {
+        ConcurrentSkipListMap<byte[], byte[]> store = stores.get(stateTopicQueueKey);
+        if (store == null) {
+            return 0;
+        }
+        return store.size();
+    }
+
+    @Override
+    public long getEstimateBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public long getEstimateBytes(String stateTopicQueueKey) {
+        AtomicLong result = queueBytes.get(stateTopicQueueKey);
+        return result == null ? 0 : result.get();
+    }
+
+    @Override
+    public long getEstimateKeys() {
+        long count = 0;
+        for (ConcurrentSkipListMap<byte[], byte[]> store : stores.values()) {
+            count += store.size();
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        stores.clear();
+        queueBytes.clear();
+        bytes.set(0);
+    }
+}
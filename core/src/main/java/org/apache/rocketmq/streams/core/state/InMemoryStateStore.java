@@ -0,0 +1,117 @@
+package org.apache.rocketmq.streams.core.state;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.streams.core.function.ValueMapperAction;
+import org.apache.rocketmq.streams.core.util.Pair;
+import org.apache.rocketmq.streams.core.util.Utils;
+import org.apache.rocketmq.streams.core.window.WindowKey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 只保存在堆内存中的状态，不持久化也不需要恢复，用于TopologyTestDriver。
+ * key按照无符号字节序排列，和RocksDB遍历顺序相同。
+ */
+public class InMemoryStateStore implements StateStore {
+    private final HeapStore store = new HeapStore(Long.MAX_VALUE);
+
+    @Override
+    public void init() throws Throwable {
+    }
+
+    @Override
+    public void recover(Set<MessageQueue> addQueues, Set<MessageQueue> removeQueues) throws Throwable {
+    }
+
+    @Override
+    public void standby(String sourceTopic, Set<MessageQueue> standbyQueues) throws Throwable {
+    }
+
+    @Override
+    public void waitIfNotReady(MessageQueue messageQueue) {
+    }
+
+    @Override
+    public boolean isReady(MessageQueue messageQueue) {
+        return true;
+    }
+
+    @Override
+    public byte[] get(MessageQueue stateTopicMessageQueue, byte[] key) throws Throwable {
+        if (key == null || key.length == 0) {
+            return new byte[0];
+        }
+        return store.get(buildKey(stateTopicMessageQueue), key);
+    }
+
+    @Override
+    public void put(MessageQueue stateTopicMessageQueue, byte[] key, byte[] value) throws Throwable {
+        store.put(buildKey(stateTopicMessageQueue), key, value);
+    }
+
+    @Override
+    public List<Pair<byte[], byte[]>> searchStateLessThanWatermark(MessageQueue stateTopicMessageQueue, String operatorName, long lessThanThisTime,
+                                                                   ValueMapperAction<byte[], WindowKey> deserializer) throws Throwable {
+        if (StringUtils.isEmpty(operatorName)) {
+            return new ArrayList<>();
+        }
+        return store.searchStateLessThanWatermark(buildKey(stateTopicMessageQueue), operatorName, lessThanThisTime, deserializer);
+    }
+
+    @Override
+    public List<Pair<String, byte[]>> searchByKeyPrefix(MessageQueue stateTopicMessageQueue, String keyPrefix, ValueMapperAction<String, byte[]> string2Bytes,
+                                                        ValueMapperAction<byte[], String> byte2String) throws Throwable {
+        if (StringUtils.isEmpty(keyPrefix)) {
+            return new ArrayList<>();
+        }
+        return store.searchByKeyPrefix(buildKey(stateTopicMessageQueue), keyPrefix, string2Bytes, byte2String);
+    }
+
+    @Override
+    public void delete(MessageQueue stateTopicMessageQueue, byte[] key) throws Throwable {
+        if (key == null || key.length == 0) {
+            return;
+        }
+        store.deleteByKey(buildKey(stateTopicMessageQueue), key);
+    }
+
+    @Override
+    public void persist(Set<MessageQueue> messageQueue) throws Throwable {
+    }
+
+    @Override
+    public void checkpoint() throws Throwable {
+    }
+
+    public long size() {
+        return store.getEstimateKeys();
+    }
+
+    private String buildKey(MessageQueue stateTopicMessageQueue) {
+        return Utils.buildKey(stateTopicMessageQueue.getBrokerName(), stateTopicMessageQueue.getTopic(), stateTopicMessageQueue.getQueueId());
+    }
+
+    @Override
+    public void close() throws Exception {
+        store.close();
+    }
+}
@@ -0,0 +1,29 @@
+package org.apache.rocketmq.streams.core.state;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.rocketmq.streams.core.util.Pair;
+
+import java.util.Iterator;
+
+/**
+ * 按key的顺序逐条遍历本地存储，不会把整个分区加载到内存，使用后需要关闭。
+ */
+public interface KeyValueIterator extends Iterator<Pair<byte[], byte[]>>, AutoCloseable {
+    @Override
+    void close();
+}
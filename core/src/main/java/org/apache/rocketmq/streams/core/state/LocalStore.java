@@ -0,0 +1,66 @@
+package org.apache.rocketmq.streams.core.state;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.rocketmq.streams.core.function.ValueMapperAction;
+import org.apache.rocketmq.streams.core.util.Pair;
+import org.apache.rocketmq.streams.core.window.WindowKey;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本地的kv存储，RocketMQStore在它之上实现changelog和恢复。
+ * 状态按照state topic queue（brokerName@topic@queueId）分区，queue被移除时整个分区一起删除，不需要在内存中保存key属于哪个queue。
+ * 实现需要按照无符号字节序遍历key，并且支持恢复线程和计算线程并发访问。
+ */
+public interface LocalStore extends AutoCloseable {
+    byte[] get(String stateTopicQueueKey, byte[] key) throws Throwable;
+
+    void put(String stateTopicQueueKey, byte[] key, byte[] value) throws Throwable;
+
+    void deleteByKey(String stateTopicQueueKey, byte[] key) throws Throwable;
+
+    List<Pair<byte[], byte[]>> searchStateLessThanWatermark(String stateTopicQueueKey, String name, long lessThanThisTime,
+                                                            ValueMapperAction<byte[], WindowKey> deserializer) throws Throwable;
+
+    List<Pair<String, byte[]>> searchByKeyPrefix(String stateTopicQueueKey, String keyPrefix, ValueMapperAction<String, byte[]> string2Bytes,
+                                                 ValueMapperAction<byte[], String> byte2String) throws Throwable;
+
+    //逐条遍历这个queue的全部状态，用于写快照
+    KeyValueIterator iterator(String stateTopicQueueKey) throws Throwable;
+
+    //本地checkpoint，offsets为每个queue下一条要写入state topic的位点；不支持时忽略
+    void checkpoint(Map<String/*brokerName@topic@queueId of state topic*/, Long> offsets) throws Throwable;
+
+    //从本机最近的checkpoint恢复这个queue的状态，返回需要继续重放的state topic位点，没有可用的checkpoint返回-1
+    long restoreFromCheckpoint(String stateTopicQueueKey) throws Throwable;
+
+    //删除这个queue的全部状态
+    void dropQueue(String stateTopicQueueKey) throws Throwable;
+
+    //这个queue的key数量，可以是估算值
+    long countKeys(String stateTopicQueueKey) throws Throwable;
+
+    //估算的状态大小和key数量，用于监控
+    long getEstimateBytes() throws Throwable;
+
+    //这个queue的估算状态大小
+    long getEstimateBytes(String stateTopicQueueKey) throws Throwable;
+
+    long getEstimateKeys() throws Throwable;
+}
@@ -21,7 +21,6 @@ import org.apache.rocketmq.client.consumer.DefaultLitePullConsumer;
 import org.apache.rocketmq.client.producer.DefaultMQProducer;
 import org.apache.rocketmq.common.CountDownLatch2;
 import org.apache.rocketmq.common.MixAll;
-import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
 import org.apache.rocketmq.common.message.Message;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.message.MessageQueue;
@@ -32,8 +31,11 @@ import org.apache.rocketmq.streams.core.common.Constant;
 import org.apache.rocketmq.streams.core.exception.RecoverStateStoreThrowable;
 import org.apache.rocketmq.streams.core.function.ValueMapperAction;
 import org.apache.rocketmq.streams.core.metadata.StreamConfig;
+import org.apache.rocketmq.streams.core.metrics.MetricsRegistry;
+import org.apache.rocketmq.streams.core.running.RocketMQClient;
 import org.apache.rocketmq.streams.core.window.WindowKey;
 import org.apache.rocketmq.streams.core.serialization.ShuffleProtocol;
+import org.apache.rocketmq.streams.core.util.Bytes;
 import org.apache.rocketmq.streams.core.util.Pair;
 import org.apache.rocketmq.streams.core.util.RocketMQUtil;
 import org.apache.rocketmq.streams.core.util.Utils;
@@ -43,6 +45,10 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -59,19 +65,72 @@ public class RocketMQStore extends AbstractStore implements StateStore {
     private static final Logger logger = LoggerFactory.getLogger(RocketMQStore.class.getName());
     private final DefaultMQProducer producer;
     private final DefaultMQAdminExt mqAdmin;
-    private final RocksDBStore rocksDBStore;
-    private final Properties properties;
+    private final LocalStore localStore;
+    private final RocketMQClient rocketMQClient;
+    private final MetricsRegistry metricsRegistry;
 
     private final ExecutorService executor = Executors.newFixedThreadPool(8);
     private final ShuffleProtocol protocol = new ShuffleProtocol();
+    //一批状态消息的大小，broker默认单条消息上限4M
+    private static final int PERSIST_BATCH_MAX_BYTES = 1024 * 1024;
 
     private final ConcurrentHashMap<MessageQueue/*messageQueue of state topic*/, CountDownLatch2> recoveringQueueMutex = new ConcurrentHashMap<>();
+    //本worker负责的source topic queue，共用的state topic queue在没有source topic queue使用后才删除
+    private final Set<MessageQueue/*messageQueue of source topic*/> ownedQueues = ConcurrentHashMap.newKeySet();
+
+    //state topic不是compact topic时，定期写全量快照，并把快照开始位点提交为恢复consumer的位点，恢复时从这个位点开始重放
+    private final boolean compaction;
+    private final long snapshotIntervalMillis;
+    //state topic在哪些broker上是compact topic，broker不支持时按broker退化为普通topic，普通topic上的queue才需要快照
+    private final ConcurrentHashMap<String/*state topic*/, Set<String/*brokerName*/>> compactedBrokers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String/*brokerName@topic@queueId of state topic*/, Long> lastSnapshotTime = new ConcurrentHashMap<>();
+
+    private final boolean checkpointEnable;
+    //每个state topic queue下一条消息的位点，来自发送结果和恢复时的重放，checkpoint时不需要再查询broker
+    private final ConcurrentHashMap<MessageQueue/*state topic queue*/, Long> nextOffsets = new ConcurrentHashMap<>();
+    private final long checkpointIntervalMillis;
+    private volatile boolean closed = false;
+    private long lastCheckpointTime = System.currentTimeMillis();
+
+    //standby: 持续重放其他worker的state topic queue，只在standby线程中修改分配和写入本地存储
+    private final Object standbyLock = new Object();
+    private final ConcurrentHashMap<String/*source topic*/, Set<MessageQueue/*state topic queue*/>> standbyTarget = new ConcurrentHashMap<>();
+    //正在重放的standby queue，value是下一条需要重放的位点，-1表示还不知道位点
+    private final ConcurrentHashMap<MessageQueue/*state topic queue*/, Long> standbyOffsets = new ConcurrentHashMap<>();
+    private DefaultLitePullConsumer standbyConsumer;
+    private boolean standbyStarted = false;
+
+    public RocketMQStore(DefaultMQProducer producer, LocalStore localStore, DefaultMQAdminExt mqAdmin, Properties properties) {
+        this(producer, localStore, mqAdmin, new RocketMQClient(properties.getProperty(MixAll.NAMESRV_ADDR_PROPERTY)), null, properties);
+    }
 
-    public RocketMQStore(DefaultMQProducer producer, RocksDBStore rocksDBStore, DefaultMQAdminExt mqAdmin, Properties properties) {
+    public RocketMQStore(DefaultMQProducer producer, LocalStore localStore, DefaultMQAdminExt mqAdmin, RocketMQClient rocketMQClient,
+                         MetricsRegistry metricsRegistry, Properties properties) {
         this.producer = producer;
         this.mqAdmin = mqAdmin;
-        this.rocksDBStore = rocksDBStore;
-        this.properties = properties;
+        this.localStore = localStore;
+        this.rocketMQClient = rocketMQClient;
+        this.metricsRegistry = metricsRegistry;
+
+        Object compaction = properties.get(Constant.STATE_TOPIC_COMPACTION);
+        this.compaction = compaction == Boolean.TRUE || Constant.TRUE.equalsIgnoreCase(String.valueOf(compaction));
+
+        Object interval = properties.get(Constant.STATE_SNAPSHOT_INTERVAL_MILLISECOND);
+        if (interval == null) {
+            //快照需要遍历整个queue的状态，不配置时不开启
+            this.snapshotIntervalMillis = 0;
+        } else {
+            this.snapshotIntervalMillis = interval instanceof Number ? ((Number) interval).longValue() : Long.parseLong(String.valueOf(interval));
+        }
+
+        this.checkpointEnable = properties.get(Constant.STATE_CHECKPOINT_DIR) != null;
+        Object checkpointInterval = properties.get(Constant.STATE_CHECKPOINT_INTERVAL_MILLISECOND);
+        if (checkpointInterval == null) {
+            this.checkpointIntervalMillis = 60 * 1000L;
+        } else {
+            this.checkpointIntervalMillis = checkpointInterval instanceof Number ? ((Number) checkpointInterval).longValue()
+                    : Long.parseLong(String.valueOf(checkpointInterval));
+        }
     }
 
     @Override
@@ -85,16 +144,158 @@ public class RocketMQStore extends AbstractStore implements StateStore {
         this.removeState(removeQueues);
     }
 
+    @Override
+    public void standby(String sourceTopic, Set<MessageQueue> standbyQueues) throws Throwable {
+        Set<MessageQueue> stateTopicQueues = convertSourceTopicQueue2StateTopicQueue(standbyQueues);
+        for (MessageQueue messageQueue : stateTopicQueues) {
+            createStateTopic(messageQueue.getTopic(), messageQueue.getBrokerName().equals(Constant.STATIC_TOPIC_BROKER_NAME));
+        }
+        this.standbyTarget.put(sourceTopic, stateTopicQueues);
+
+        synchronized (standbyLock) {
+            if (!standbyStarted && stateTopicQueues.size() != 0) {
+                standbyStarted = true;
+                this.executor.submit(this::standbyLoop);
+            }
+        }
+    }
+
+    private void standbyLoop() {
+        while (!closed) {
+            try {
+                synchronized (standbyLock) {
+                    updateStandbyAssignment();
+                }
+                if (this.standbyConsumer == null) {
+                    Thread.sleep(100);
+                    continue;
+                }
+
+                List<MessageExt> result = this.standbyConsumer.poll(50);
+                if (result == null || result.size() == 0) {
+                    continue;
+                }
+
+                synchronized (standbyLock) {
+                    //已经被本worker接管或者不再standby的queue，丢弃已经拉取到的数据
+                    List<MessageExt> holder = new ArrayList<>();
+                    for (MessageExt messageExt : result) {
+                        MessageQueue queue = new MessageQueue(messageExt.getTopic(), messageExt.getBrokerName(), messageExt.getQueueId());
+                        if (this.standbyOffsets.containsKey(queue)) {
+                            holder.add(messageExt);
+                        }
+                    }
+
+                    replayState(holder);
+                    for (MessageExt messageExt : holder) {
+                        MessageQueue queue = new MessageQueue(messageExt.getTopic(), messageExt.getBrokerName(), messageExt.getQueueId());
+                        this.standbyOffsets.merge(queue, messageExt.getQueueOffset() + 1, Math::max);
+                    }
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Throwable t) {
+                logger.error("replay standby state error.", t);
+            }
+        }
+
+        synchronized (standbyLock) {
+            if (this.standbyConsumer != null) {
+                this.standbyConsumer.shutdown();
+                this.standbyConsumer = null;
+            }
+        }
+    }
+
+    private void updateStandbyAssignment() throws Throwable {
+        Set<MessageQueue> target = new HashSet<>();
+        for (Set<MessageQueue> queues : this.standbyTarget.values()) {
+            target.addAll(queues);
+        }
+        //已经属于本worker，或者刚被移除还没有删除本地状态的queue，等下一轮再处理
+        target.removeIf(this.recoveringQueueMutex::containsKey);
+
+        Set<MessageQueue> current = new HashSet<>(this.standbyOffsets.keySet());
+        if (target.equals(current)) {
+            return;
+        }
+
+        for (MessageQueue queue : current) {
+            if (!target.contains(queue)) {
+                this.standbyOffsets.remove(queue);
+                if (!this.recoveringQueueMutex.containsKey(queue)) {
+                    this.localStore.dropQueue(buildKey(queue));
+                }
+            }
+        }
+
+        //assign不能传入空集合
+        if (target.size() == 0) {
+            if (this.standbyConsumer != null) {
+                this.standbyConsumer.shutdown();
+                this.standbyConsumer = null;
+            }
+            return;
+        }
+
+        if (this.standbyConsumer == null) {
+            this.standbyConsumer = this.rocketMQClient.restoreConsumer(StreamConfig.ROCKETMQ_STREAMS_STATE_CONSUMER_GROUP);
+            this.standbyConsumer.start();
+        }
+        this.standbyConsumer.assign(target);
+
+        for (MessageQueue queue : target) {
+            if (current.contains(queue)) {
+                //重新assign后从已经重放到的位置继续
+                long offset = this.standbyOffsets.get(queue);
+                if (offset < 0 || seekToStandby(this.standbyConsumer, queue, offset)) {
+                    continue;
+                }
+            }
+            String stateTopicQueueKey = buildKey(queue);
+            long checkpointOffset = this.localStore.restoreFromCheckpoint(stateTopicQueueKey);
+            if (checkpointOffset >= 0 && seekToStandby(this.standbyConsumer, queue, checkpointOffset)) {
+                this.standbyOffsets.put(queue, checkpointOffset);
+            } else {
+                this.localStore.dropQueue(stateTopicQueueKey);
+                seekToSnapshot(this.standbyConsumer, queue);
+                this.standbyOffsets.put(queue, -1L);
+            }
+        }
+        logger.info("standby state topic queues: [{}]", target);
+    }
+
+    private boolean seekToStandby(DefaultLitePullConsumer consumer, MessageQueue stateTopicQueue, long offset) {
+        try {
+            consumer.seek(stateTopicQueue, offset);
+            updateNextOffset(stateTopicQueue, offset);
+            return true;
+        } catch (Throwable t) {
+            //这个位点之后的修改已经过期被删除
+            logger.warn("seek to offset:{} of queue:[{}] failed.", offset, stateTopicQueue, t);
+            return false;
+        }
+    }
+
     @Override
     public void waitIfNotReady(MessageQueue messageQueue) throws RecoverStateStoreThrowable {
-        MessageQueue stateTopicQueue = convertSourceTopicQueue2StateTopicQueue(messageQueue);
+        for (MessageQueue stateTopicQueue : convertSourceTopicQueue2StateTopicQueue(Collections.singleton(messageQueue))) {
+            waitIfNotReady0(stateTopicQueue);
+        }
+    }
+
+    private void waitIfNotReady0(MessageQueue stateTopicQueue) throws RecoverStateStoreThrowable {
         CountDownLatch2 waitPoint = this.recoveringQueueMutex.get(stateTopicQueue);
+        if (waitPoint == null) {
+            throw new RecoverStateStoreThrowable("state of queue:[" + stateTopicQueue + "] is not loaded, the queue may be revoked.");
+        }
 
         long start = 0;
         long end = 0;
+        boolean ready;
         try {
             start = System.currentTimeMillis();
-            waitPoint.await(5000, TimeUnit.MILLISECONDS);
+            ready = waitPoint.await(5000, TimeUnit.MILLISECONDS);
             end = System.currentTimeMillis();
         } catch (Throwable t) {
             throw new RecoverStateStoreThrowable(t);
@@ -104,15 +305,31 @@ public class RocketMQStore extends AbstractStore implements StateStore {
                 logger.error("recover finish, consume time:" + cost + " ms.");
             }
         }
+
+        //状态不完整时不能继续计算
+        if (!ready) {
+            throw new RecoverStateStoreThrowable("wait for state recover of queue:[" + stateTopicQueue + "] timeout.");
+        }
+    }
+
+    @Override
+    public boolean isReady(MessageQueue messageQueue) {
+        for (MessageQueue stateTopicQueue : convertSourceTopicQueue2StateTopicQueue(Collections.singleton(messageQueue))) {
+            CountDownLatch2 waitPoint = this.recoveringQueueMutex.get(stateTopicQueue);
+            if (waitPoint == null || waitPoint.getCount() != 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
 
     @Override
-    public byte[] get(byte[] key) throws Throwable {
+    public byte[] get(MessageQueue stateTopicMessageQueue, byte[] key) throws Throwable {
         if (key == null || key.length == 0) {
             return new byte[0];
         }
-        return this.rocksDBStore.get(key);
+        return this.localStore.get(buildKey(stateTopicMessageQueue), key);
     }
 
 
@@ -120,53 +337,43 @@ public class RocketMQStore extends AbstractStore implements StateStore {
     public void put(MessageQueue stateTopicMessageQueue, byte[] key, byte[] value) throws Throwable {
         String stateTopicQueueKey = buildKey(stateTopicMessageQueue);
         super.putInCalculating(stateTopicQueueKey, key);
-        this.rocksDBStore.put(key, value);
+        this.localStore.put(stateTopicQueueKey, key, value);
     }
 
 
     @Override
-    public List<Pair<byte[], byte[]>> searchStateLessThanWatermark(String keyPrefix, long lessThanThisTime, ValueMapperAction<byte[], WindowKey> deserializer) throws Throwable {
+    public List<Pair<byte[], byte[]>> searchStateLessThanWatermark(MessageQueue stateTopicMessageQueue, String keyPrefix, long lessThanThisTime,
+                                                                   ValueMapperAction<byte[], WindowKey> deserializer) throws Throwable {
         if (StringUtils.isEmpty(keyPrefix)) {
             return new ArrayList<>();
         }
 
-        return this.rocksDBStore.searchStateLessThanWatermark(keyPrefix, lessThanThisTime, deserializer);
+        return this.localStore.searchStateLessThanWatermark(buildKey(stateTopicMessageQueue), keyPrefix, lessThanThisTime, deserializer);
     }
 
     @Override
-    public List<Pair<String, byte[]>> searchByKeyPrefix(String keyPrefix,
+    public List<Pair<String, byte[]>> searchByKeyPrefix(MessageQueue stateTopicMessageQueue, String keyPrefix,
                                                         ValueMapperAction<String, byte[]> string2Bytes,
                                                         ValueMapperAction<byte[], String> byte2String) throws Throwable {
         if (StringUtils.isEmpty(keyPrefix)) {
             return new ArrayList<>();
         }
-        return this.rocksDBStore.searchByKeyPrefix(keyPrefix, string2Bytes, byte2String);
+        return this.localStore.searchByKeyPrefix(buildKey(stateTopicMessageQueue), keyPrefix, string2Bytes, byte2String);
     }
 
     @Override
-    public void delete(byte[] key) throws Throwable {
+    public void delete(MessageQueue stateTopicMessageQueue, byte[] key) throws Throwable {
         if (key == null || key.length == 0) {
             return;
         }
-        //删除远程
-        String stateTopicQueue = super.whichStateTopicQueueBelongTo(key);
-        String[] split = Utils.split(stateTopicQueue);
-        String topic = split[1];
-        MessageQueue queue = new MessageQueue(split[1], split[0], Integer.parseInt(split[2]));
-
-        Message message = new Message(topic, Constant.EMPTY_BODY.getBytes(StandardCharsets.UTF_8));
-        message.setKeys(Utils.toHexString(key));
-        message.putUserProperty(Constant.SHUFFLE_KEY_CLASS_NAME, key.getClass().getName());
-        message.putUserProperty(Constant.EMPTY_BODY, Constant.TRUE);
-        producer.send(message, queue);
-
-        //删除rocksdb
-        this.rocksDBStore.deleteByKey(key);
+        //删除本地存储
+        String stateTopicQueueKey = buildKey(stateTopicMessageQueue);
+        this.localStore.deleteByKey(stateTopicQueueKey, key);
 
-        //删除内存中的key
-        super.removeAllKey(key);
+        //远程的删除标记在persist时和其他修改一起批量发送
+        super.putInCalculating(stateTopicQueueKey, key);
 
-        logger.debug("delete key: " + new String(key, StandardCharsets.UTF_8) + ",MessageQueue: " + queue);
+        logger.debug("delete key: " + new String(key, StandardCharsets.UTF_8) + ",MessageQueue: " + stateTopicMessageQueue);
     }
 
     @Override
@@ -178,26 +385,36 @@ public class RocketMQStore extends AbstractStore implements StateStore {
         Set<MessageQueue> stateTopicQueues = convertSourceTopicQueue2StateTopicQueue(messageQueues);
         for (MessageQueue stateTopicQueue : stateTopicQueues) {
             String stateTopicQueueKey = buildKey(stateTopicQueue);
-            Set<byte[]> keySet = super.getInCalculating(stateTopicQueueKey);
+            Set<Bytes> keySet = super.getInCalculating(stateTopicQueueKey);
 
             if (keySet == null || keySet.size() == 0) {
-                return;
+                continue;
             }
 
             String stateTopic = stateTopicQueue.getTopic();
             boolean isStaticTopic = stateTopicQueue.getBrokerName().equals(Constant.STATIC_TOPIC_BROKER_NAME);
             createStateTopic(stateTopic, isStaticTopic);
 
-            for (byte[] key : keySet) {
+            //快照包含全部存活的key，只需要在快照之前发送删除标记；从快照之前的位点重放时（checkpoint、standby）才能删除这些key
+            boolean snapshot = !isStaticTopic && isSnapshotDue(stateTopicQueue, stateTopicQueueKey);
 
-                byte[] valueBytes = this.rocksDBStore.get(key);
+            List<Message> batch = new ArrayList<>();
+            int batchBytes = 0;
+            for (Bytes bytes : keySet) {
+                byte[] key = bytes.get();
+                byte[] valueBytes = this.localStore.get(stateTopicQueueKey, key);
+
+                Message message;
                 if (valueBytes == null) {
+                    //本地已经删除，发送删除标记，body中带上key用于恢复时删除
+                    message = new Message(stateTopic, this.protocol.merge(key, Constant.EMPTY_BODY.getBytes(StandardCharsets.UTF_8)));
+                    message.putUserProperty(Constant.SHUFFLE_KEY_CLASS_NAME, key.getClass().getName());
+                    message.putUserProperty(Constant.EMPTY_BODY, Constant.TRUE);
+                } else if (snapshot) {
                     continue;
+                } else {
+                    message = new Message(stateTopic, this.protocol.merge(key, valueBytes));
                 }
-
-                byte[] body = this.protocol.merge(key, valueBytes);
-
-                Message message = new Message(stateTopicQueue.getTopic(), body);
                 message.setKeys(Utils.toHexString(key));
 
                 try {
@@ -206,36 +423,245 @@ public class RocketMQStore extends AbstractStore implements StateStore {
                     //key is not string, maybe.
                 }
 
-                this.producer.send(message, stateTopicQueue);
+                batch.add(message);
+                batchBytes += message.getBody().length;
+                if (batchBytes >= PERSIST_BATCH_MAX_BYTES) {
+                    send(batch, stateTopicQueue);
+                    batch = new ArrayList<>();
+                    batchBytes = 0;
+                }
+            }
+            send(batch, stateTopicQueue);
+            if (snapshot) {
+                snapshot(stateTopicQueue, stateTopicQueueKey);
             }
             super.removeCalculating(stateTopicQueueKey);
         }
+
+        checkpointIfDue();
+    }
+
+    private void checkpointIfDue() throws Throwable {
+        long now = System.currentTimeMillis();
+        if (checkpointIntervalMillis <= 0 || now - lastCheckpointTime < checkpointIntervalMillis) {
+            return;
+        }
+        checkpoint();
+    }
+
+    @Override
+    public void checkpoint() throws Throwable {
+        if (!this.checkpointEnable) {
+            return;
+        }
+        lastCheckpointTime = System.currentTimeMillis();
+
+        //只记录恢复完成、修改已经全部写入state topic的queue，下一条消息的位点就是checkpoint之后的第一条；还不知道位点的queue跳过
+        HashMap<String, Long> offsets = new HashMap<>();
+        for (Map.Entry<MessageQueue, CountDownLatch2> entry : this.recoveringQueueMutex.entrySet()) {
+            MessageQueue stateTopicQueue = entry.getKey();
+            String stateTopicQueueKey = buildKey(stateTopicQueue);
+            Set<Bytes> keySet = super.getInCalculating(stateTopicQueueKey);
+            Long nextOffset = this.nextOffsets.get(stateTopicQueue);
+            if (entry.getValue().getCount() != 0 || (keySet != null && keySet.size() != 0) || nextOffset == null
+                    || stateTopicQueue.getBrokerName().equals(Constant.STATIC_TOPIC_BROKER_NAME)) {
+                continue;
+            }
+            offsets.put(stateTopicQueueKey, nextOffset);
+        }
+
+        long begin = System.nanoTime();
+        try {
+            this.localStore.checkpoint(offsets);
+        } catch (Throwable t) {
+            //checkpoint只用于加快本机恢复，失败时下次再写，恢复时重放state topic
+            logger.warn("checkpoint error, queues:{}.", offsets.keySet(), t);
+            if (metricsRegistry != null) {
+                metricsRegistry.counter("state.checkpointErrors").inc();
+            }
+            return;
+        }
+        if (metricsRegistry != null) {
+            metricsRegistry.histogram("state.checkpointTimeNs").record(System.nanoTime() - begin);
+        }
+    }
+
+    private void send(List<Message> messages, MessageQueue queue) throws Throwable {
+        if (messages.size() == 0) {
+            return;
+        }
+
+        if (metricsRegistry == null) {
+            updateNextOffset(queue, this.producer.send(messages, queue).getQueueOffset() + messages.size());
+            return;
+        }
+
+        long begin = System.nanoTime();
+        try {
+            //批量发送的结果是第一条消息的位点
+            updateNextOffset(queue, this.producer.send(messages, queue).getQueueOffset() + messages.size());
+        } catch (Throwable t) {
+            metricsRegistry.counter("state.sendErrors").inc();
+            throw t;
+        } finally {
+            metricsRegistry.histogram("state.sendLatencyNs").record(System.nanoTime() - begin);
+        }
+    }
+
+    private boolean isSnapshotDue(MessageQueue stateTopicQueue, String stateTopicQueueKey) {
+        if (snapshotIntervalMillis <= 0 || isCompacted(stateTopicQueue)) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        Long last = lastSnapshotTime.putIfAbsent(stateTopicQueueKey, now);
+        return last != null && now - last >= snapshotIntervalMillis;
+    }
+
+    private void snapshot(MessageQueue stateTopicQueue, String stateTopicQueueKey) throws Throwable {
+        long begin = System.nanoTime();
+
+        //快照开始标记，从这个位点重放可以得到全部状态
+        Message marker = new Message(stateTopicQueue.getTopic(), Constant.EMPTY_BODY.getBytes(StandardCharsets.UTF_8));
+        marker.setKeys(Constant.STATE_SNAPSHOT);
+        marker.putUserProperty(Constant.STATE_SNAPSHOT, Constant.TRUE);
+        long snapshotOffset = this.producer.send(marker, stateTopicQueue).getQueueOffset();
+        updateNextOffset(stateTopicQueue, snapshotOffset + 1);
+
+        //逐条读取本地存储，内存中最多保留一批
+        long keys = 0;
+        try (KeyValueIterator iterator = this.localStore.iterator(stateTopicQueueKey)) {
+            List<Message> batch = new ArrayList<>();
+            int batchBytes = 0;
+            while (iterator.hasNext()) {
+                Pair<byte[], byte[]> pair = iterator.next();
+                Message message = new Message(stateTopicQueue.getTopic(), this.protocol.merge(pair.getKey(), pair.getValue()));
+                message.setKeys(Utils.toHexString(pair.getKey()));
+                keys++;
+
+                batch.add(message);
+                batchBytes += message.getBody().length;
+                if (batchBytes >= PERSIST_BATCH_MAX_BYTES) {
+                    send(batch, stateTopicQueue);
+                    batch = new ArrayList<>();
+                    batchBytes = 0;
+                }
+            }
+            send(batch, stateTopicQueue);
+        }
+
+        //快照全部发送成功后才能提交位点
+        String brokerAddr = null;
+        for (BrokerData brokerData : mqAdmin.examineTopicRouteInfo(stateTopicQueue.getTopic()).getBrokerDatas()) {
+            if (brokerData.getBrokerName().equals(stateTopicQueue.getBrokerName())) {
+                brokerAddr = brokerData.getBrokerAddrs().get(MixAll.MASTER_ID);
+            }
+        }
+        if (brokerAddr != null) {
+            mqAdmin.updateConsumeOffset(brokerAddr, StreamConfig.ROCKETMQ_STREAMS_STATE_CONSUMER_GROUP, stateTopicQueue, snapshotOffset);
+        }
+
+        lastSnapshotTime.put(stateTopicQueueKey, System.currentTimeMillis());
+        if (metricsRegistry != null) {
+            metricsRegistry.histogram("state.snapshotTimeNs").record(System.nanoTime() - begin);
+        }
+        logger.info("snapshot state of queue:[{}], keys:{}, snapshot offset:{}", stateTopicQueue, keys, snapshotOffset);
+    }
+
+    //本机有包含这个queue的checkpoint时，从checkpoint恢复，只重放之后的修改
+    private boolean seekToCheckpoint(DefaultLitePullConsumer consumer, MessageQueue stateTopicQueue) throws Throwable {
+        String stateTopicQueueKey = buildKey(stateTopicQueue);
+        long checkpointOffset = this.localStore.restoreFromCheckpoint(stateTopicQueueKey);
+        if (checkpointOffset < 0) {
+            return false;
+        }
+
+        try {
+            consumer.seek(stateTopicQueue, checkpointOffset);
+            updateNextOffset(stateTopicQueue, checkpointOffset);
+            return true;
+        } catch (Throwable t) {
+            //checkpoint之后的修改已经过期被删除
+            logger.warn("seek to checkpoint offset:{} of queue:[{}] failed.", checkpointOffset, stateTopicQueue, t);
+            this.localStore.dropQueue(stateTopicQueueKey);
+            return false;
+        }
+    }
+
+    //从最近一次快照开始重放，没有快照时从头重放
+    private void seekToSnapshot(DefaultLitePullConsumer consumer, MessageQueue stateTopicQueue) throws Throwable {
+        if (!isCompacted(stateTopicQueue)) {
+            try {
+                Long snapshotOffset = consumer.committed(stateTopicQueue);
+                if (snapshotOffset != null && snapshotOffset > 0) {
+                    consumer.seek(stateTopicQueue, snapshotOffset);
+                    logger.info("recover state of queue:[{}] from snapshot offset:{}", stateTopicQueue, snapshotOffset);
+                    return;
+                }
+            } catch (Throwable t) {
+                //快照已经过期被删除
+                logger.warn("seek to snapshot offset of queue:[{}] failed, recover from the first offset.", stateTopicQueue, t);
+            }
+        }
+        consumer.seekToBegin(stateTopicQueue);
     }
 
     public void loadState(Set<MessageQueue> addQueues) throws Throwable {
         if (addQueues == null || addQueues.size() == 0) {
             return;
         }
+        this.ownedQueues.addAll(addQueues);
+
+        Set<MessageQueue> stateTopicQueue = convertSourceTopicQueue2StateTopicQueue(addQueues);
+        //共用的state topic queue已经随另一个source topic queue加载，本地状态比state topic新，不能再重放
+        stateTopicQueue.removeIf(queue -> isSharedStateTopic(queue.getTopic()) && this.recoveringQueueMutex.containsKey(queue));
+        if (stateTopicQueue.size() == 0) {
+            return;
+        }
 
-        final DefaultLitePullConsumer consumer = new DefaultLitePullConsumer(StreamConfig.ROCKETMQ_STREAMS_STATE_CONSUMER_GROUP);
-        consumer.setNamesrvAddr(properties.getProperty(MixAll.NAMESRV_ADDR_PROPERTY));
-        consumer.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_FIRST_OFFSET);
-        consumer.setAutoCommit(false);
+        final DefaultLitePullConsumer consumer = this.rocketMQClient.restoreConsumer(StreamConfig.ROCKETMQ_STREAMS_STATE_CONSUMER_GROUP);
         consumer.start();
 
-        Set<MessageQueue> stateTopicQueue = convertSourceTopicQueue2StateTopicQueue(addQueues);
         for (MessageQueue messageQueue : stateTopicQueue) {
             createStateTopic(messageQueue.getTopic(), messageQueue.getBrokerName().equals(Constant.STATIC_TOPIC_BROKER_NAME));
         }
 
         consumer.assign(stateTopicQueue);
-        for (MessageQueue queue : stateTopicQueue) {
-            consumer.seekToBegin(queue);
+
+        //standby queue在创建等待锁之前摘出来，standby线程不会再写入，本地状态保留
+        HashMap<MessageQueue, Long> promoted = new HashMap<>();
+        synchronized (standbyLock) {
+            for (MessageQueue queue : stateTopicQueue) {
+                Long offset = this.standbyOffsets.remove(queue);
+                if (offset != null) {
+                    promoted.put(queue, offset);
+                }
+            }
+            for (MessageQueue queue : stateTopicQueue) {
+                this.recoveringQueueMutex.computeIfAbsent(queue, messageQueue -> new CountDownLatch2(1));
+            }
         }
 
+        long begin = System.nanoTime();
         Future<?> future = this.executor.submit(() -> {
             try {
+                for (MessageQueue queue : stateTopicQueue) {
+                    Long standbyOffset = promoted.get(queue);
+                    if (standbyOffset != null) {
+                        if (standbyOffset >= 0 && seekToStandby(consumer, queue, standbyOffset)) {
+                            logger.info("recover state of queue:[{}] from standby offset:{}", queue, standbyOffset);
+                            continue;
+                        }
+                        //还没有重放到确定的位点，丢弃后重新恢复
+                        this.localStore.dropQueue(buildKey(queue));
+                    }
+                    if (!seekToCheckpoint(consumer, queue)) {
+                        seekToSnapshot(consumer, queue);
+                    }
+                }
                 pullToLast(consumer);
+                if (metricsRegistry != null) {
+                    metricsRegistry.histogram("state.loadStateTimeNs").record(System.nanoTime() - begin);
+                }
             } catch (Throwable e) {
                 logger.error("pull to last error.", e);
                 throw new RuntimeException(e);
@@ -250,30 +676,51 @@ public class RocketMQStore extends AbstractStore implements StateStore {
         }
     }
 
+    //messageQueue of source topic, RocksDB返回的是估算值
+    public long getStateKeyCount(MessageQueue messageQueue) throws Throwable {
+        return this.localStore.countKeys(buildKey(convertSourceTopicQueue2StateTopicQueue(messageQueue)));
+    }
+
+    public long getStateBytes(MessageQueue messageQueue) throws Throwable {
+        return this.localStore.getEstimateBytes(buildKey(convertSourceTopicQueue2StateTopicQueue(messageQueue)));
+    }
+
+    public long getEstimateStateBytes() throws Throwable {
+        return this.localStore.getEstimateBytes();
+    }
+
+    public long getEstimateStateKeys() throws Throwable {
+        return this.localStore.getEstimateKeys();
+    }
+
     public void removeState(Set<MessageQueue> removeQueues) throws Throwable {
         if (removeQueues == null || removeQueues.size() == 0) {
             return;
         }
+        this.ownedQueues.removeAll(removeQueues);
+
+        //还被其他source topic queue使用的共用state topic queue保留
+        Set<MessageQueue> stateTopicQueue = convertSourceTopicQueue2StateTopicQueue(removeQueues);
+        stateTopicQueue.removeAll(convertSourceTopicQueue2StateTopicQueue(new HashSet<>(this.ownedQueues)));
 
         Future<?> future = this.executor.submit(() -> {
             try {
-                if (removeQueues.size() == 0) {
+                if (stateTopicQueue.size() == 0) {
                     return;
                 }
-                Set<MessageQueue> stateTopicQueue = convertSourceTopicQueue2StateTopicQueue(removeQueues);
 
-                Map<String/*brokerName@topic@queueId*/, List<MessageQueue>> groupByUniqueQueue = stateTopicQueue.stream().parallel().collect(Collectors.groupingBy(this::buildKey));
-                for (String stateUniqueQueue : groupByUniqueQueue.keySet()) {
-                    Set<byte[]> stateTopicQueueKey = super.getAll(stateUniqueQueue);
-                    for (byte[] key : stateTopicQueueKey) {
-                        this.rocksDBStore.deleteByKey(key);
-                    }
-                    super.removeAll(stateUniqueQueue);
+                //每个queue的状态在本地存储中是一个独立分区，直接整体删除
+                for (MessageQueue stateMessageQueue : stateTopicQueue) {
+                    String stateUniqueQueue = buildKey(stateMessageQueue);
+                    this.localStore.dropQueue(stateUniqueQueue);
+                    super.removeCalculating(stateUniqueQueue);
+                    this.lastSnapshotTime.remove(stateUniqueQueue);
                 }
 
 
                 for (MessageQueue stateMessageQueue : stateTopicQueue) {
                     this.recoveringQueueMutex.remove(stateMessageQueue);
+                    this.nextOffsets.remove(stateMessageQueue);
                 }
             } catch (Throwable e) {
                 logger.error("remove state error", e);
@@ -296,7 +743,7 @@ public class RocketMQStore extends AbstractStore implements StateStore {
         List<MessageExt> holder = new ArrayList<>();
         //recover
         List<MessageExt> result = consumer.poll(50);
-        while (result != null && result.size() != 0) {
+        while (!closed && result != null && result.size() != 0) {
             holder.addAll(result);
             if (holder.size() <= 1000) {
                 result = consumer.poll(50);
@@ -304,22 +751,37 @@ public class RocketMQStore extends AbstractStore implements StateStore {
             }
 
             replayState(holder);
+            recordReplayOffsets(holder);
             holder.clear();
 
             result = consumer.poll(50);
         }
-        if (holder.size() != 0) {
+        if (!closed && holder.size() != 0) {
             replayState(holder);
+            recordReplayOffsets(holder);
         }
 
         //恢复完毕；
         Set<MessageQueue> recoverOver = consumer.assignment();
         for (MessageQueue messageQueue : recoverOver) {
             CountDownLatch2 waitPoint = this.recoveringQueueMutex.get(messageQueue);
-            waitPoint.countDown();
+            //恢复过程中queue又被分走，等待锁已经被removeState删除
+            if (waitPoint != null) {
+                waitPoint.countDown();
+            }
+        }
+    }
+
+    private void recordReplayOffsets(List<MessageExt> msgs) {
+        for (MessageExt msg : msgs) {
+            updateNextOffset(new MessageQueue(msg.getTopic(), msg.getBrokerName(), msg.getQueueId()), msg.getQueueOffset() + 1);
         }
     }
 
+    private void updateNextOffset(MessageQueue stateTopicQueue, long nextOffset) {
+        this.nextOffsets.merge(stateTopicQueue, nextOffset, Math::max);
+    }
+
     //拉的数据越多，重放效率越高,
     // 能保证一个q里面后面pull到的数据queueOffset一定比前一批次拉取的queueOffset大吗？
     private void replayState(List<MessageExt> msgs) throws Throwable {
@@ -343,8 +805,18 @@ public class RocketMQStore extends AbstractStore implements StateStore {
                 //最后的消息
                 MessageExt result = sortedMessages.get(sortedMessages.size() - 1);
 
+                if (Constant.TRUE.equals(result.getUserProperty(Constant.STATE_SNAPSHOT))) {
+                    continue;
+                }
+
+                MessageQueue stateTopicQueue = new MessageQueue(result.getTopic(), result.getBrokerName(), result.getQueueId());
                 String emptyBody = result.getUserProperty(Constant.EMPTY_BODY);
                 if (Constant.TRUE.equals(emptyBody)) {
+                    //之前拉取的批次中可能已经放入本地，需要删除；旧格式的删除标记body中没有key
+                    if (!Arrays.equals(result.getBody(), Constant.EMPTY_BODY.getBytes(StandardCharsets.UTF_8))) {
+                        byte[] key = this.protocol.split(result.getBody()).getKey();
+                        this.localStore.deleteByKey(buildKey(stateTopicQueue), key);
+                    }
                     continue;
                 }
 
@@ -354,16 +826,13 @@ public class RocketMQStore extends AbstractStore implements StateStore {
                 byte[] key = pair.getKey();
                 byte[] value = pair.getValue();
 
-                //放入rocksdb
-                MessageQueue stateTopicQueue = new MessageQueue(result.getTopic(), result.getBrokerName(), result.getQueueId());
+                //放入本地存储
                 try {
                     logger.debug("recover state, key: " + new String(key, StandardCharsets.UTF_8) + ", stateTopicQueue: " + stateTopicQueue);
                 } catch (Throwable t) {
                 }
 
-                String stateTopicQueueKey = buildKey(stateTopicQueue);
-                super.putInRecover(stateTopicQueueKey, key);
-                this.rocksDBStore.put(key, value);
+                this.localStore.put(buildKey(stateTopicQueue), key, value);
             }
         }
     }
@@ -391,20 +860,34 @@ public class RocketMQStore extends AbstractStore implements StateStore {
     }
 
     private void createStateTopic(String stateTopic, boolean sourceTopicIsStaticTopic) throws Exception {
-        if (RocketMQUtil.checkWhetherExist(stateTopic)) {
+        if (compactedBrokers.containsKey(stateTopic)) {
             return;
         }
 
-        String sourceTopic = stateTopic2SourceTopic(stateTopic);
-        Pair<Integer, Set<String>> clustersPair = getTotalQueueNumAndClusters(sourceTopic);
-
         if (sourceTopicIsStaticTopic) {
-            RocketMQUtil.createStaticCompactTopic(mqAdmin, stateTopic, clustersPair.getKey(), clustersPair.getValue());
+            if (!RocketMQUtil.checkWhetherExist(stateTopic)) {
+                String sourceTopic = layoutSourceTopic(stateTopic);
+                Pair<Integer, Set<String>> clustersPair = getTotalQueueNumAndClusters(sourceTopic);
+                RocketMQUtil.createStaticCompactTopic(mqAdmin, stateTopic, clustersPair.getKey(), clustersPair.getValue());
+            }
+            //static topic不写快照
+            compactedBrokers.put(stateTopic, Collections.emptySet());
+            return;
+        }
+
+        if (RocketMQUtil.checkWhetherExist(stateTopic)) {
+            //同一个进程中的其他任务已经创建过，从broker查询
+            compactedBrokers.put(stateTopic, RocketMQUtil.getCompactedBrokers(mqAdmin, stateTopic));
         } else {
-            RocketMQUtil.createNormalTopic(mqAdmin, sourceTopic, stateTopic);
+            compactedBrokers.put(stateTopic, RocketMQUtil.createNormalTopic(mqAdmin, layoutSourceTopic(stateTopic), stateTopic, compaction));
         }
     }
 
+    private boolean isCompacted(MessageQueue stateTopicQueue) {
+        Set<String> brokers = compactedBrokers.get(stateTopicQueue.getTopic());
+        return brokers != null && brokers.contains(stateTopicQueue.getBrokerName());
+    }
+
     private Pair<Integer, Set<String>> getTotalQueueNumAndClusters(String sourceTopic) throws Exception {
         int queueNum = 0;
 
@@ -425,7 +908,12 @@ public class RocketMQStore extends AbstractStore implements StateStore {
 
     @Override
     public void close() throws Exception {
-        this.rocksDBStore.close();
+        //恢复线程还在写本地存储时不能关闭
+        this.closed = true;
         this.executor.shutdown();
+        if (!this.executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            logger.warn("wait for state recover thread exit timeout.");
+        }
+        this.localStore.close();
     }
 }
@@ -18,36 +18,85 @@ package org.apache.rocketmq.streams.core.state;
 
 
 import org.apache.commons.io.FileUtils;
+import org.apache.rocketmq.streams.core.exception.RStreamsException;
 import org.apache.rocketmq.streams.core.function.ValueMapperAction;
 import org.apache.rocketmq.streams.core.window.WindowKey;
 import org.apache.rocketmq.streams.core.util.Pair;
 import org.apache.rocketmq.streams.core.util.Utils;
+import org.rocksdb.Checkpoint;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.DBOptions;
 import org.rocksdb.Options;
 import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
 import org.rocksdb.TtlDB;
+import org.rocksdb.WriteBatch;
 import org.rocksdb.WriteOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-
-public class RocksDBStore extends AbstractStore implements AutoCloseable {
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 每个state topic queue一个column family，queue被移除时直接drop整个column family。
+ * 配置了checkpoint目录时，定期用Checkpoint API在{checkpointRoot}/{path}下保留最新的一个checkpoint，
+ * 同名的.offsets文件记录每个queue对应的state topic位点；queue在本机重新分配时，可以从任意线程的checkpoint恢复。
+ * 目录用文件锁独占，本机同一个job的其他进程有同名线程时使用{path}-1、{path}-2...，不会删除彼此的checkpoint。
+ */
+public class RocksDBStore implements LocalStore {
     private static final Logger logger = LoggerFactory.getLogger(RocksDBStore.class);
 
     private static final String ROCKSDB_PATH = "/tmp/rocksdb";
-    private RocksDB rocksDB;
+    private static final int TTL_SECONDS = 10800;
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String OFFSETS_SUFFIX = ".offsets";
+    private static final String LOCK_FILE = "LOCK";
+
+    private TtlDB rocksDB;
     private WriteOptions writeOptions;
-    private ReadOptions readOptions;
+    private ColumnFamilyOptions columnFamilyOptions;
     private File storeFile;
+    private final String path;
+    private final File checkpointRoot;
+    private File checkpointDir;
+    private FileChannel checkpointLockChannel;
+
+    private final ConcurrentHashMap<String/*brokerName@topic@queueId of state topic*/, ColumnFamilyHandle> columnFamilies = new ConcurrentHashMap<>();
+    //drop之后其他线程可能还持有handle，到close时再释放
+    private final Queue<ColumnFamilyHandle> droppedColumnFamilies = new ConcurrentLinkedQueue<>();
 
     public RocksDBStore(String path) {
+        this(path, null);
+    }
+
+    public RocksDBStore(String path, File checkpointRoot) {
+        this.path = path;
+        this.checkpointRoot = checkpointRoot;
         createRocksDB(path);
     }
 
@@ -67,7 +116,8 @@ public class RocksDBStore extends AbstractStore implements AutoCloseable {
                     throw new RuntimeException("before create rocksdb,mkdir path " + rocksdbFilePath + " error");
                 }
 
-                this.rocksDB = TtlDB.open(options, rocksdbFilePath, 10800, false);
+                this.rocksDB = TtlDB.open(options, rocksdbFilePath, TTL_SECONDS, false);
+                this.columnFamilyOptions = new ColumnFamilyOptions();
 
                 writeOptions = new WriteOptions();
                 writeOptions.setSync(false);
@@ -80,94 +130,412 @@ public class RocksDBStore extends AbstractStore implements AutoCloseable {
         }
     }
 
+    private ColumnFamilyHandle getOrCreate(String stateTopicQueueKey) {
+        return columnFamilies.computeIfAbsent(stateTopicQueueKey, name -> {
+            try {
+                ColumnFamilyDescriptor descriptor = new ColumnFamilyDescriptor(name.getBytes(StandardCharsets.UTF_8), columnFamilyOptions);
+                return rocksDB.createColumnFamilyWithTtl(descriptor, TTL_SECONDS);
+            } catch (RocksDBException e) {
+                throw new RStreamsException("create column family error, name=" + name, e);
+            }
+        });
+    }
 
-    public byte[] get(byte[] key) throws RocksDBException {
-        if (key == null) {
+    @Override
+    public byte[] get(String stateTopicQueueKey, byte[] key) throws RocksDBException {
+        ColumnFamilyHandle handle = columnFamilies.get(stateTopicQueueKey);
+        if (key == null || handle == null) {
             return null;
         }
 
-        return rocksDB.get(key);
+        return rocksDB.get(handle, key);
     }
 
-
-    public void put(byte[] key, byte[] value) throws RocksDBException {
-        rocksDB.put(writeOptions, key, value);
+    @Override
+    public void put(String stateTopicQueueKey, byte[] key, byte[] value) throws RocksDBException {
+        rocksDB.put(getOrCreate(stateTopicQueueKey), writeOptions, key, value);
     }
 
-    public List<Pair<byte[], byte[]>> searchStateLessThanWatermark(String name,
+    @Override
+    public List<Pair<byte[], byte[]>> searchStateLessThanWatermark(String stateTopicQueueKey, String name,
                                                                    long lessThanThisTime,
                                                                    ValueMapperAction<byte[], WindowKey> deserializer) throws Throwable {
-        readOptions = new ReadOptions();
-        readOptions.setPrefixSameAsStart(true).setTotalOrderSeek(true);
+        List<Pair<byte[], byte[]>> temp = new ArrayList<>();
+        ColumnFamilyHandle handle = columnFamilies.get(stateTopicQueueKey);
+        if (handle == null) {
+            return temp;
+        }
 
-        RocksIterator rocksIterator = rocksDB.newIterator(readOptions);
-        byte[] keyBytePrefix = name.getBytes(StandardCharsets.UTF_8);
-        rocksIterator.seek(keyBytePrefix);
+        try (ReadOptions readOptions = new ReadOptions().setPrefixSameAsStart(true).setTotalOrderSeek(true);
+             RocksIterator rocksIterator = rocksDB.newIterator(handle, readOptions)) {
+            //同一个算子的key是连续的，超出前缀后不用再往后遍历
+            byte[] keyBytePrefix = (name + WindowKey.SPLIT).getBytes(StandardCharsets.UTF_8);
+            rocksIterator.seek(keyBytePrefix);
 
-        List<Pair<byte[], byte[]>> temp = new ArrayList<>();
-        while (rocksIterator.isValid()) {
-            byte[] keyBytes = rocksIterator.key();
-            byte[] valueBytes = rocksIterator.value();
+            while (rocksIterator.isValid()) {
+                byte[] keyBytes = rocksIterator.key();
+                if (!Utils.startsWith(keyBytes, keyBytePrefix)) {
+                    break;
+                }
+                byte[] valueBytes = rocksIterator.value();
+
+                rocksIterator.next();
+
+                WindowKey windowKey = deserializer.convert(keyBytes);
+                if (!windowKey.getOperatorName().equals(name)) {
+                    continue;
+                }
+
+                if (windowKey.getWindowEnd() >= lessThanThisTime) {
+                    continue;
+                }
+
+                Pair<byte[], byte[]> pair = new Pair<>(keyBytes, valueBytes);
+                temp.add(pair);
+            }
+        }
+        return temp;
+    }
+
+    @Override
+    public List<Pair<String, byte[]>> searchByKeyPrefix(String stateTopicQueueKey, String keyPrefix,
+                                                        ValueMapperAction<String, byte[]> string2Bytes,
+                                                        ValueMapperAction<byte[], String> byte2String) throws Throwable {
+        List<Pair<String, byte[]>> temp = new ArrayList<>();
+        ColumnFamilyHandle handle = columnFamilies.get(stateTopicQueueKey);
+        if (handle == null) {
+            return temp;
+        }
 
-            rocksIterator.next();
+        try (ReadOptions readOptions = new ReadOptions().setPrefixSameAsStart(true).setTotalOrderSeek(true);
+             RocksIterator rocksIterator = rocksDB.newIterator(handle, readOptions)) {
+            byte[] convert = string2Bytes.convert(keyPrefix);
+            rocksIterator.seek(convert);
+
+            while (rocksIterator.isValid()) {
+                byte[] keyBytes = rocksIterator.key();
+                byte[] valueBytes = rocksIterator.value();
+
+                String storeKey = byte2String.convert(keyBytes);
+                if (storeKey.startsWith(keyPrefix)) {
+                    Pair<String, byte[]> pair = new Pair<>(storeKey, valueBytes);
+                    temp.add(pair);
+                }
+
+                rocksIterator.next();
+            }
+        }
+
+        return temp;
+    }
+
+    @Override
+    public void deleteByKey(String stateTopicQueueKey, byte[] key) throws RocksDBException {
+        ColumnFamilyHandle handle = columnFamilies.get(stateTopicQueueKey);
+        if (handle == null) {
+            return;
+        }
+        rocksDB.delete(handle, writeOptions, key);
+    }
+
+    @Override
+    public KeyValueIterator iterator(String stateTopicQueueKey) {
+        ColumnFamilyHandle handle = columnFamilies.get(stateTopicQueueKey);
+        if (handle == null) {
+            return new KeyValueIterator() {
+                @Override
+                public boolean hasNext() {
+                    return false;
+                }
+
+                @Override
+                public Pair<byte[], byte[]> next() {
+                    throw new NoSuchElementException();
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        //drop之后handle到close时才释放，遍历过程中queue被移除也可以继续读
+        ReadOptions readOptions = new ReadOptions();
+        RocksIterator rocksIterator = rocksDB.newIterator(handle, readOptions);
+        rocksIterator.seekToFirst();
+
+        return new KeyValueIterator() {
+            @Override
+            public boolean hasNext() {
+                return rocksIterator.isValid();
+            }
+
+            @Override
+            public Pair<byte[], byte[]> next() {
+                if (!rocksIterator.isValid()) {
+                    throw new NoSuchElementException();
+                }
+                Pair<byte[], byte[]> pair = new Pair<>(rocksIterator.key(), rocksIterator.value());
+                rocksIterator.next();
+                return pair;
+            }
+
+            @Override
+            public void close() {
+                rocksIterator.close();
+                readOptions.close();
+            }
+        };
+    }
+
+    @Override
+    public void checkpoint(Map<String, Long> offsets) throws Exception {
+        if (checkpointRoot == null || offsets.size() == 0) {
+            return;
+        }
 
-            WindowKey windowKey = deserializer.convert(keyBytes);
-            if (!windowKey.getOperatorName().equals(name)) {
+        File dir = lockCheckpointDir();
+        String name = CHECKPOINT_PREFIX + System.currentTimeMillis();
+        //memtable会先flush，WAL关闭时也不会丢数据
+        try (Checkpoint checkpoint = Checkpoint.create(rocksDB)) {
+            checkpoint.createCheckpoint(new File(dir, name).getPath());
+        }
+
+        //位点文件最后写入，有位点文件的checkpoint才是完整的
+        Properties properties = new Properties();
+        for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+            properties.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        File temp = new File(dir, name + OFFSETS_SUFFIX + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            properties.store(out, null);
+        }
+        Files.move(temp.toPath(), new File(dir, name + OFFSETS_SUFFIX).toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.getName().startsWith(name) && !file.getName().equals(LOCK_FILE)) {
+                    FileUtils.forceDelete(file);
+                }
+            }
+        }
+        logger.info("create checkpoint:[{}], queues:{}", name, offsets.keySet());
+    }
+
+    //第一次checkpoint时锁定目录，进程退出或者close时释放
+    private File lockCheckpointDir() throws IOException {
+        if (checkpointDir != null) {
+            return checkpointDir;
+        }
+
+        for (int i = 0; ; i++) {
+            File dir = new File(checkpointRoot, i == 0 ? path : path + "-" + i);
+            if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                throw new RStreamsException("mkdir checkpoint path " + dir.getPath() + " error");
+            }
+
+            FileChannel channel = FileChannel.open(new File(dir, LOCK_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                //本进程中其他同名的store
+                lock = null;
+            }
+            if (lock == null) {
+                channel.close();
                 continue;
             }
 
-            if (windowKey.getWindowEnd() >= lessThanThisTime) {
+            this.checkpointLockChannel = channel;
+            this.checkpointDir = dir;
+            logger.info("lock checkpoint path:{}", dir.getPath());
+            return dir;
+        }
+    }
+
+    @Override
+    public long restoreFromCheckpoint(String stateTopicQueueKey) throws Throwable {
+        if (checkpointRoot == null) {
+            return -1;
+        }
+        File[] dirs = checkpointRoot.listFiles(File::isDirectory);
+        if (dirs == null) {
+            return -1;
+        }
+
+        //所有线程的checkpoint中，包含这个queue的最新的一个
+        File latest = null;
+        long latestTime = -1;
+        long offset = -1;
+        for (File dir : dirs) {
+            File[] files = dir.listFiles((d, fileName) -> fileName.startsWith(CHECKPOINT_PREFIX) && fileName.endsWith(OFFSETS_SUFFIX));
+            if (files == null) {
                 continue;
             }
+            for (File file : files) {
+                String name = file.getName().substring(0, file.getName().length() - OFFSETS_SUFFIX.length());
+                long time = Long.parseLong(name.substring(CHECKPOINT_PREFIX.length()));
+
+                Properties properties = new Properties();
+                try (InputStream in = new FileInputStream(file)) {
+                    properties.load(in);
+                } catch (IOException e) {
+                    //其他线程正在删除旧的checkpoint
+                    continue;
+                }
 
-            Pair<byte[], byte[]> pair = new Pair<>(keyBytes, valueBytes);
-            temp.add(pair);
+                String value = properties.getProperty(stateTopicQueueKey);
+                if (value != null && time > latestTime) {
+                    latest = new File(dir, name);
+                    latestTime = time;
+                    offset = Long.parseLong(value);
+                }
+            }
+        }
+
+        if (latest == null) {
+            return -1;
+        }
+
+        dropQueue(stateTopicQueueKey);
+        try {
+            long count = copyFromCheckpoint(latest, stateTopicQueueKey);
+            logger.info("restore [{}] keys of queue:[{}] from checkpoint:[{}], offset:{}", count, stateTopicQueueKey, latest.getPath(), offset);
+            return offset;
+        } catch (Throwable t) {
+            logger.warn("restore queue:[{}] from checkpoint:[{}] failed.", stateTopicQueueKey, latest.getPath(), t);
+            dropQueue(stateTopicQueueKey);
+            return -1;
         }
-        return temp;
     }
 
-    public List<Pair<String, byte[]>> searchByKeyPrefix(String keyPrefix,
-                                                        ValueMapperAction<String, byte[]> string2Bytes,
-                                                        ValueMapperAction<byte[], String> byte2String) throws Throwable {
-        readOptions = new ReadOptions();
-        readOptions.setPrefixSameAsStart(true).setTotalOrderSeek(true);
-        RocksIterator rocksIterator = rocksDB.newIterator(readOptions);
+    private long copyFromCheckpoint(File checkpointDir, String stateTopicQueueKey) throws RocksDBException {
+        byte[] name = stateTopicQueueKey.getBytes(StandardCharsets.UTF_8);
 
-        byte[] convert = string2Bytes.convert(keyPrefix);
-        rocksIterator.seek(convert);
+        List<byte[]> names;
+        try (Options options = new Options()) {
+            names = RocksDB.listColumnFamilies(options, checkpointDir.getPath());
+        }
+        //queue没有状态时没有创建column family
+        int index = -1;
+        List<ColumnFamilyDescriptor> descriptors = new ArrayList<>();
+        List<Integer> ttls = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (Arrays.equals(names.get(i), name)) {
+                index = i;
+            }
+            descriptors.add(new ColumnFamilyDescriptor(names.get(i), columnFamilyOptions));
+            ttls.add(TTL_SECONDS);
+        }
+        if (index == -1) {
+            return 0;
+        }
 
-        List<Pair<String, byte[]>> temp = new ArrayList<>();
-        while (rocksIterator.isValid()) {
-            byte[] keyBytes = rocksIterator.key();
-            byte[] valueBytes = rocksIterator.value();
+        long count = 0;
+        List<ColumnFamilyHandle> handles = new ArrayList<>();
+        try (DBOptions dbOptions = new DBOptions();
+             TtlDB checkpointDB = TtlDB.open(dbOptions, checkpointDir.getPath(), descriptors, handles, ttls, true)) {
+            ColumnFamilyHandle target = getOrCreate(stateTopicQueueKey);
+            try (RocksIterator rocksIterator = checkpointDB.newIterator(handles.get(index));
+                 WriteBatch writeBatch = new WriteBatch()) {
+                for (rocksIterator.seekToFirst(); rocksIterator.isValid(); rocksIterator.next()) {
+                    writeBatch.put(target, rocksIterator.key(), rocksIterator.value());
+                    count++;
+                    if (writeBatch.count() >= 1000) {
+                        rocksDB.write(writeOptions, writeBatch);
+                        writeBatch.clear();
+                    }
+                }
+                rocksDB.write(writeOptions, writeBatch);
+            } finally {
+                for (ColumnFamilyHandle handle : handles) {
+                    handle.close();
+                }
+            }
+        }
+        return count;
+    }
 
-            String storeKey = byte2String.convert(keyBytes);
-            if (storeKey.startsWith(keyPrefix)) {
-                Pair<String, byte[]> pair = new Pair<>(storeKey, valueBytes);
-                temp.add(pair);
+    @Override
+    public void dropQueue(String stateTopicQueueKey) {
+        //和getOrCreate互斥，避免drop之前同名的column family被重新创建
+        columnFamilies.computeIfPresent(stateTopicQueueKey, (name, handle) -> {
+            try {
+                rocksDB.dropColumnFamily(handle);
+            } catch (RocksDBException e) {
+                throw new RStreamsException("drop column family error, name=" + name, e);
             }
+            droppedColumnFamilies.add(handle);
+            logger.info("drop column family: [{}]", name);
+            return null;
+        });
+    }
 
-            rocksIterator.next();
+    @Override
+    public long countKeys(String stateTopicQueueKey) throws RocksDBException {
+        ColumnFamilyHandle handle = columnFamilies.get(stateTopicQueueKey);
+        if (handle == null) {
+            return 0;
         }
+        return rocksDB.getLongProperty(handle, "rocksdb.estimate-num-keys");
+    }
 
-        return temp;
+    //例如rocksdb.estimate-live-data-size、rocksdb.estimate-num-keys，所有column family之和
+    public long getLongProperty(String property) throws RocksDBException {
+        long result = rocksDB.getLongProperty(property);
+        for (ColumnFamilyHandle handle : columnFamilies.values()) {
+            result += rocksDB.getLongProperty(handle, property);
+        }
+        return result;
+    }
+
+    @Override
+    public long getEstimateBytes() throws RocksDBException {
+        return getLongProperty("rocksdb.estimate-live-data-size");
     }
 
-    public void deleteByKey(byte[] key) throws RocksDBException {
-        rocksDB.delete(key);
+    @Override
+    public long getEstimateBytes(String stateTopicQueueKey) throws RocksDBException {
+        ColumnFamilyHandle handle = columnFamilies.get(stateTopicQueueKey);
+        if (handle == null) {
+            return 0;
+        }
+        return rocksDB.getLongProperty(handle, "rocksdb.estimate-live-data-size");
     }
 
+    @Override
+    public long getEstimateKeys() throws RocksDBException {
+        return getLongProperty("rocksdb.estimate-num-keys");
+    }
+
+    @Override
     public void close() throws Exception {
+        for (ColumnFamilyHandle handle : columnFamilies.values()) {
+            handle.close();
+        }
+        columnFamilies.clear();
+        ColumnFamilyHandle dropped;
+        while ((dropped = droppedColumnFamilies.poll()) != null) {
+            dropped.close();
+        }
+
         this.rocksDB.close();
+        this.columnFamilyOptions.close();
+        if (this.checkpointLockChannel != null) {
+            //关闭channel同时释放文件锁，checkpoint保留给之后的进程恢复
+            this.checkpointLockChannel.close();
+        }
         if (this.storeFile != null && storeFile.exists()) {
             FileUtils.forceDelete(storeFile);
             logger.info("close RocksDB success, delete path:{}", storeFile.getPath());
         }
     }
 
-
     public static void main(String[] args) throws Throwable {
         RocksDBStore rocksDBStore = new RocksDBStore("test");
+        String queue = "broker-a@test-stateTopic@0";
 
         String key = "time@1668249210000@1668249195000";
         String key2 = "time@1668249210001@1668249195001";
@@ -180,25 +548,28 @@ public class RocksDBStore extends AbstractStore implements AutoCloseable {
         byte[] keyBytes2 = Utils.object2Byte(key2);
         byte[] valueBytes2 = Utils.object2Byte(value2);
 
-        rocksDBStore.put(keyBytes2, valueBytes2);
-        rocksDBStore.put(keyBytes, valueBytes);
+        rocksDBStore.put(queue, keyBytes2, valueBytes2);
+        rocksDBStore.put(queue, keyBytes, valueBytes);
 
 
-        byte[] bytes = rocksDBStore.get(keyBytes);
+        byte[] bytes = rocksDBStore.get(queue, keyBytes);
         Object result = Utils.byte2Object(bytes, Object.class);
         System.out.println(result);
 
-        byte[] bytes2 = rocksDBStore.get(keyBytes2);
+        byte[] bytes2 = rocksDBStore.get(queue, keyBytes2);
         Object result2 = Utils.byte2Object(bytes2, Object.class);
         System.out.println(result2);
 
         String keyPrefix = "time@1668249210000";
 
 
-        List<Pair<String, byte[]>> pairs = rocksDBStore.searchByKeyPrefix(keyPrefix, Utils::object2Byte, data -> Utils.byte2Object(data, String.class));
+        List<Pair<String, byte[]>> pairs = rocksDBStore.searchByKeyPrefix(queue, keyPrefix, Utils::object2Byte, data -> Utils.byte2Object(data, String.class));
         for (Pair<String, byte[]> pair : pairs) {
             assert pair.getKey().startsWith(keyPrefix);
         }
 
+        rocksDBStore.dropQueue(queue);
+        System.out.println(rocksDBStore.get(queue, keyBytes));
+        rocksDBStore.close();
     }
 }
@@ -32,21 +32,31 @@ public interface StateStore extends AutoCloseable {
     //addQueues    messageQueue of source topic,removeQueues messageQueue of source topic
     void recover(Set<MessageQueue> addQueues, Set<MessageQueue> removeQueues) throws Throwable;
 
+    //sourceTopic的standbyQueues: 不属于本worker，但是需要持续重放状态的queue，接管时只需要重放最后一段
+    void standby(String sourceTopic, Set<MessageQueue> standbyQueues) throws Throwable;
+
 
     //messageQueue check the state of source topic is ok, wait if not.
     void waitIfNotReady(MessageQueue messageQueue) throws RecoverStateStoreThrowable;
 
+    //messageQueue of source topic, 状态恢复完成返回true，不阻塞
+    boolean isReady(MessageQueue messageQueue);
+
 
-    byte[] get(byte[] key) throws Throwable;
+    //stateTopicMessageQueue: 状态属于哪个state topic queue，本地存储按照这个queue分区
+    byte[] get(MessageQueue stateTopicMessageQueue, byte[] key) throws Throwable;
 
     void put(MessageQueue stateTopicMessageQueue, byte[] key, byte[] value) throws Throwable;
 
-    List<Pair<byte[], byte[]>> searchStateLessThanWatermark(String operatorName, long lessThanThisTime, ValueMapperAction<byte[], WindowKey> deserializer) throws Throwable;
+    List<Pair<byte[], byte[]>> searchStateLessThanWatermark(MessageQueue stateTopicMessageQueue, String operatorName, long lessThanThisTime, ValueMapperAction<byte[], WindowKey> deserializer) throws Throwable;
 
 
-    List<Pair<String, byte[]>> searchByKeyPrefix(String keyPrefix, ValueMapperAction<String, byte[]> string2Bytes, ValueMapperAction<byte[], String> byte2String) throws Throwable;
+    List<Pair<String, byte[]>> searchByKeyPrefix(MessageQueue stateTopicMessageQueue, String keyPrefix, ValueMapperAction<String, byte[]> string2Bytes, ValueMapperAction<byte[], String> byte2String) throws Throwable;
 
-    void delete(byte[] key) throws Throwable;
+    void delete(MessageQueue stateTopicMessageQueue, byte[] key) throws Throwable;
 
     void persist(Set<MessageQueue> messageQueue) throws Throwable;
+
+    //立即写一次本机checkpoint，本机其他worker接管queue时从这里恢复；没有开启checkpoint时什么都不做
+    void checkpoint() throws Throwable;
 }
@@ -16,17 +16,25 @@ package org.apache.rocketmq.streams.core.topology;
  * limitations under the License.
  */
 
+import org.apache.rocketmq.streams.core.function.supplier.FusedSupplier;
+import org.apache.rocketmq.streams.core.function.supplier.FusibleSupplier;
+import org.apache.rocketmq.streams.core.function.supplier.SharedStateSupplier;
+import org.apache.rocketmq.streams.core.metadata.StreamConfig;
 import org.apache.rocketmq.streams.core.running.Processor;
+import org.apache.rocketmq.streams.core.state.GlobalTableStore;
 import org.apache.rocketmq.streams.core.topology.real.ProcessorFactory;
 import org.apache.rocketmq.streams.core.topology.real.RealProcessorFactory;
 import org.apache.rocketmq.streams.core.topology.real.SinkFactory;
 import org.apache.rocketmq.streams.core.topology.real.SourceFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Supplier;
 
@@ -41,6 +49,8 @@ public class TopologyBuilder {
 
     private final HashMap<String/*source name*/, List<String/*subsequent processor without source*/>> source2Group = new HashMap<>();
 
+    private final LinkedHashMap<String/*name*/, GlobalTableStore<?, ?>> globalTables = new LinkedHashMap<>();
+
     public TopologyBuilder(String jobId) {
         this.jobId = jobId;
     }
@@ -89,12 +99,42 @@ public class TopologyBuilder {
     }
 
 
+    public void addGlobalTable(GlobalTableStore<?, ?> store) {
+        globalTables.put(store.getName(), store);
+    }
+
+    public Collection<GlobalTableStore<?, ?>> getGlobalTables() {
+        return Collections.unmodifiableCollection(globalTables.values());
+    }
+
     public Set<String> getSourceTopic() {
         return Collections.unmodifiableSet(this.topic2SourceNodeFactory.keySet());
     }
 
 
 
+    //source topic中的算子使用的共用state topic，恢复、持久化source topic queue的状态时，同时处理这些topic中queueId相同的queue
+    public Map<String/*source topic*/, Set<String/*state topic*/>> getSharedStateTopics() {
+        HashMap<String, Set<String>> result = new HashMap<>();
+        for (Map.Entry<String, SourceFactory<?>> entry : topic2SourceNodeFactory.entrySet()) {
+            Set<String> stateTopics = new HashSet<>();
+            for (String child : source2Group.get(entry.getValue().getName())) {
+                RealProcessorFactory<?> factory = realNodeFactory.get(child);
+                if (!(factory instanceof ProcessorFactory)) {
+                    continue;
+                }
+                Supplier<?> supplier = ((ProcessorFactory<?>) factory).getSupplier();
+                if (supplier instanceof SharedStateSupplier) {
+                    stateTopics.add(((SharedStateSupplier) supplier).getStateTopic());
+                }
+            }
+            if (stateTopics.size() != 0) {
+                result.put(entry.getKey(), stateTopics);
+            }
+        }
+        return result;
+    }
+
     @SuppressWarnings("unchecked")
     public <T> Processor<T> build(String topicName) {
         SourceFactory<T> sourceFactory = (SourceFactory<T>) topic2SourceNodeFactory.get(topicName);
@@ -106,16 +146,61 @@ public class TopologyBuilder {
         List<String> groupNames = source2Group.get(sourceName);
 
         Processor<T> parent = sourceProcessor;
+        List<FusibleSupplier> fusible = new ArrayList<>();
+        List<String> fusibleNames = new ArrayList<>();
         for (String child : groupNames) {
             RealProcessorFactory<T> childProcessorFactory = (RealProcessorFactory<T>) realNodeFactory.get(child);
+
+            FusibleSupplier fusibleSupplier = fusibleSupplier(childProcessorFactory);
+            if (fusibleSupplier != null) {
+                fusible.add(fusibleSupplier);
+                fusibleNames.add(childProcessorFactory.getName());
+                continue;
+            }
+
+            parent = addFused(parent, fusible, fusibleNames);
             Processor<T> childProcessor = childProcessorFactory.build();
             parent.addChild(childProcessor);
             parent = childProcessor;
         }
+        addFused(parent, fusible, fusibleNames);
 
         return sourceProcessor;
     }
 
+    //连续的无状态算子合并成一个processor
+    @SuppressWarnings("unchecked")
+    private <T> Processor<T> addFused(Processor<T> parent, List<FusibleSupplier> fusible, List<String> fusibleNames) {
+        if (fusible.size() == 0) {
+            return parent;
+        }
+
+        Processor<T> fused;
+        if (fusible.size() == 1) {
+            fused = ((Supplier<Processor<T>>) fusible.get(0)).get();
+        } else {
+            fused = new FusedSupplier<T>(fusible).get();
+        }
+        fused.setName(String.join("+", fusibleNames));
+        fusible.clear();
+        fusibleNames.clear();
+
+        parent.addChild(fused);
+        return fused;
+    }
+
+    private FusibleSupplier fusibleSupplier(RealProcessorFactory<?> factory) {
+        if (!StreamConfig.STREAMS_OPERATOR_FUSION || !(factory instanceof ProcessorFactory)) {
+            return null;
+        }
+
+        Supplier<?> supplier = ((ProcessorFactory<?>) factory).getSupplier();
+        if (supplier instanceof FusibleSupplier) {
+            return (FusibleSupplier) supplier;
+        }
+        return null;
+    }
+
     public String getJobId() {
         return jobId;
     }
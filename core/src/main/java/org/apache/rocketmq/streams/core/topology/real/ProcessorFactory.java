@@ -37,9 +37,15 @@ public class ProcessorFactory<T> implements RealProcessorFactory<T> {
         return name;
     }
 
+    public Supplier<? extends Processor<T>> getSupplier() {
+        return supplier;
+    }
+
     @Override
     public Processor<T> build() {
-        return supplier.get();
+        Processor<T> processor = supplier.get();
+        processor.setName(name);
+        return processor;
     }
 
 }
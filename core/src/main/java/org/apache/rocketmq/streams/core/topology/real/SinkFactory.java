@@ -40,7 +40,9 @@ public class SinkFactory<T> implements RealProcessorFactory<T> {
 
     @Override
     public Processor<T> build() {
-        return supplier.get();
+        Processor<T> processor = supplier.get();
+        processor.setName(name);
+        return processor;
     }
 
 }
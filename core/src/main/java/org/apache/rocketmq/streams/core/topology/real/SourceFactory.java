@@ -41,6 +41,8 @@ public class SourceFactory<T> implements RealProcessorFactory<T> {
 
     @Override
     public Processor<T> build() {
-        return supplier.get();
+        Processor<T> processor = supplier.get();
+        processor.setName(name);
+        return processor;
     }
 }
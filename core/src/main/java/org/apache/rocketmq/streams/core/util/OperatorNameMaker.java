@@ -41,7 +41,10 @@ public class OperatorNameMaker {
     public static final String GROUPED_STREAM_AGGREGATE_PREFIX = "ROCKETMQ-GROUPED-STREAM-AGGREGATE";
     public static final String JOIN_WINDOW_PREFIX = "JOIN-WINDOW";
     public static final String JOIN_PREFIX = "JOIN";
+    public static final String INTERVAL_JOIN_PREFIX = "INTERVAL-JOIN";
     public static final String JOIN_LEFT_PREFIX = "LEFT-JOIN";
+    public static final String GLOBAL_TABLE_PREFIX = "GLOBAL-TABLE";
+    public static final String JOIN_TABLE_PREFIX = "JOIN-TABLE";
 
     public static final String pattern = "%s-%s-%s";
 
@@ -41,6 +41,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class RocketMQUtil {
@@ -48,6 +49,9 @@ public class RocketMQUtil {
 
     private static final List<String> existTopic = new ArrayList<>();
 
+    private static final String CLEANUP_POLICY = "cleanup.policy";
+    private static final String CLEANUP_POLICY_COMPACTION = "COMPACTION";
+
     //neither static topic nor compact topic. expansion with source topic.
     public static void createNormalTopic(DefaultMQAdminExt mqAdmin, String topicName, int totalQueueNum, Set<String> clusters) throws Exception {
         if (check(mqAdmin, topicName)) {
@@ -94,6 +98,11 @@ public class RocketMQUtil {
     }
 
     public static void createNormalTopic(DefaultMQAdminExt mqAdmin, String sourceTopic, String stateTopic) throws Exception {
+        createNormalTopic(mqAdmin, sourceTopic, stateTopic, false);
+    }
+
+    //返回state topic是compact topic的broker，每个broker不支持时单独创建普通topic
+    public static Set<String> createNormalTopic(DefaultMQAdminExt mqAdmin, String sourceTopic, String stateTopic, boolean compaction) throws Exception {
         //找到brokerAddr
         TopicRouteData topicRouteData = mqAdmin.examineTopicRouteInfo(sourceTopic);
         List<QueueData> queueData = topicRouteData.getQueueDatas();
@@ -106,17 +115,51 @@ public class RocketMQUtil {
             brokerName2MaterBrokerAddr.put(broker.getBrokerName(), masterBrokerAddr);
         }
 
+        Set<String> compactedBrokers = new HashSet<>();
         for (QueueData queue : queueData) {
             int readQueueNums = queue.getReadQueueNums();
             int writeQueueNums = queue.getWriteQueueNums();
             String brokerName = queue.getBrokerName();
+            String brokerAddr = brokerName2MaterBrokerAddr.get(brokerName);
 
             TopicConfig topicConfig = new TopicConfig(stateTopic, readQueueNums, writeQueueNums);
 
-            mqAdmin.createAndUpdateTopicConfig(brokerName2MaterBrokerAddr.get(brokerName), topicConfig);
+            if (compaction) {
+                topicConfig.setAttributes(compactionAttributes());
+                try {
+                    mqAdmin.createAndUpdateTopicConfig(brokerAddr, topicConfig);
+                    compactedBrokers.add(brokerName);
+                    continue;
+                } catch (Exception e) {
+                    //5.0.0及以前的broker不支持cleanup.policy属性
+                    logger.warn("broker:[{}] can not create compact topic:[{}], create normal topic instead.", brokerName, stateTopic, e);
+                    topicConfig.setAttributes(new HashMap<>());
+                }
+            }
+
+            mqAdmin.createAndUpdateTopicConfig(brokerAddr, topicConfig);
         }
 
         existTopic.add(stateTopic);
+        return compactedBrokers;
+    }
+
+    //已经存在的topic在哪些broker上是compact topic，查询失败时按普通topic处理
+    public static Set<String> getCompactedBrokers(DefaultMQAdminExt mqAdmin, String topicName) {
+        Set<String> result = new HashSet<>();
+        try {
+            for (BrokerData broker : mqAdmin.examineTopicRouteInfo(topicName).getBrokerDatas()) {
+                TopicConfig topicConfig = mqAdmin.examineTopicConfig(broker.getBrokerAddrs().get(MixAll.MASTER_ID), topicName);
+                Map<String, String> attributes = topicConfig == null ? null : topicConfig.getAttributes();
+                if (attributes != null && (CLEANUP_POLICY_COMPACTION.equals(attributes.get(CLEANUP_POLICY))
+                        || CLEANUP_POLICY_COMPACTION.equals(attributes.get("+" + CLEANUP_POLICY)))) {
+                    result.add(broker.getBrokerName());
+                }
+            }
+        } catch (Throwable t) {
+            logger.warn("examine cleanup policy of topic:[{}] error, treat it as a normal topic.", topicName, t);
+        }
+        return result;
     }
 
     //used in RSQLDB,maybe.
@@ -135,7 +178,13 @@ public class RocketMQUtil {
             createStaticTopicWithCommand(topicName, totalQueueNum, new HashSet<>(), cluster, mqAdmin.getNamesrvAddr());
             logger.info("【step 1】create static topic:[{}] in cluster:[{}] success, logic queue num:[{}].", topicName, cluster, totalQueueNum);
 
-            update2CompactTopicWithCommand(topicName, totalQueueNum, cluster, mqAdmin.getNamesrvAddr());
+            try {
+                update2CompactTopicWithCommand(topicName, totalQueueNum, cluster, mqAdmin.getNamesrvAddr());
+            } catch (Exception e) {
+                //5.0.0及以前的broker不支持cleanup.policy属性，保持普通static topic
+                logger.warn("update static topic:[{}] to compact topic failed, cluster:[{}]", topicName, cluster, e);
+                continue;
+            }
             logger.info("【step 2】update static topic to compact topic success. topic:[{}], cluster:[{}]", topicName, cluster);
         }
 
@@ -195,9 +244,8 @@ public class RocketMQUtil {
                 "-t", topic,
                 "-r", String.valueOf(queueNum),
                 "-w", String.valueOf(queueNum),
-                "-n", nameservers
-//                todo 发布版本还不支持
-//                , "-a", "+delete.policy=COMPACTION"
+                "-n", nameservers,
+                "-a", "+" + CLEANUP_POLICY + "=" + CLEANUP_POLICY_COMPACTION
         };
 
         final CommandLine commandLine = ServerUtil.parseCmdLine("mqadmin " + command.commandName(), args, command.buildCommandlineOptions(options), new PosixParser());
@@ -208,6 +256,12 @@ public class RocketMQUtil {
     }
 
 
+    private static Map<String, String> compactionAttributes() {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("+" + CLEANUP_POLICY, CLEANUP_POLICY_COMPACTION);
+        return attributes;
+    }
+
     public static Set<String> getCluster(DefaultMQAdminExt mqAdmin) throws Exception {
         ClusterInfo clusterInfo = mqAdmin.examineBrokerClusterInfo();
         return clusterInfo.getClusterAddrTable().keySet();
@@ -76,6 +76,30 @@ public class Utils {
         return source.split(split);
     }
 
+    //无符号字节序比较，和RocksDB默认的comparator一致
+    public static int compare(byte[] first, byte[] second) {
+        int length = Math.min(first.length, second.length);
+        for (int i = 0; i < length; i++) {
+            int result = (first[i] & 0xff) - (second[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return first.length - second.length;
+    }
+
+    public static boolean startsWith(byte[] source, byte[] prefix) {
+        if (source.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (source[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static byte[] object2Byte(Object target) throws JsonProcessingException {
         if (target == null) {
             return new byte[]{};
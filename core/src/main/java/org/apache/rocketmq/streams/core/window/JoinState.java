@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.window;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.rocketmq.streams.core.util.Pair;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * join state of one key on one side, entries ordered by event time.
+ * <pre>
+ * +-----------+-----------+---------------+-------------+-----
+ * | Int(4)    | Long(8)   | Int(4)        | value bytes | ...
+ * | count     | timestamp | value length  |             |
+ * +-----------+-----------+---------------+-------------+-----
+ * </pre>
+ */
+public class JoinState {
+    private final List<Pair<Long/*timestamp*/, byte[]/*value*/>> entries = new ArrayList<>();
+
+    public List<Pair<Long, byte[]>> getEntries() {
+        return entries;
+    }
+
+    public boolean isEmpty() {
+        return entries.size() == 0;
+    }
+
+    //按时间顺序插入
+    public void add(long timestamp, byte[] value) {
+        int index = entries.size();
+        while (index > 0 && entries.get(index - 1).getKey() > timestamp) {
+            index--;
+        }
+        entries.add(index, new Pair<>(timestamp, value));
+    }
+
+    //只保留最新的一条
+    public void replace(long timestamp, byte[] value) {
+        entries.clear();
+        entries.add(new Pair<>(timestamp, value));
+    }
+
+    /**
+     * @param lessThanThisTime entries with timestamp less than this will be removed
+     * @return true if any entry is removed
+     */
+    public boolean expire(long lessThanThisTime) {
+        boolean changed = false;
+        Iterator<Pair<Long, byte[]>> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getKey() < lessThanThisTime) {
+                iterator.remove();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    public static byte[] joinState2Byte(JoinState state) {
+        if (state == null) {
+            return new byte[0];
+        }
+
+        ByteBuf buf = Unpooled.buffer(16);
+        buf.writeInt(state.entries.size());
+        for (Pair<Long, byte[]> entry : state.entries) {
+            buf.writeLong(entry.getKey());
+            buf.writeInt(entry.getValue().length);
+            buf.writeBytes(entry.getValue());
+        }
+
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        buf.release();
+        return bytes;
+    }
+
+    public static JoinState byte2JoinState(byte[] bytes) {
+        JoinState result = new JoinState();
+        if (bytes == null || bytes.length == 0) {
+            return result;
+        }
+
+        ByteBuf byteBuf = Unpooled.wrappedBuffer(bytes);
+        int count = byteBuf.readInt();
+        for (int i = 0; i < count; i++) {
+            long timestamp = byteBuf.readLong();
+            byte[] value = new byte[byteBuf.readInt()];
+            byteBuf.readBytes(value);
+            result.entries.add(new Pair<>(timestamp, value));
+        }
+
+        byteBuf.release();
+        return result;
+    }
+}
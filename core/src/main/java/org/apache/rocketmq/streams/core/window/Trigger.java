@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.window;
+
+/**
+ * 窗口结束前提前输出结果，watermark超过窗口结束时间时仍然最终输出一次。
+ * 处理时间的条件在算子收到数据时检查，所在queue没有数据时不会输出。
+ */
+public final class Trigger {
+    //窗口上次输出之后更新的数据条数达到后输出，小于等于0不开启
+    private final long everyRecords;
+
+    //窗口上次输出之后第一次更新，经过这段处理时间后输出
+    private final long processingTimeInterval;
+
+    //每次更新都输出，两次输出至少间隔这段处理时间
+    private final long updateInterval;
+
+    //true: 输出之后清空窗口状态，下次只输出增量；false: 每次输出窗口的累计结果
+    private final boolean discarding;
+
+    private Trigger(long everyRecords, long processingTimeInterval, long updateInterval, boolean discarding) {
+        this.everyRecords = everyRecords;
+        this.processingTimeInterval = processingTimeInterval;
+        this.updateInterval = updateInterval;
+        this.discarding = discarding;
+    }
+
+    public static Trigger everyRecords(long records) {
+        if (records <= 0) {
+            throw new IllegalArgumentException("records must be positive, records=" + records);
+        }
+        return new Trigger(records, 0, -1, false);
+    }
+
+    public static Trigger processingTime(Time interval) {
+        if (interval == null || interval.toMilliseconds() <= 0) {
+            throw new IllegalArgumentException("interval must be positive.");
+        }
+        return new Trigger(0, interval.toMilliseconds(), -1, false);
+    }
+
+    public static Trigger onEveryUpdate() {
+        return onEveryUpdate(Time.milliseconds(0));
+    }
+
+    public static Trigger onEveryUpdate(Time minInterval) {
+        if (minInterval == null || minInterval.toMilliseconds() < 0) {
+            throw new IllegalArgumentException("minInterval must not be negative.");
+        }
+        return new Trigger(0, 0, minInterval.toMilliseconds(), false);
+    }
+
+    //Trigger不可变，以下方法返回新的Trigger，可以在多个窗口之间共用
+
+    //同时按照处理时间输出，先满足的条件先输出
+    public Trigger orProcessingTime(Time interval) {
+        if (interval == null || interval.toMilliseconds() <= 0) {
+            throw new IllegalArgumentException("interval must be positive.");
+        }
+        return new Trigger(everyRecords, interval.toMilliseconds(), updateInterval, discarding);
+    }
+
+    public Trigger accumulating() {
+        return new Trigger(everyRecords, processingTimeInterval, updateInterval, false);
+    }
+
+    public Trigger discarding() {
+        return new Trigger(everyRecords, processingTimeInterval, updateInterval, true);
+    }
+
+    public long getEveryRecords() {
+        return everyRecords;
+    }
+
+    public long getProcessingTimeInterval() {
+        return processingTimeInterval;
+    }
+
+    public long getUpdateInterval() {
+        return updateInterval;
+    }
+
+    public boolean isDiscarding() {
+        return discarding;
+    }
+
+    @Override
+    public String toString() {
+        return "Trigger{" +
+                "everyRecords=" + everyRecords +
+                ", processingTimeInterval=" + processingTimeInterval +
+                ", updateInterval=" + updateInterval +
+                ", discarding=" + discarding +
+                '}';
+    }
+}
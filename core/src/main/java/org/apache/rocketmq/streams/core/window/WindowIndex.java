@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.window;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一个算子在一个state topic queue中的窗口，触发时直接取出到期的窗口，不需要遍历、反序列化全部状态。
+ * 还未触发的窗口按照窗口结束时间排序，结束时间相同的按照写入顺序；
+ * 已经触发、在allowedLateness内保留的窗口按照windowEnd + allowedLateness排序，只在到期时删除。
+ * 只在worker线程中访问；重启或者queue重新分配后，由processor从状态中加载一次。
+ */
+public class WindowIndex {
+    private final long allowedLateness;
+
+    private final TreeMap<Long/*windowEnd*/, LinkedHashMap<String/*windowKey*/, WindowKey>> pending = new TreeMap<>();
+    private final TreeMap<Long/*windowEnd + allowedLateness*/, LinkedHashMap<String/*windowKey*/, WindowKey>> retained = new TreeMap<>();
+    private int pendingCount = 0;
+
+    public WindowIndex(long allowedLateness) {
+        this.allowedLateness = allowedLateness;
+    }
+
+    //写入了还未触发的窗口；已经触发的窗口被迟到数据更新后重新等待触发
+    public void pending(WindowKey windowKey) {
+        String key = windowKey.toString();
+        remove(retained, windowKey.getWindowEnd() + allowedLateness, key);
+        if (pending.computeIfAbsent(windowKey.getWindowEnd(), end -> new LinkedHashMap<>()).put(key, windowKey) == null) {
+            pendingCount++;
+        }
+    }
+
+    //已经触发，状态保留到allowedLateness之后
+    public void retained(WindowKey windowKey) {
+        String key = windowKey.toString();
+        if (remove(pending, windowKey.getWindowEnd(), key)) {
+            pendingCount--;
+        }
+        retained.computeIfAbsent(windowKey.getWindowEnd() + allowedLateness, end -> new LinkedHashMap<>()).put(key, windowKey);
+    }
+
+    public void remove(WindowKey windowKey) {
+        String key = windowKey.toString();
+        if (remove(pending, windowKey.getWindowEnd(), key)) {
+            pendingCount--;
+        }
+        remove(retained, windowKey.getWindowEnd() + allowedLateness, key);
+    }
+
+    //取出结束时间小于watermark、还未触发的窗口，按照结束时间从小到大
+    public List<WindowKey> pollPending(long watermark) {
+        List<WindowKey> result = poll(pending, watermark);
+        pendingCount -= result.size();
+        return result;
+    }
+
+    //取出保留时间已经超过watermark的窗口，状态可以删除
+    public List<WindowKey> pollRetained(long watermark) {
+        return poll(retained, watermark);
+    }
+
+    public boolean hasPending(long watermark) {
+        return pending.size() != 0 && pending.firstKey() < watermark;
+    }
+
+    public int pendingCount() {
+        return pendingCount;
+    }
+
+    private static List<WindowKey> poll(TreeMap<Long, LinkedHashMap<String, WindowKey>> index, long watermark) {
+        List<WindowKey> result = new ArrayList<>();
+        Iterator<Map.Entry<Long, LinkedHashMap<String, WindowKey>>> iterator = index.headMap(watermark, false).entrySet().iterator();
+        while (iterator.hasNext()) {
+            result.addAll(iterator.next().getValue().values());
+            iterator.remove();
+        }
+        return result;
+    }
+
+    private static boolean remove(TreeMap<Long, LinkedHashMap<String, WindowKey>> index, long time, String key) {
+        LinkedHashMap<String, WindowKey> windowKeys = index.get(time);
+        if (windowKeys == null || windowKeys.remove(key) == null) {
+            return false;
+        }
+        if (windowKeys.size() == 0) {
+            index.remove(time);
+        }
+        return true;
+    }
+}
@@ -28,6 +28,16 @@ public class WindowInfo {
 
     private Time sessionTimeout;
 
+    //窗口触发后状态继续保留的时间，期间到达的迟到数据更新窗口并再次输出结果，默认0触发后立即删除
+    //与Constant.ALLOW_LATENESS_MILLISECOND不同：后者让watermark落后于事件时间，推迟首次触发，对所有窗口生效；这里只影响触发之后，按窗口单独配置
+    private Time allowedLateness;
+
+    //超过allowedLateness的迟到数据写入这个topic，不配置时丢弃
+    private String lateDataTopic;
+
+    //窗口结束前提前输出的条件，不配置时只在watermark超过窗口结束时间时输出，不支持session窗口
+    private Trigger trigger;
+
 
     public WindowType getWindowType() {
         return windowType;
@@ -61,6 +71,30 @@ public class WindowInfo {
         this.sessionTimeout = sessionTimeout;
     }
 
+    public Time getAllowedLateness() {
+        return allowedLateness;
+    }
+
+    public void setAllowedLateness(Time allowedLateness) {
+        this.allowedLateness = allowedLateness;
+    }
+
+    public String getLateDataTopic() {
+        return lateDataTopic;
+    }
+
+    public void setLateDataTopic(String lateDataTopic) {
+        this.lateDataTopic = lateDataTopic;
+    }
+
+    public Trigger getTrigger() {
+        return trigger;
+    }
+
+    public void setTrigger(Trigger trigger) {
+        this.trigger = trigger;
+    }
+
     public JoinStream getJoinStream() {
         return joinStream;
     }
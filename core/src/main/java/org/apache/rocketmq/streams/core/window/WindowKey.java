@@ -21,7 +21,7 @@ import org.apache.rocketmq.streams.core.util.Utils;
 import java.nio.charset.StandardCharsets;
 
 public class WindowKey {
-    private static final String SPLIT = "&&";
+    public static final String SPLIT = "&&";
 
     private String operatorName;
 
@@ -38,6 +38,8 @@ public class WindowState<K, V> implements Serializable {
     private static final long serialVersionUID = 1669344441528746814L;
     private long recordEarliestTimestamp = Long.MAX_VALUE;
     private long recordLastTimestamp;
+    //窗口已经触发过，在allowedLateness内保留的状态
+    private boolean fired = false;
     private K key;
     private V value;
     private byte[] keyBytes;
@@ -139,6 +141,14 @@ public class WindowState<K, V> implements Serializable {
         this.recordLastTimestamp = recordLastTimestamp;
     }
 
+    public boolean isFired() {
+        return fired;
+    }
+
+    public void setFired(boolean fired) {
+        this.fired = fired;
+    }
+
     private static final ByteBuf buf = Unpooled.buffer(16);
     public static byte[] windowState2Byte(WindowState<?, ?> state) throws Throwable {
         if (state == null) {
@@ -168,7 +178,7 @@ public class WindowState<K, V> implements Serializable {
         }
 
 
-        int length = 4 + 8 + 8 + 4 + keyClazzBytes.length + 4 + keyBytes.length + 4 + valueClazzBytes.length + 4 + valueBytes.length;
+        int length = 4 + 8 + 8 + 4 + keyClazzBytes.length + 4 + keyBytes.length + 4 + valueClazzBytes.length + 4 + valueBytes.length + 1;
 
         buf.writeInt(length);
 
@@ -191,6 +201,8 @@ public class WindowState<K, V> implements Serializable {
         buf.writeInt(valueBytes.length);
         buf.writeBytes(valueBytes);
 
+        buf.writeBoolean(state.isFired());
+
         byte[] bytes = new byte[buf.readableBytes()];
         buf.readBytes(bytes);
 
@@ -239,9 +251,12 @@ public class WindowState<K, V> implements Serializable {
         byte[] valueBytes = new byte[valueLength];
         valueBuf.readBytes(valueBytes);
 
+        boolean fired = byteBuf.isReadable() && byteBuf.readBoolean();
+
         WindowState<K, V> result = new WindowState<>();
         result.setRecordLastTimestamp(recordLastTimestamp);
         result.setRecordEarliestTimestamp(recordEarliestTimestamp);
+        result.setFired(fired);
         result.setKeyBytes(keyBytes);
         result.setValueBytes(valueBytes);
         result.setKeyClazz(keyClazz);
@@ -31,14 +31,16 @@ public class WindowStore<K, V> {
     private static final Logger logger = LoggerFactory.getLogger(WindowStore.class.getName());
 
     private StateStore stateStore;
+    private MessageQueue stateTopicMessageQueue;
     private ValueMapperAction<byte[], WindowState<K, V>> bytes2State;
     private ValueMapperAction<WindowState<K, V>, byte[]> state2Bytes;
 
 
-    public WindowStore(StateStore stateStore,
+    public WindowStore(StateStore stateStore, MessageQueue stateTopicMessageQueue,
                        ValueMapperAction<byte[], WindowState<K, V>> bytes2State,
                        ValueMapperAction<WindowState<K, V>, byte[]> state2Bytes) {
         this.stateStore = stateStore;
+        this.stateTopicMessageQueue = stateTopicMessageQueue;
         this.bytes2State = bytes2State;
         this.state2Bytes = state2Bytes;
     }
@@ -53,18 +55,18 @@ public class WindowStore<K, V> {
 
     public WindowState<K, V> get(WindowKey windowKey) throws Throwable {
         byte[] bytes = WindowKey.windowKey2Byte(windowKey);
-        byte[] valueBytes = this.stateStore.get(bytes);
+        byte[] valueBytes = this.stateStore.get(stateTopicMessageQueue, bytes);
         return deserializerState(valueBytes);
     }
 
     public List<Pair<WindowKey, WindowState<K, V>>> searchLessThanWatermark(WindowKey windowKey) throws Throwable {
-        List<Pair<byte[], byte[]>> windowStateBytes = this.stateStore.searchStateLessThanWatermark(windowKey.getOperatorName(), windowKey.getWindowEnd(), WindowKey::byte2WindowKey);
+        List<Pair<byte[], byte[]>> windowStateBytes = this.stateStore.searchStateLessThanWatermark(stateTopicMessageQueue, windowKey.getOperatorName(), windowKey.getWindowEnd(), WindowKey::byte2WindowKey);
 
         return deserializerState(windowStateBytes);
     }
 
     public List<Pair<WindowKey, WindowState<K, V>>> searchMatchKeyPrefix(WindowKey windowKey) throws Throwable {
-        List<Pair<byte[], byte[]>> pairs = this.stateStore.searchStateLessThanWatermark(windowKey.getOperatorName(), Long.MAX_VALUE, WindowKey::byte2WindowKey);
+        List<Pair<byte[], byte[]>> pairs = this.stateStore.searchStateLessThanWatermark(stateTopicMessageQueue, windowKey.getOperatorName(), Long.MAX_VALUE, WindowKey::byte2WindowKey);
 
         return deserializerState(pairs);
     }
@@ -74,7 +76,7 @@ public class WindowStore<K, V> {
             return;
         }
         byte[] keyBytes = WindowKey.windowKey2Byte(windowKey);
-        this.stateStore.delete(keyBytes);
+        this.stateStore.delete(stateTopicMessageQueue, keyBytes);
     }
 
     private List<Pair<WindowKey, WindowState<K, V>>> deserializerState(List<Pair<byte[], byte[]>> windowStateBytes)  throws Throwable{
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.metrics;
+
+import java.util.Properties;
+
+public class HistogramTests {
+    public static void main(String[] args) {
+        Histogram histogram = new Histogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        //expect p50 close to 5000000, p99 close to 9900000, max 10000000
+        System.out.println("count: " + histogram.getCount() + ", mean: " + histogram.getMean());
+        System.out.println("p50: " + histogram.getP50() + ", p99: " + histogram.getP99() + ", max: " + histogram.getMax());
+
+        MetricsRegistry registry = new MetricsRegistry("test", new Properties());
+        registry.operator("filter").getRecordsIn().inc(10);
+        registry.gauge("lag", () -> 5L);
+        registry.report();
+        registry.close();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.runtime;
+
+import org.apache.rocketmq.streams.core.running.AbstractWindowProcessor;
+import org.apache.rocketmq.streams.core.window.Trigger;
+import org.apache.rocketmq.streams.core.window.WindowKey;
+
+public class EarlyFireTests {
+    public static void main(String[] args) throws Throwable {
+        EarlyFireProcessor processor = new EarlyFireProcessor();
+        processor.discardingWindows();
+
+        //expect false true, the shared trigger is not changed
+        Trigger shared = Trigger.everyRecords(2);
+        Trigger discarding = shared.discarding();
+        System.out.println(shared.isDiscarding() + " " + discarding.isDiscarding());
+    }
+
+    private static class EarlyFireProcessor extends AbstractWindowProcessor<Object> {
+        @Override
+        public void process(Object data) {
+        }
+
+        //discarding模式每次提前输出后都删除状态，最终触发时找不到窗口
+        void discardingWindows() {
+            Trigger trigger = Trigger.onEveryUpdate().discarding();
+            WindowKey first = new WindowKey("window", "key", 10000L, 0L);
+            WindowKey second = new WindowKey("window", "key", 20000L, 10000L);
+
+            for (WindowKey windowKey : new WindowKey[]{first, second, first}) {
+                if (onEarlyUpdate(trigger, windowKey)) {
+                    earlyFired(windowKey);
+                }
+            }
+
+            //expect 2 1 0
+            System.out.print(earlyFireCount() + " ");
+            dueEarlyFires(15000L);
+            System.out.print(earlyFireCount() + " ");
+            dueEarlyFires(25000L);
+            System.out.println(earlyFireCount());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.runtime;
+
+import org.apache.rocketmq.streams.core.util.Pair;
+import org.apache.rocketmq.streams.core.window.JoinState;
+
+import java.nio.charset.StandardCharsets;
+
+public class JoinStateTests {
+    public static void main(String[] args) {
+        JoinState state = new JoinState();
+        state.add(3000L, "c".getBytes(StandardCharsets.UTF_8));
+        state.add(1000L, "a".getBytes(StandardCharsets.UTF_8));
+        state.add(2000L, "b".getBytes(StandardCharsets.UTF_8));
+
+        JoinState result = JoinState.byte2JoinState(JoinState.joinState2Byte(state));
+        //expect b, c
+        result.expire(2000L);
+
+        for (Pair<Long, byte[]> entry : result.getEntries()) {
+            System.out.println(entry.getKey() + ": " + new String(entry.getValue(), StandardCharsets.UTF_8));
+        }
+    }
+}
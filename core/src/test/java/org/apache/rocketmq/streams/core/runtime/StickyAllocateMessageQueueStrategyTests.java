@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.runtime;
+
+import org.apache.rocketmq.client.consumer.AllocateMessageQueueStrategy;
+import org.apache.rocketmq.client.consumer.rebalance.AllocateMessageQueueAveragely;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.streams.core.running.StickyAllocateMessageQueueStrategy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StickyAllocateMessageQueueStrategyTests {
+    public static void main(String[] args) {
+        List<MessageQueue> queues = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            queues.add(new MessageQueue("source-shuffleTopic", "broker", i));
+        }
+
+        List<String> before = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            before.add("10.0.0." + i + "@" + (1000 + i));
+        }
+        //10.0.0.0 restarted with a new pid, 10.0.0.4 joined
+        List<String> after = new ArrayList<>(before);
+        after.set(0, "10.0.0.0@2000");
+        after.add("10.0.0.4@1004");
+
+        //expect average moves most of the queues, sticky about 64 / 5
+        System.out.println("average moves " + moves(new AllocateMessageQueueAveragely(), queues, before, after));
+        System.out.println("sticky moves " + moves(new StickyAllocateMessageQueueStrategy(), queues, before, after));
+
+        //expect every queue has exactly one owner, at most 13 queues per consumer
+        Map<MessageQueue, String> owners = assign(new StickyAllocateMessageQueueStrategy(), queues, after);
+        System.out.println(owners.size() + " queues, max " + maxLoad(owners) + " per consumer");
+
+        //expect queues with the same queueId of two shuffle topics have the same owner
+        List<MessageQueue> right = new ArrayList<>();
+        for (MessageQueue queue : queues) {
+            right.add(new MessageQueue("right-shuffleTopic", queue.getBrokerName(), queue.getQueueId()));
+        }
+        Map<MessageQueue, String> rightOwners = assign(new StickyAllocateMessageQueueStrategy(), right, after);
+        int colocated = 0;
+        for (MessageQueue queue : queues) {
+            if (owners.get(queue).equals(rightOwners.get(new MessageQueue("right-shuffleTopic", queue.getBrokerName(), queue.getQueueId())))) {
+                colocated++;
+            }
+        }
+        System.out.println(colocated + " co-located");
+    }
+
+    private static int moves(AllocateMessageQueueStrategy strategy, List<MessageQueue> queues, List<String> before, List<String> after) {
+        Map<MessageQueue, String> first = assign(strategy, queues, before);
+        Map<MessageQueue, String> second = assign(strategy, queues, after);
+
+        int result = 0;
+        for (MessageQueue queue : queues) {
+            //the restarted consumer is on the same machine, its state is still there
+            String from = first.get(queue).substring(0, first.get(queue).indexOf('@'));
+            String to = second.get(queue).substring(0, second.get(queue).indexOf('@'));
+            if (!from.equals(to)) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    private static Map<MessageQueue, String> assign(AllocateMessageQueueStrategy strategy, List<MessageQueue> queues, List<String> cids) {
+        List<String> sorted = new ArrayList<>(cids);
+        sorted.sort(String::compareTo);
+
+        Map<MessageQueue, String> result = new HashMap<>();
+        for (String cid : sorted) {
+            for (MessageQueue queue : strategy.allocate("group", cid, queues, sorted)) {
+                if (result.put(queue, cid) != null) {
+                    throw new IllegalStateException(queue + " is allocated twice.");
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int maxLoad(Map<MessageQueue, String> owners) {
+        Map<String, Integer> loads = new HashMap<>();
+        for (String cid : owners.values()) {
+            loads.merge(cid, 1, Integer::sum);
+        }
+        return loads.values().stream().max(Integer::compare).orElse(0);
+    }
+}
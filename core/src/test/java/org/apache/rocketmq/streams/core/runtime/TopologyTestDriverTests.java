@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.runtime;
+
+import org.apache.rocketmq.streams.core.function.ValueMapperAction;
+import org.apache.rocketmq.streams.core.rstream.RStream;
+import org.apache.rocketmq.streams.core.rstream.StreamBuilder;
+import org.apache.rocketmq.streams.core.running.TopologyTestDriver;
+import org.apache.rocketmq.streams.core.util.Pair;
+import org.apache.rocketmq.streams.core.window.Time;
+import org.apache.rocketmq.streams.core.window.Trigger;
+import org.apache.rocketmq.streams.core.window.WindowBuilder;
+import org.apache.rocketmq.streams.core.window.WindowInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+public class TopologyTestDriverTests {
+    public static void main(String[] args) throws Throwable {
+        wordCount();
+        windowCount();
+        lateWindowCount();
+        earlyWindowCount(Trigger.everyRecords(2));
+        earlyWindowCount(Trigger.onEveryUpdate().discarding());
+        join();
+        joinRetentionSkewed();
+        windowJoin();
+        intervalJoin();
+        intervalJoinSkewed();
+    }
+
+    private static void wordCount() throws Throwable {
+        StreamBuilder builder = new StreamBuilder("wordCount");
+        builder.source("sourceTopic", total -> new Pair<>(null, new String(total, StandardCharsets.UTF_8)))
+                .flatMap((ValueMapperAction<String, List<String>>) value -> Arrays.asList(value.split(" ")))
+                .keyBy(value -> value)
+                .count()
+                .toRStream()
+                .sink("wordCountTopic", (key, value) -> String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), new Properties())) {
+            driver.pipeInput("sourceTopic", "a b a".getBytes(StandardCharsets.UTF_8));
+            driver.pipeInput("sourceTopic", "b".getBytes(StandardCharsets.UTF_8));
+
+            //expect 1, 1, 2, 2
+            List<Pair<Object, String>> result = driver.readOutput("wordCountTopic",
+                    source -> new Pair<>(null, new String(source, StandardCharsets.UTF_8)));
+            for (Pair<Object, String> pair : result) {
+                System.out.println(pair.getValue());
+            }
+        }
+    }
+
+    private static void windowCount() throws Throwable {
+        StreamBuilder builder = new StreamBuilder("windowCount");
+        builder.source("sourceTopic", total -> new Pair<>(null, new String(total, StandardCharsets.UTF_8)))
+                .keyBy(value -> value)
+                .window(WindowBuilder.tumblingWindow(Time.seconds(10)))
+                .count()
+                .toRStream()
+                .sink("windowCountTopic", (key, value) -> String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), new Properties())) {
+            driver.pipeInput("sourceTopic", "a".getBytes(StandardCharsets.UTF_8), 1000L);
+            driver.pipeInput("sourceTopic", "a".getBytes(StandardCharsets.UTF_8), 2000L);
+            driver.pipeInput("sourceTopic", "b".getBytes(StandardCharsets.UTF_8), 3000L);
+
+            //window [0, 10000) is not fired yet, expect 0 outputs and 2 pending windows
+            System.out.println(driver.readOutput("windowCountTopic").size() + " " + driver.getPendingWindowCount());
+
+            //watermark passes the window end, expect counts of a=2 and b=1
+            driver.pipeInput("sourceTopic", "c".getBytes(StandardCharsets.UTF_8), 11000L);
+            List<Pair<Object, String>> result = driver.readOutput("windowCountTopic",
+                    source -> new Pair<>(null, new String(source, StandardCharsets.UTF_8)));
+            for (Pair<Object, String> pair : result) {
+                System.out.println(pair.getValue());
+            }
+
+            //only the window of c is pending
+            System.out.println(driver.getPendingWindowCount());
+        }
+    }
+
+    private static void lateWindowCount() throws Throwable {
+        WindowInfo windowInfo = WindowBuilder.tumblingWindow(Time.seconds(10));
+        windowInfo.setAllowedLateness(Time.seconds(5));
+        windowInfo.setLateDataTopic("lateTopic");
+
+        StreamBuilder builder = new StreamBuilder("lateWindowCount");
+        builder.source("sourceTopic", total -> new Pair<>(null, new String(total, StandardCharsets.UTF_8)))
+                .keyBy(value -> value)
+                .window(windowInfo)
+                .count()
+                .toRStream()
+                .sink("windowCountTopic", (key, value) -> String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), new Properties())) {
+            driver.pipeInput("sourceTopic", "a".getBytes(StandardCharsets.UTF_8), 1000L);
+            driver.pipeInput("sourceTopic", "a".getBytes(StandardCharsets.UTF_8), 2000L);
+            driver.pipeInput("sourceTopic", "c".getBytes(StandardCharsets.UTF_8), 11000L);
+            driver.readOutput("windowCountTopic");
+
+            //window [0, 10000) has fired but is kept until watermark 15000, expect the updated count 3
+            driver.pipeInput("sourceTopic", "a".getBytes(StandardCharsets.UTF_8), 4000L);
+            List<Pair<Object, String>> result = driver.readOutput("windowCountTopic",
+                    source -> new Pair<>(null, new String(source, StandardCharsets.UTF_8)));
+            for (Pair<Object, String> pair : result) {
+                System.out.println(pair.getValue());
+            }
+
+            //watermark passes window end + allowed lateness, expect 1 record in the late data topic
+            driver.pipeInput("sourceTopic", "d".getBytes(StandardCharsets.UTF_8), 16000L);
+            driver.pipeInput("sourceTopic", "a".getBytes(StandardCharsets.UTF_8), 5000L);
+            System.out.println(driver.readOutput("windowCountTopic").size() + " " + driver.readOutput("lateTopic").size());
+        }
+    }
+
+    private static void earlyWindowCount(Trigger trigger) throws Throwable {
+        StreamBuilder builder = new StreamBuilder("earlyWindowCount");
+        builder.source("sourceTopic", total -> new Pair<>(null, new String(total, StandardCharsets.UTF_8)))
+                .keyBy(value -> value)
+                .window(WindowBuilder.tumblingWindow(Time.days(1)))
+                .trigger(trigger)
+                .count()
+                .toRStream()
+                .sink("windowCountTopic", (key, value) -> String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), new Properties())) {
+            for (long time = 1000L; time <= 4000L; time += 1000L) {
+                driver.pipeInput("sourceTopic", "a".getBytes(StandardCharsets.UTF_8), time);
+            }
+            //watermark passes the end of the first day, the window of "a" fires finally
+            driver.pipeInput("sourceTopic", "b".getBytes(StandardCharsets.UTF_8), Time.days(1).toMilliseconds() + 1000L);
+
+            //everyRecords(2) expect "2 4 4", the final firing of a discarding trigger has nothing new for "a", expect "1 1 1 1 1"
+            List<Pair<Object, String>> result = driver.readOutput("windowCountTopic",
+                    source -> new Pair<>(null, new String(source, StandardCharsets.UTF_8)));
+            StringBuilder output = new StringBuilder();
+            for (Pair<Object, String> pair : result) {
+                output.append(pair.getValue()).append(' ');
+            }
+            System.out.println(output.toString().trim());
+        }
+    }
+
+    //left and right records of the same key arrive through different shuffle topics
+    private static void join() throws Throwable {
+        StreamBuilder builder = new StreamBuilder("join");
+        RStream<String> left = builder.source("leftTopic", total -> new Pair<>(null, new String(total, StandardCharsets.UTF_8)));
+        RStream<String> right = builder.source("rightTopic", total -> new Pair<>(null, new String(total, StandardCharsets.UTF_8)));
+        left.join(right)
+                .where(value -> value.split(":")[0])
+                .equalTo(value -> value.split(":")[0])
+                .apply((value1, value2) -> value1 + "|" + value2)
+                .sink("joinTopic", (key, value) -> value.getBytes(StandardCharsets.UTF_8));
+
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), new Properties())) {
+            driver.pipeInput("leftTopic", "a:1".getBytes(StandardCharsets.UTF_8), 1000L);
+            driver.pipeInput("rightTopic", "a:x".getBytes(StandardCharsets.UTF_8), 2000L);
+            driver.pipeInput("leftTopic", "a:2".getBytes(StandardCharsets.UTF_8), 3000L);
+
+            //expect a:1|a:x a:2|a:x
+            printOutput(driver, "joinTopic");
+        }
+    }
+
+    private static void joinRetentionSkewed() throws Throwable {
+        StreamBuilder builder = new StreamBuilder("joinRetentionSkewed");
+        RStream<String> left = builder.source("leftTopic", total -> new Pair<>(null, new String(total, StandardCharsets.UTF_8)));
+        RStream<String> right = builder.source("rightTopic", total -> new Pair<>(null, new String(total, StandardCharsets.UTF_8)));
+        left.join(right)
+                .where(value -> value.split(":")[0])
+                .equalTo(value -> value.split(":")[0])
+                .retention(Time.seconds(5), Time.seconds(5))
+                .multiValue()
+                .apply((value1, value2) -> value1 + "|" + value2)
+                .sink("joinTopic", (key, value) -> value.getBytes(StandardCharsets.UTF_8));
+
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), new Properties())) {
+            //left stream is far ahead of right stream, a:1 is kept until the right watermark passes 1000 + 5000
+            driver.pipeInput("leftTopic", "a:1".getBytes(StandardCharsets.UTF_8), 1000L);
+            driver.pipeInput("leftTopic", "a:2".getBytes(StandardCharsets.UTF_8), 20000L);
+            driver.pipeInput("rightTopic", "a:x".getBytes(StandardCharsets.UTF_8), 2000L);
+            driver.pipeInput("rightTopic", "a:y".getBytes(StandardCharsets.UTF_8), 18000L);
+
+            //expect a:1|a:x a:2|a:x a:2|a:y
+            printOutput(driver, "joinTopic");
+        }
+    }
+
+    private static void windowJoin() throws Throwable {
+        StreamBuilder builder = new StreamBuilder("windowJoin");
+        RStream<String> left = builder.source("leftTopic", total -> new Pair<>(null, new String(total, StandardCharsets.UTF_8)));
+        RStream<String> right = builder.source("rightTopic", total -> new Pair<>(null, new String(total, StandardCharsets.UTF_8)));
+        left.join(right)
+                .where(value -> value.split(":")[0])
+                .equalTo(value -> value.split(":")[0])
+                .window(WindowBuilder.tumblingWindow(Time.seconds(10)))
+                .apply((value1, value2) -> value1 + "|" + value2)
+                .sink("joinTopic", (key, value) -> value.getBytes(StandardCharsets.UTF_8));
+
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), new Properties())) {
+            driver.pipeInput("leftTopic", "a:1".getBytes(StandardCharsets.UTF_8), 1000L);
+            driver.pipeInput("rightTopic", "a:x".getBytes(StandardCharsets.UTF_8), 2000L);
+            //watermarks of both sides pass the end of window [0, 10000)
+            driver.pipeInput("leftTopic", "b:1".getBytes(StandardCharsets.UTF_8), 11000L);
+            driver.pipeInput("rightTopic", "b:x".getBytes(StandardCharsets.UTF_8), 11000L);
+
+            //only the right watermark passes the end of window [10000, 20000), the right side fires it
+            driver.pipeInput("leftTopic", "c:1".getBytes(StandardCharsets.UTF_8), 12000L);
+            driver.pipeInput("rightTopic", "c:x".getBytes(StandardCharsets.UTF_8), 13000L);
+            driver.pipeInput("rightTopic", "d:x".getBytes(StandardCharsets.UTF_8), 21000L);
+
+            //expect a:1|a:x b:1|b:x c:1|c:x
+            printOutput(driver, "joinTopic");
+        }
+    }
+
+    private static void intervalJoin() throws Throwable {
+        StreamBuilder builder = new StreamBuilder("intervalJoin");
+        RStream<String> left = builder.source("leftTopic", total -> new Pair<>(null, new String(total, StandardCharsets.UTF_8)));
+        RStream<String> right = builder.source("rightTopic", total -> new Pair<>(null, new String(total, StandardCharsets.UTF_8)));
+        left.join(right)
+                .where(value -> value.split(":")[0])
+                .equalTo(value -> value.split(":")[0])
+                .between(Time.seconds(-5), Time.seconds(5))
+                .apply((value1, value2) -> value1 + "|" + value2)
+                .sink("joinTopic", (key, value) -> value.getBytes(StandardCharsets.UTF_8));
+
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), new Properties())) {
+            driver.pipeInput("leftTopic", "a:1".getBytes(StandardCharsets.UTF_8), 1000L);
+            driver.pipeInput("rightTopic", "a:x".getBytes(StandardCharsets.UTF_8), 2000L);
+            driver.pipeInput("leftTopic", "a:2".getBytes(StandardCharsets.UTF_8), 3000L);
+            //in [time - 5000, time + 5000] of both a:1 and a:2
+            driver.pipeInput("rightTopic", "a:y".getBytes(StandardCharsets.UTF_8), 5500L);
+
+            //expect a:1|a:x a:2|a:x a:1|a:y a:2|a:y
+            printOutput(driver, "joinTopic");
+        }
+    }
+
+    private static void intervalJoinSkewed() throws Throwable {
+        StreamBuilder builder = new StreamBuilder("intervalJoinSkewed");
+        RStream<String> left = builder.source("leftTopic", total -> new Pair<>(null, new String(total, StandardCharsets.UTF_8)));
+        RStream<String> right = builder.source("rightTopic", total -> new Pair<>(null, new String(total, StandardCharsets.UTF_8)));
+        left.join(right)
+                .where(value -> value.split(":")[0])
+                .equalTo(value -> value.split(":")[0])
+                .between(Time.seconds(-5), Time.seconds(5))
+                .apply((value1, value2) -> value1 + "|" + value2)
+                .sink("joinTopic", (key, value) -> value.getBytes(StandardCharsets.UTF_8));
+
+        try (TopologyTestDriver driver = new TopologyTestDriver(builder.build(), new Properties())) {
+            //left stream is far ahead of right stream
+            driver.pipeInput("leftTopic", "a:1".getBytes(StandardCharsets.UTF_8), 1000L);
+            driver.pipeInput("leftTopic", "a:2".getBytes(StandardCharsets.UTF_8), 20000L);
+            driver.pipeInput("rightTopic", "a:x".getBytes(StandardCharsets.UTF_8), 2000L);
+            //right watermark passes 1000 + 5000, a:1 can be dropped now
+            driver.pipeInput("rightTopic", "a:y".getBytes(StandardCharsets.UTF_8), 18000L);
+            driver.pipeInput("rightTopic", "a:z".getBytes(StandardCharsets.UTF_8), 4000L);
+
+            //expect a:1|a:x a:2|a:y
+            printOutput(driver, "joinTopic");
+        }
+    }
+
+    private static void printOutput(TopologyTestDriver driver, String topic) throws Throwable {
+        List<Pair<Object, String>> result = driver.readOutput(topic, source -> new Pair<>(null, new String(source, StandardCharsets.UTF_8)));
+        StringBuilder output = new StringBuilder();
+        for (Pair<Object, String> pair : result) {
+            output.append(pair.getValue()).append(' ');
+        }
+        System.out.println(output.toString().trim());
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.runtime;
+
+import org.apache.rocketmq.streams.core.window.WindowIndex;
+import org.apache.rocketmq.streams.core.window.WindowKey;
+
+import java.util.List;
+
+public class WindowIndexTests {
+    public static void main(String[] args) {
+        WindowIndex index = new WindowIndex(5000L);
+        WindowKey a = new WindowKey("op", "a", 10000L, 0L);
+        WindowKey b = new WindowKey("op", "b", 20000L, 10000L);
+        index.pending(b);
+        index.pending(a);
+        index.pending(a);
+
+        //expect [a], 1 pending
+        List<WindowKey> due = index.pollPending(11000L);
+        System.out.println(keys(due) + " " + index.pendingCount());
+
+        //fired window a is kept until 15000, late data makes it pending again, expect 0 then [a] 0
+        index.retained(a);
+        System.out.println(index.pollRetained(15000L).size());
+        index.pending(a);
+        System.out.println(keys(index.pollPending(12000L)) + " " + index.pollRetained(16000L).size());
+
+        //window a is deleted once the watermark passes 15000, expect [] [a] [b] 0
+        index.retained(a);
+        System.out.println(keys(index.pollRetained(15000L)) + " " + keys(index.pollRetained(15001L)) + " " + keys(index.pollPending(20001L)) + " " + index.pendingCount());
+    }
+
+    private static String keys(List<WindowKey> windowKeys) {
+        StringBuilder result = new StringBuilder("[");
+        for (WindowKey windowKey : windowKeys) {
+            result.append(windowKey.getKey2String());
+        }
+        return result.append(']').toString();
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.serialization;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ShuffleBatchProtocolTests {
+    public static void main(String[] args) {
+        List<ShuffleBatchProtocol.Record> records = new ArrayList<>();
+        records.add(new ShuffleBatchProtocol.Record(1000L, String.class.getName(), Integer.class.getName(), "a".getBytes(StandardCharsets.UTF_8)));
+        records.add(new ShuffleBatchProtocol.Record(2000L, null, Integer.class.getName(), "b".getBytes(StandardCharsets.UTF_8)));
+
+        byte[] bytes = ShuffleBatchProtocol.encode(records);
+        List<ShuffleBatchProtocol.Record> result = ShuffleBatchProtocol.decode(bytes);
+
+        for (ShuffleBatchProtocol.Record record : result) {
+            System.out.println(record.getTimestamp() + ", " + record.getKeyClassName() + ", " + record.getValueClassName()
+                    + ", " + new String(record.getBody(), StandardCharsets.UTF_8));
+        }
+    }
+}
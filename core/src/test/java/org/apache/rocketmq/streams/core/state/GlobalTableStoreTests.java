@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.state;
+
+import org.apache.rocketmq.client.consumer.DefaultLitePullConsumer;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.streams.core.running.RocketMQClient;
+import org.apache.rocketmq.streams.core.serialization.deImpl.KVJsonDeserializer;
+import org.apache.rocketmq.tools.admin.DefaultMQAdminExt;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+public class GlobalTableStoreTests {
+    public static void main(String[] args) throws Throwable {
+        //all messages of the queue have expired, minOffset == maxOffset == 100
+        MessageQueue queue = new MessageQueue("tableTopic", "broker", 0);
+
+        RocketMQClient client = new RocketMQClient("127.0.0.1:9876") {
+            @Override
+            public DefaultLitePullConsumer restoreConsumer(String groupName) {
+                return new DefaultLitePullConsumer(groupName) {
+                    @Override
+                    public void start() {
+                    }
+
+                    @Override
+                    public void shutdown() {
+                    }
+
+                    @Override
+                    public Collection<MessageQueue> fetchMessageQueues(String topic) {
+                        return Collections.singletonList(queue);
+                    }
+
+                    @Override
+                    public void assign(Collection<MessageQueue> messageQueues) {
+                    }
+
+                    @Override
+                    public void seekToBegin(MessageQueue messageQueue) {
+                    }
+
+                    @Override
+                    public List<MessageExt> poll(long timeout) {
+                        return Collections.emptyList();
+                    }
+                };
+            }
+        };
+        DefaultMQAdminExt mqAdmin = new DefaultMQAdminExt() {
+            @Override
+            public long maxOffset(MessageQueue mq) {
+                return 100;
+            }
+
+            @Override
+            public long minOffset(MessageQueue mq) {
+                return 100;
+            }
+        };
+
+        GlobalTableStore<String, String> store = new GlobalTableStore<>("table", "tableTopic", new KVJsonDeserializer<>());
+        store.start("job", client, mqAdmin);
+        long begin = System.currentTimeMillis();
+        while (!store.isReady() && System.currentTimeMillis() - begin < 5000) {
+            Thread.sleep(10);
+        }
+        //expect true 1.0
+        System.out.println(store.isReady() + " " + store.getRestoreProgress());
+        store.close();
+    }
+}
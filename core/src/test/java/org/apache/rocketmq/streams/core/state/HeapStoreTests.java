@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.state;
+
+import org.apache.rocketmq.streams.core.util.Pair;
+import org.apache.rocketmq.streams.core.window.WindowKey;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class HeapStoreTests {
+    public static void main(String[] args) throws Throwable {
+        HeapStore store = new HeapStore(1024);
+        String queue = "broker@source-stateTopic@0";
+
+        store.put(queue, WindowKey.windowKey2Byte(new WindowKey("test1", "keyString2", 20L, 1L)), "2".getBytes(StandardCharsets.UTF_8));
+        store.put(queue, WindowKey.windowKey2Byte(new WindowKey("test1", "keyString1", 10L, 1L)), "1".getBytes(StandardCharsets.UTF_8));
+        store.put(queue, WindowKey.windowKey2Byte(new WindowKey("test2", "keyString1", 10L, 1L)), "3".getBytes(StandardCharsets.UTF_8));
+
+        //expect 1, only window of test1 end before 11
+        List<Pair<byte[], byte[]>> pairs = store.searchStateLessThanWatermark(queue, "test1", 11L, WindowKey::byte2WindowKey);
+        System.out.println(pairs.size());
+        System.out.println(store.getEstimateKeys() + " keys, " + store.getEstimateBytes() + " bytes");
+
+        String joinQueue = "broker@join-stateTopic@0";
+        for (String key : new String[]{"a1", "ab1", "ab2", "b1"}) {
+            store.put(joinQueue, key.getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8));
+        }
+        //expect [ab1, ab2]
+        List<Pair<String, byte[]>> prefixed = store.searchByKeyPrefix(joinQueue, "ab", source -> source.getBytes(StandardCharsets.UTF_8),
+                source -> new String(source, StandardCharsets.UTF_8));
+        System.out.println(prefixed.stream().map(Pair::getKey).collect(Collectors.toList()));
+        store.dropQueue(joinQueue);
+
+        //expect 0 keys after the queue is revoked
+        store.dropQueue(queue);
+        System.out.println(store.getEstimateKeys() + " keys, " + store.getEstimateBytes() + " bytes");
+
+        try {
+            store.put(queue, new byte[1024], new byte[512]);
+        } catch (Throwable t) {
+            //expect heap state store is full
+            System.out.println(t.getMessage());
+        }
+
+        byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+        store.put(queue, key, new byte[8]);
+        try {
+            store.put(queue, key, new byte[2048]);
+        } catch (Throwable t) {
+            //expect heap state store is full when the value of an existing key grows
+            System.out.println(t.getMessage());
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.streams.core.state;
+
+import org.apache.rocketmq.client.consumer.DefaultLitePullConsumer;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.TopicConfig;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.route.BrokerData;
+import org.apache.rocketmq.common.protocol.route.QueueData;
+import org.apache.rocketmq.common.protocol.route.TopicRouteData;
+import org.apache.rocketmq.streams.core.common.Constant;
+import org.apache.rocketmq.streams.core.running.RocketMQClient;
+import org.apache.rocketmq.tools.admin.DefaultMQAdminExt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class RocketMQStoreTests {
+    private static final String BROKER = "broker";
+
+    public static void main(String[] args) throws Throwable {
+        deleteBeforeSnapshot();
+    }
+
+    //key deleted before a snapshot must stay deleted when replay starts before the snapshot marker
+    private static void deleteBeforeSnapshot() throws Throwable {
+        StateTopic stateTopic = new StateTopic();
+        MessageQueue sourceQueue = new MessageQueue("source", BROKER, 0);
+        MessageQueue stateQueue = new MessageQueue("source" + Constant.STATE_TOPIC_SUFFIX, BROKER, 0);
+        Set<MessageQueue> sourceQueues = Collections.singleton(sourceQueue);
+        byte[] k1 = "k1".getBytes(StandardCharsets.UTF_8);
+        byte[] k2 = "k2".getBytes(StandardCharsets.UTF_8);
+
+        Properties properties = new Properties();
+        properties.put(Constant.STATE_SNAPSHOT_INTERVAL_MILLISECOND, 1);
+
+        RocketMQStore store = stateTopic.newStore(properties);
+        store.loadState(sourceQueues);
+        store.waitIfNotReady(sourceQueue);
+        store.put(stateQueue, k1, "v1".getBytes(StandardCharsets.UTF_8));
+        store.persist(sourceQueues);
+
+        Thread.sleep(10);
+        store.delete(stateQueue, k1);
+        store.put(stateQueue, k2, "v2".getBytes(StandardCharsets.UTF_8));
+        //snapshot is due
+        store.persist(sourceQueues);
+        store.close();
+
+        RocketMQStore restored = stateTopic.newStore(new Properties());
+        restored.loadState(sourceQueues);
+        restored.waitIfNotReady(sourceQueue);
+        //expect null v2
+        byte[] v1 = restored.get(stateQueue, k1);
+        byte[] v2 = restored.get(stateQueue, k2);
+        System.out.println((v1 == null ? null : new String(v1, StandardCharsets.UTF_8)) + " " + new String(v2, StandardCharsets.UTF_8));
+        restored.close();
+    }
+
+    //一个broker上的state topic，恢复consumer没有提交过位点，从头重放
+    static class StateTopic {
+        private final ConcurrentHashMap<MessageQueue, List<MessageExt>> log = new ConcurrentHashMap<>();
+
+        RocketMQStore newStore(Properties properties) {
+            return new RocketMQStore(new Producer(), new HeapStore(64 * 1024 * 1024), new Admin(), new Client(), null, properties);
+        }
+
+        private synchronized long append(Message message, MessageQueue queue) {
+            List<MessageExt> messages = log.computeIfAbsent(queue, q -> new ArrayList<>());
+            MessageExt messageExt = new MessageExt();
+            messageExt.setTopic(queue.getTopic());
+            messageExt.setBrokerName(queue.getBrokerName());
+            messageExt.setQueueId(queue.getQueueId());
+            messageExt.setQueueOffset(messages.size());
+            messageExt.setBody(message.getBody());
+            MessageAccessor.setProperties(messageExt, new HashMap<>(message.getProperties()));
+            messages.add(messageExt);
+            return messageExt.getQueueOffset();
+        }
+
+        private synchronized List<MessageExt> read(MessageQueue queue, long offset, int max) {
+            List<MessageExt> messages = log.getOrDefault(queue, Collections.emptyList());
+            List<MessageExt> result = new ArrayList<>();
+            for (long i = offset; i < messages.size() && result.size() < max; i++) {
+                result.add(messages.get((int) i));
+            }
+            return result;
+        }
+
+        private synchronized long maxOffset(MessageQueue queue) {
+            return log.getOrDefault(queue, Collections.emptyList()).size();
+        }
+
+        class Producer extends DefaultMQProducer {
+            @Override
+            public SendResult send(Message msg, MessageQueue mq) {
+                return new SendResult(SendStatus.SEND_OK, null, null, mq, append(msg, mq));
+            }
+
+            @Override
+            public SendResult send(Collection<Message> msgs, MessageQueue mq) {
+                //same as the broker, the offset of the first message in the batch
+                long offset = -1;
+                for (Message msg : msgs) {
+                    long appended = append(msg, mq);
+                    if (offset == -1) {
+                        offset = appended;
+                    }
+                }
+                return new SendResult(SendStatus.SEND_OK, null, null, mq, offset);
+            }
+        }
+
+        class Admin extends DefaultMQAdminExt {
+            @Override
+            public TopicRouteData examineTopicRouteInfo(String topic) {
+                QueueData queueData = new QueueData();
+                queueData.setBrokerName(BROKER);
+                queueData.setReadQueueNums(1);
+                queueData.setWriteQueueNums(1);
+
+                HashMap<Long, String> addrs = new HashMap<>();
+                addrs.put(0L, "127.0.0.1:10911");
+
+                TopicRouteData topicRouteData = new TopicRouteData();
+                topicRouteData.setQueueDatas(Collections.singletonList(queueData));
+                topicRouteData.setBrokerDatas(Collections.singletonList(new BrokerData("cluster", BROKER, addrs)));
+                return topicRouteData;
+            }
+
+            @Override
+            public void createAndUpdateTopicConfig(String addr, TopicConfig config) {
+            }
+
+            @Override
+            public TopicConfig examineTopicConfig(String addr, String topic) {
+                return new TopicConfig(topic, 1, 1);
+            }
+
+            @Override
+            public void updateConsumeOffset(String brokerAddr, String consumeGroup, MessageQueue mq, long offset) {
+            }
+
+            @Override
+            public long maxOffset(MessageQueue mq) {
+                return StateTopic.this.maxOffset(mq);
+            }
+        }
+
+        class Client extends RocketMQClient {
+            Client() {
+                super("127.0.0.1:9876");
+            }
+
+            @Override
+            public DefaultLitePullConsumer restoreConsumer(String groupName) {
+                return new DefaultLitePullConsumer(groupName) {
+                    private final Map<MessageQueue, Long> positions = new ConcurrentHashMap<>();
+
+                    @Override
+                    public void start() {
+                    }
+
+                    @Override
+                    public void shutdown() {
+                    }
+
+                    @Override
+                    public void assign(Collection<MessageQueue> messageQueues) {
+                        for (MessageQueue queue : messageQueues) {
+                            positions.put(queue, 0L);
+                        }
+                    }
+
+                    @Override
+                    public Set<MessageQueue> assignment() {
+                        return new HashSet<>(positions.keySet());
+                    }
+
+                    @Override
+                    public Long committed(MessageQueue messageQueue) {
+                        return null;
+                    }
+
+                    @Override
+                    public void seek(MessageQueue messageQueue, long offset) {
+                        positions.put(messageQueue, offset);
+                    }
+
+                    @Override
+                    public void seekToBegin(MessageQueue messageQueue) {
+                        positions.put(messageQueue, 0L);
+                    }
+
+                    @Override
+                    public List<MessageExt> poll(long timeout) {
+                        List<MessageExt> result = new ArrayList<>();
+                        for (Map.Entry<MessageQueue, Long> entry : positions.entrySet()) {
+                            List<MessageExt> messages = read(entry.getKey(), entry.getValue(), 100);
+                            entry.setValue(entry.getValue() + messages.size());
+                            result.addAll(messages);
+                        }
+                        return result;
+                    }
+                };
+            }
+        }
+    }
+}
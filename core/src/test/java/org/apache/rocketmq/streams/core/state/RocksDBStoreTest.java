@@ -26,6 +26,7 @@ import java.util.List;
 public class RocksDBStoreTest {
     public static void main(String[] args) throws Throwable {
         RocksDBStore rocksDBStore = new RocksDBStore("test");
+        String queue = "broker@source-stateTopic@0";
 
 //        String key = "time@1668249210000@1668249195000";
 //        String key2 = "ewwwwe@1668249600481@1";
@@ -40,28 +41,28 @@ public class RocksDBStoreTest {
         byte[] keyBytes2 = key2Byte(key2);
         byte[] valueBytes2 = Utils.object2Byte(value2);
 
-        rocksDBStore.put(keyBytes2, valueBytes2);
-        rocksDBStore.put(keyBytes, valueBytes);
+        rocksDBStore.put(queue, keyBytes2, valueBytes2);
+        rocksDBStore.put(queue, keyBytes, valueBytes);
 
 
-        byte[] bytes = rocksDBStore.get(keyBytes);
+        byte[] bytes = rocksDBStore.get(queue, keyBytes);
         Object result = Utils.byte2Object(bytes, Object.class);
         System.out.println(result);
 
-        byte[] bytes2 = rocksDBStore.get(keyBytes2);
+        byte[] bytes2 = rocksDBStore.get(queue, keyBytes2);
         Object result2 = Utils.byte2Object(bytes2, Object.class);
         System.out.println(result2);
 
         WindowKey searchKey = new WindowKey("test1", "keyString1", 13l, 1l);
         String operatorName = searchKey.getOperatorName();
-        List<Pair<byte[], byte[]>> pairs = rocksDBStore.searchStateLessThanWatermark(operatorName, 11l, RocksDBStoreTest::byte2WindowKey);
+        List<Pair<byte[], byte[]>> pairs = rocksDBStore.searchStateLessThanWatermark(queue, operatorName, 11l, RocksDBStoreTest::byte2WindowKey);
 
         System.out.println(pairs.size());
     }
 
     private static WindowKey byte2WindowKey(byte[] source) {
         String str = new String(source, StandardCharsets.UTF_8);
-        String[] split = Utils.split(str);
+        String[] split = Utils.split(str, WindowKey.SPLIT);
         return new WindowKey(split[0], split[1], Long.parseLong(split[2]), Long.parseLong(split[3]));
     }
 